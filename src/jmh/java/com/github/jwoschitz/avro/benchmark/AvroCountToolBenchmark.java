@@ -0,0 +1,87 @@
+package com.github.jwoschitz.avro.benchmark;
+
+import com.github.jwoschitz.avro.tool.AvroCountTool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end benchmark of AvroCountTool, counting a folder of files and a single file piped via stdin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AvroCountToolBenchmark {
+
+    @Param({"null", "snappy"})
+    public String codec;
+
+    @Param({"1", "16", "128"})
+    public int fileCount;
+
+    @Param({"100000"})
+    public long recordsPerFile;
+
+    @Param({"64000"})
+    public int syncInterval;
+
+    private File folder;
+    private final PrintStream out = new PrintStream(new ByteArrayOutputStream());
+
+    @Setup(Level.Trial)
+    public void createFiles() throws Exception {
+        folder = Files.createTempDirectory("avrocount-benchmark").toFile();
+        for (int i = 0; i < fileCount; i++) {
+            BenchmarkFiles.generator(codec, syncInterval)
+                    .createAvroFile(String.format("part-%s.avro", i), recordsPerFile, folder);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() {
+        for (File file : folder.listFiles()) {
+            file.delete();
+        }
+        folder.delete();
+    }
+
+    @Benchmark
+    public int countFolder() throws Exception {
+        return new AvroCountTool().run(System.in, out, System.err, Collections.singletonList(folder.getAbsolutePath()));
+    }
+
+    @Benchmark
+    public int countFolderSingleThreaded() throws Exception {
+        return new AvroCountTool().run(System.in, out, System.err, Arrays.asList(folder.getAbsolutePath(), "--maxParallelism=1"));
+    }
+
+    @Benchmark
+    public int countStdin() throws Exception {
+        try (InputStream stdin = new FileInputStream(new File(folder, "part-0.avro"))) {
+            return new AvroCountTool().run(stdin, out, System.err, Collections.singletonList("-"));
+        }
+    }
+}
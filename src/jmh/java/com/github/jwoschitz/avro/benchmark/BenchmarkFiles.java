@@ -0,0 +1,12 @@
+package com.github.jwoschitz.avro.benchmark;
+
+import com.github.jwoschitz.avro.tool.utils.AvroDataFileGenerator;
+import org.apache.avro.file.CodecFactory;
+
+class BenchmarkFiles {
+
+    static AvroDataFileGenerator generator(String codec, int syncInterval) throws Exception {
+        return AvroDataFileGenerator.intRecordGenerator(BenchmarkFiles.class, CodecFactory.fromString(codec))
+                .withSyncInterval(syncInterval);
+    }
+}
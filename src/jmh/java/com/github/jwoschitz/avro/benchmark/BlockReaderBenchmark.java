@@ -0,0 +1,102 @@
+package com.github.jwoschitz.avro.benchmark;
+
+import com.github.jwoschitz.avro.file.CountableBlockReader;
+import com.github.jwoschitz.avro.file.CountableSkipDataFileReader;
+import com.github.jwoschitz.avro.file.CountableSkipDataFileStream;
+import com.github.jwoschitz.avro.file.MappedSkipDataFileReader;
+import org.apache.avro.file.DataFileStream;
+import org.apache.avro.file.SeekableFileInput;
+import org.apache.avro.generic.GenericDatumReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-threaded comparison of the block readers against the count path of avro's DataFileStream
+ * (as used by avro-tools count) on a single file
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BlockReaderBenchmark {
+
+    @Param({"null", "deflate", "snappy"})
+    public String codec;
+
+    @Param({"1000000"})
+    public long recordCount;
+
+    @Param({"4096", "64000", "1048576"})
+    public int syncInterval;
+
+    private File avroFile;
+
+    @Setup(Level.Trial)
+    public void createFile() throws Exception {
+        avroFile = BenchmarkFiles.generator(codec, syncInterval)
+                .createAvroFile(String.format("%s_%s_%s.avro", codec, recordCount, syncInterval), recordCount);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFile() {
+        avroFile.delete();
+    }
+
+    @Benchmark
+    public long dataFileStream() throws IOException {
+        long count = 0L;
+        try (DataFileStream<Object> streamReader = new DataFileStream<>(
+                new BufferedInputStream(new FileInputStream(avroFile)), new GenericDatumReader<>())) {
+            while (streamReader.hasNext()) {
+                count += streamReader.getBlockCount();
+                streamReader.nextBlock();
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public long countableSkipDataFileStream() throws IOException {
+        return count(new CountableSkipDataFileStream(new BufferedInputStream(new FileInputStream(avroFile))));
+    }
+
+    @Benchmark
+    public long countableSkipDataFileReader() throws IOException {
+        return count(new CountableSkipDataFileReader(new SeekableFileInput(avroFile)));
+    }
+
+    @Benchmark
+    public long mappedSkipDataFileReader() throws IOException {
+        return count(new MappedSkipDataFileReader(avroFile));
+    }
+
+    private static long count(CountableBlockReader reader) throws IOException {
+        long count = 0L;
+        try (CountableBlockReader blockReader = reader) {
+            while (blockReader.hasNextBlock()) {
+                blockReader.nextBlock();
+                count += blockReader.getBlockCount();
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,1409 @@
+package com.github.jwoschitz.avro.count;
+
+import com.github.jwoschitz.avro.file.BlockIndex;
+import com.github.jwoschitz.avro.file.BlockVerifier;
+import com.github.jwoschitz.avro.file.CountableBlockReader;
+import com.github.jwoschitz.avro.file.CountableSkipDataFileStream;
+import com.github.jwoschitz.avro.file.DistinctField;
+import com.github.jwoschitz.avro.file.RecordPredicate;
+import com.github.jwoschitz.avro.file.SeekableBlockReader;
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.file.DataFileConstants;
+import org.apache.hadoop.conf.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * Counts the records of avro files, meant to be embedded into long-running applications
+ *
+ * An instance is configured once via {@link #builder()} and can be shared by any amount of concurrent counts, its
+ * thread pools are reused across counts. Counting is asynchronous: every count returns a CompletableFuture of the
+ * summary over all counted files, the results of the single files are handed to a listener as soon as they are
+ * finished.
+ *
+ * Plain local paths are listed via java.nio, Hadoop is only loaded for paths with a scheme such as hdfs:// or
+ * s3a:// which require it. Paths of the form s3://bucket/key are read from S3 or an S3-compatible object store via
+ * range requests, which only transfer the headers of the blocks, see {@link Builder#objectStoreEndpoint(String)}.
+ *
+ * Unless an executor is given, counting tasks are run on an internal pool which starts the largest pending tasks
+ * first. Internal pools consist of daemon threads and are shut down by {@link #close()}.
+ *
+ * <pre>
+ * try (AvroCounter counter = AvroCounter.builder().parallelism(8).build()) {
+ *     long records = counter.count(Arrays.asList("hdfs:///data/2017/*"), file -> {}).get().getRecords();
+ * }
+ * </pre>
+ */
+public class AvroCounter implements Closeable {
+    private final static Logger LOGGER = LoggerFactory.getLogger(AvroCounter.class);
+
+    private final static int DEFAULT_THREADS_PER_CORE = 4;
+    private final static int MAX_DEFAULT_PARALLELISM = 64;
+    private final static int LISTING_PARALLELISM = 16;
+    private final static int PENDING_VERIFICATIONS_PER_THREAD = 4;
+    private final static int MIN_SAMPLES = 10;
+    private final static int MAX_SAMPLES = 1000;
+    // bytes before a sampled offset from which the start of its block is searched at first
+    private final static long MIN_SAMPLE_WINDOW = 8 * 1024;
+
+    public final static long DEFAULT_SPLIT_SIZE = 512L << 20;
+    public final static int DEFAULT_BUFFER_SIZE = 8192;
+    public final static int DEFAULT_CACHE_SIZE = 100000;
+    public final static double DEFAULT_TARGET_ERROR = 0.01;
+    public final static int DEFAULT_RANGE_SIZE = 16 * 1024;
+    public final static int DEFAULT_REQUESTS_IN_FLIGHT = 4;
+
+    private final static AtomicInteger POOL_SEQUENCE = new AtomicInteger();
+    private final static Pattern SCHEME = Pattern.compile("[a-zA-Z][a-zA-Z0-9+.-]*:");
+
+    /**
+     * A byte range of an avro file, which can be counted independently of the other ranges of the same file
+     */
+    private static class AvroFileSplit {
+        private final CountableFile file;
+        private final long start;
+        private final long end;
+
+        AvroFileSplit(CountableFile file, long start, long end) {
+            this.file = file;
+            this.start = start;
+            this.end = end;
+        }
+
+        String getPath() {
+            return String.format("%s[%s-%s]", file.getPath(), start, end);
+        }
+    }
+
+    public static class Builder {
+        private ExecutorService executor;
+        private int parallelism = -1;
+        private long splitSize = DEFAULT_SPLIT_SIZE;
+        private int bufferSize = DEFAULT_BUFFER_SIZE;
+        private boolean memoryMapping = true;
+        private boolean recursive = false;
+        private File cacheFile;
+        private int cacheSize = DEFAULT_CACHE_SIZE;
+        private boolean resume = false;
+        private boolean skipCorrupt = false;
+        private boolean verify = false;
+        private int verifyParallelism = -1;
+        private RecordPredicate where;
+        private DistinctField distinct;
+        private boolean writeSketches = false;
+        private CountProgress progress;
+        private double targetError = 0;
+        private Long seed;
+        private boolean useIndex = true;
+        private boolean writeIndex = false;
+        private String metadataKey;
+        private double verifyMetadata = 0;
+        private Configuration conf;
+        private String objectStoreEndpoint;
+        private int rangeSize = DEFAULT_RANGE_SIZE;
+        private int requestsInFlight = DEFAULT_REQUESTS_IN_FLIGHT;
+
+        private Builder() {
+        }
+
+        /**
+         * Runs the counting tasks on the given executor, which is not shut down by the counter
+         *
+         * @see AvroCounter#newExecutor(int)
+         */
+        public Builder executor(ExecutorService executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * Amount of threads of the internal pool, defaults to four threads per core (at most 64)
+         */
+        public Builder parallelism(int parallelism) {
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * Files larger than the given amount of bytes are split into ranges which are counted in parallel,
+         * 0 disables splitting
+         */
+        public Builder splitSize(long splitSize) {
+            this.splitSize = splitSize;
+            return this;
+        }
+
+        /**
+         * Size of the buffer used to read streams
+         */
+        public Builder bufferSize(int bufferSize) {
+            this.bufferSize = bufferSize;
+            return this;
+        }
+
+        /**
+         * Whether files on the local filesystem are memory-mapped, enabled by default
+         */
+        public Builder memoryMapping(boolean memoryMapping) {
+            this.memoryMapping = memoryMapping;
+            return this;
+        }
+
+        /**
+         * Whether avro files in sub-directories are counted
+         */
+        public Builder recursive(boolean recursive) {
+            this.recursive = recursive;
+            return this;
+        }
+
+        /**
+         * Caches counts in the given file, unchanged files are not counted again
+         */
+        public Builder cache(File cacheFile) {
+            this.cacheFile = cacheFile;
+            return this;
+        }
+
+        /**
+         * Maximum amount of files kept in the cache, least recently used files are evicted first
+         */
+        public Builder cacheSize(int cacheSize) {
+            this.cacheSize = cacheSize;
+            return this;
+        }
+
+        /**
+         * Resume counting files which have been appended to since they were cached at the last counted block,
+         * requires a cache
+         */
+        public Builder resume(boolean resume) {
+            this.resume = resume;
+            return this;
+        }
+
+        /**
+         * Whether corrupt blocks of files are skipped instead of failing the count
+         *
+         * A block with an invalid sync marker, size or record count is skipped by searching for the next sync
+         * marker of the file, counting continues at the following block. The skipped byte ranges are reported via
+         * {@link CountResult#getSkippedRanges()}, counts of files with skipped ranges are not cached. Streams are
+         * always counted strictly.
+         */
+        public Builder skipCorrupt(boolean skipCorrupt) {
+            this.skipCorrupt = skipCorrupt;
+            return this;
+        }
+
+        /**
+         * Whether the data of every block is verified instead of trusting the record count of its header
+         *
+         * Every block is decompressed with the codec of the file, the checksum of snappy compressed blocks is
+         * checked, and the records of the block are skipped with the writer schema of the file. A block which fails
+         * verification fails the count of its file, independent of {@link #skipCorrupt(boolean)}. Files are always
+         * read completely, neither cached counts nor resuming are used.
+         *
+         * Blocks are verified on a separate pool, while the counting thread continues to read the next blocks.
+         */
+        public Builder verify(boolean verify) {
+            this.verify = verify;
+            return this;
+        }
+
+        /**
+         * Counts the records matching the given predicate besides all records, see
+         * {@link CountResult#getMatchingRecords()}
+         *
+         * The records of every block are decoded with a plan compiled from the predicate for the writer schema of the
+         * file: only the fields the predicate refers to are decoded, all others are skipped. Blocks are decoded on
+         * the same pool and with the same checks as {@link #verify(boolean)}, which is implied.
+         */
+        public Builder where(RecordPredicate where) {
+            this.where = where;
+            return this;
+        }
+
+        /**
+         * Estimates the amount of distinct values of the given field, see {@link CountResult#getDistinctValues()}
+         *
+         * Only the given field of every record is decoded, all others are skipped. The values are hashed into a
+         * {@link HyperLogLog} sketch per verifying thread, so memory stays the same no matter how many records or
+         * distinct values there are. Sketches are merged per file, and the sketches of files into the summary.
+         * Blocks are decoded on the same pool and with the same checks as {@link #verify(boolean)}, which is
+         * implied. A file named file.avro is not read at all if a file named file.avro.field.hll exists next to
+         * it which holds the sketch of the current length and modification time of the file, unless
+         * {@link #useIndex(boolean)} is disabled.
+         */
+        public Builder distinct(DistinctField distinct) {
+            this.distinct = distinct;
+            return this;
+        }
+
+        /**
+         * Whether the sketch of the distinct values of every counted file is written next to it, so that later
+         * counts of the same field merge the sketch instead of reading the file, see {@link #distinct(DistinctField)}
+         */
+        public Builder writeSketches(boolean writeSketches) {
+            this.writeSketches = writeSketches;
+            return this;
+        }
+
+        /**
+         * Tracks the progress of all counts of the counter in the given progress, which can be read while counting
+         *
+         * Files are added to the progress as they are listed and finished, their blocks in batches while they are
+         * counted.
+         */
+        public Builder progress(CountProgress progress) {
+            this.progress = progress;
+            return this;
+        }
+
+        /**
+         * Amount of threads which verify blocks, defaults to one thread per core
+         */
+        public Builder verifyParallelism(int verifyParallelism) {
+            this.verifyParallelism = verifyParallelism;
+            return this;
+        }
+
+        /**
+         * Estimates the amount of records of every file from a random sample of its blocks instead of counting all
+         * of them
+         *
+         * Blocks are sampled at random offsets of a file until the 95% confidence interval of its estimate is
+         * narrower than the given relative error in either direction, or 1000 blocks have been sampled. Files of
+         * which half the data would be read anyway are counted exactly, as are streams. Estimates are never cached.
+         *
+         * @param targetError e.g. 0.01 to stop sampling once a file is estimated within +-1%, 0 counts exactly
+         */
+        public Builder estimate(double targetError) {
+            this.targetError = targetError;
+            return this;
+        }
+
+        /**
+         * Seeds the random sampling of blocks and files, see {@link #estimate(double)} and
+         * {@link #verifyMetadata(double)}
+         *
+         * Every file is sampled with its own random numbers derived from the seed, its path and its length, so
+         * counts of the same files are reproducible no matter in which order or on which threads they are counted,
+         * while files of the same name and size in different directories are sampled independently. Without a seed
+         * every count samples differently.
+         */
+        public Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        /**
+         * Whether counts are taken from the block index next to a file, enabled by default
+         *
+         * A file named file.avro is not read at all if a file named file.avro.idx exists next to it, which holds a
+         * {@link BlockIndex} built for the current length and modification time of the file. Indexes are not used
+         * when verifying blocks. Disabling them saves looking up the index of every file, e.g. on object stores.
+         */
+        public Builder useIndex(boolean useIndex) {
+            this.useIndex = useIndex;
+            return this;
+        }
+
+        /**
+         * Whether a {@link BlockIndex} is written next to every counted file
+         *
+         * The index is gathered while counting, so writing it does not read more than counting the file. Files
+         * are always read completely, neither cached counts nor resuming are used, but files which already have a
+         * valid index are not counted again. No index is written for files with skipped corrupt ranges.
+         */
+        public Builder writeIndex(boolean writeIndex) {
+            this.writeIndex = writeIndex;
+            return this;
+        }
+
+        /**
+         * Takes the amount of records of a file from the given key of its header metadata, if the writer stated it
+         * there as a decimal number, e.g. via {@code DataFileWriter.setMeta("record.count", count)}
+         *
+         * Only the header of such files is read, their blocks are neither read nor counted. Files without the key
+         * or with an invalid value are counted as usual after their header has been read. The header is checked
+         * after the cache, but before the block index. Counts from metadata are not cached.
+         */
+        public Builder metadataCount(String metadataKey) {
+            this.metadataKey = metadataKey;
+            return this;
+        }
+
+        /**
+         * Fraction of the files with a record count in their header metadata whose blocks are counted anyway, to
+         * check the count of the metadata, see {@link #metadataCount(String)} and
+         * {@link CountResult#getMetadataMismatches()}
+         *
+         * Files are picked at random, e.g. 0.01 checks about one file in a hundred, 1 checks every file.
+         */
+        public Builder verifyMetadata(double verifyMetadata) {
+            this.verifyMetadata = verifyMetadata;
+            return this;
+        }
+
+        /**
+         * Hadoop configuration used to resolve the filesystems of the given paths
+         *
+         * Without a configuration, Hadoop is only loaded for paths which require it, see {@link #isLocal(String)}.
+         */
+        public Builder configuration(Configuration conf) {
+            this.conf = conf;
+            return this;
+        }
+
+        /**
+         * Endpoint of the S3-compatible object store which s3:// paths refer to, e.g. http://localhost:9000,
+         * defaults to AWS
+         *
+         * Buckets of other endpoints than AWS are addressed by path. Requests are signed with the credentials of the
+         * environment variables AWS_ACCESS_KEY_ID and AWS_SECRET_ACCESS_KEY if both are set.
+         */
+        public Builder objectStoreEndpoint(String objectStoreEndpoint) {
+            this.objectStoreEndpoint = objectStoreEndpoint;
+            return this;
+        }
+
+        /**
+         * Amount of bytes fetched by a single range request from the object store
+         *
+         * Small ranges transfer little more than the block headers of files with large blocks, larger ranges cover
+         * more blocks of files with small blocks per request.
+         */
+        public Builder rangeSize(int rangeSize) {
+            this.rangeSize = rangeSize;
+            return this;
+        }
+
+        /**
+         * Maximum amount of concurrent range requests per opened object, i.e. per counted file or split of a file
+         */
+        public Builder requestsInFlight(int requestsInFlight) {
+            this.requestsInFlight = requestsInFlight;
+            return this;
+        }
+
+        public AvroCounter build() {
+            if (resume && cacheFile == null) {
+                throw new IllegalArgumentException("Resuming counts requires a cache");
+            }
+            if (distinct != null && where != null) {
+                throw new IllegalArgumentException("Distinct values cannot be counted for filtered records");
+            }
+            if (distinct != null && targetError > 0) {
+                throw new IllegalArgumentException("Counting distinct values requires exact counts");
+            }
+            if (writeSketches && distinct == null) {
+                throw new IllegalArgumentException("Writing sketches requires a field whose distinct values are counted");
+            }
+            if (where != null && targetError > 0) {
+                throw new IllegalArgumentException("Filtering records requires exact counts");
+            }
+            if (verify && targetError > 0) {
+                throw new IllegalArgumentException("Verifying blocks requires exact counts");
+            }
+            if (writeIndex && targetError > 0) {
+                throw new IllegalArgumentException("Writing block indexes requires exact counts");
+            }
+            if (metadataKey != null && (verify || where != null || distinct != null)) {
+                throw new IllegalArgumentException("Counts from metadata cannot be verified block by block");
+            }
+            if (metadataKey != null && targetError > 0) {
+                throw new IllegalArgumentException("Counts from metadata cannot be combined with estimates");
+            }
+            if (metadataKey != null && writeIndex) {
+                throw new IllegalArgumentException("Writing block indexes requires counting the blocks of all files");
+            }
+            if (verifyMetadata > 0 && metadataKey == null) {
+                throw new IllegalArgumentException("Verifying counts from metadata requires a metadata key");
+            }
+            if (verifyMetadata < 0 || verifyMetadata > 1) {
+                throw new IllegalArgumentException("Fraction of verified metadata counts must be within 0 and 1: "
+                        + verifyMetadata);
+            }
+            if (targetError < 0) {
+                throw new IllegalArgumentException("Target error must not be negative: " + targetError);
+            }
+            if (bufferSize <= 0) {
+                throw new IllegalArgumentException("Buffer size must be positive: " + bufferSize);
+            }
+            if (rangeSize <= 0) {
+                throw new IllegalArgumentException("Range size must be positive: " + rangeSize);
+            }
+            if (requestsInFlight <= 0) {
+                throw new IllegalArgumentException("Requests in flight must be positive: " + requestsInFlight);
+            }
+            return new AvroCounter(this);
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+    private final ExecutorService listingExecutor;
+    private final long splitSize;
+    private final int bufferSize;
+    private final boolean useMmap;
+    private final boolean recursive;
+    private final CountCache cache;
+    private final boolean resume;
+    private final boolean skipCorrupt;
+    private final boolean verify;
+    private final RecordPredicate where;
+    private final DistinctField distinct;
+    private final boolean writeSketches;
+    private final CountProgress progress;
+    private final ExecutorService verifyExecutor;
+    private final Semaphore pendingVerifications;
+    private final double targetError;
+    private final Long seed;
+    private final boolean useIndex;
+    private final boolean writeIndex;
+    private final String metadataKey;
+    private final double verifyMetadata;
+    private final SchemaFingerprints fingerprints = new SchemaFingerprints();
+    private final boolean hasConfiguration;
+    private Configuration conf;
+    private Boolean defaultFileSystemLocal;
+    private final String objectStoreEndpoint;
+    private final int rangeSize;
+    private final int requestsInFlight;
+    private ObjectStore objectStore;
+
+    private AvroCounter(Builder builder) {
+        this.ownsExecutor = builder.executor == null;
+        this.executor = ownsExecutor ? newExecutor(builder.parallelism) : builder.executor;
+        this.listingExecutor = Executors.newFixedThreadPool(LISTING_PARALLELISM,
+                daemonThreadFactory(String.format("avro-lister-%s", POOL_SEQUENCE.incrementAndGet())));
+        this.splitSize = builder.splitSize;
+        this.bufferSize = builder.bufferSize;
+        this.useMmap = builder.memoryMapping;
+        this.recursive = builder.recursive;
+        this.cache = builder.cacheFile != null ? CountCache.load(builder.cacheFile, builder.cacheSize) : null;
+        this.resume = builder.resume;
+        this.skipCorrupt = builder.skipCorrupt;
+        this.where = builder.where;
+        this.distinct = builder.distinct;
+        this.writeSketches = builder.writeSketches;
+        this.progress = builder.progress;
+        // matching records and distinct values are counted while verifying blocks
+        this.verify = builder.verify || where != null || distinct != null;
+        int verifyParallelism = builder.verifyParallelism > 0
+                ? builder.verifyParallelism
+                : Runtime.getRuntime().availableProcessors();
+        this.verifyExecutor = verify
+                ? Executors.newFixedThreadPool(verifyParallelism,
+                        daemonThreadFactory(String.format("avro-verifier-%s", POOL_SEQUENCE.incrementAndGet())))
+                : null;
+        this.pendingVerifications = new Semaphore(verifyParallelism * PENDING_VERIFICATIONS_PER_THREAD);
+        this.targetError = builder.targetError;
+        this.seed = builder.seed;
+        this.useIndex = builder.useIndex;
+        this.writeIndex = builder.writeIndex;
+        this.metadataKey = builder.metadataKey;
+        this.verifyMetadata = builder.verifyMetadata;
+        this.hasConfiguration = builder.conf != null;
+        this.conf = builder.conf;
+        this.objectStoreEndpoint = builder.objectStoreEndpoint;
+        this.rangeSize = builder.rangeSize;
+        this.requestsInFlight = builder.requestsInFlight;
+    }
+
+    private synchronized Configuration configuration() {
+        if (conf == null) {
+            conf = new Configuration();
+        }
+        return conf;
+    }
+
+    /**
+     * @return the client of the object store, created for the first s3:// path
+     */
+    private synchronized ObjectStore objectStore() {
+        if (objectStore == null) {
+            objectStore = new ObjectStore(objectStoreEndpoint, rangeSize, requestsInFlight);
+        }
+        return objectStore;
+    }
+
+    /**
+     * Whether the given path is listed and read via java.nio instead of the Hadoop FileSystem API
+     *
+     * This is the case for paths without a scheme, as long as they refer to the local filesystem: either the
+     * configuration given to the builder has a local default filesystem, or no configuration is given and there is
+     * no core-site.xml on the classpath which could configure a different one (e.g. when run via 'yarn jar').
+     */
+    public boolean isLocal(String path) {
+        if (SCHEME.matcher(path).lookingAt()) {
+            return false;
+        }
+        synchronized (this) {
+            if (defaultFileSystemLocal == null) {
+                defaultFileSystemLocal = !hasConfiguration && getClass().getClassLoader().getResource("core-site.xml") == null
+                        || AvroFileLister.isDefaultFileSystemLocal(configuration());
+            }
+            return defaultFileSystemLocal;
+        }
+    }
+
+    /**
+     * Counting is mostly bound by I/O latency, so use more threads than cores, but limit the amount of
+     * concurrently opened files to not exhaust file descriptors or datanode connections
+     */
+    private static int defaultParallelism() {
+        return Math.min(MAX_DEFAULT_PARALLELISM, Runtime.getRuntime().availableProcessors() * DEFAULT_THREADS_PER_CORE);
+    }
+
+    /**
+     * Creates a pool of daemon threads which starts the largest pending counting tasks first
+     *
+     * Such a pool can be shared by multiple counters via {@link Builder#executor(ExecutorService)}, other executors
+     * run the counting tasks in the order of their submission.
+     *
+     * @param parallelism amount of threads, a non-positive value selects four threads per core (at most 64)
+     */
+    public static ExecutorService newExecutor(int parallelism) {
+        return new LargestFirstExecutor(parallelism > 0 ? parallelism : defaultParallelism(),
+                daemonThreadFactory(String.format("avro-counter-%s", POOL_SEQUENCE.incrementAndGet())));
+    }
+
+    private static ThreadFactory daemonThreadFactory(String prefix) {
+        AtomicInteger threads = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, String.format("%s-%s", prefix, threads.incrementAndGet()));
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Counts all avro files matching the given paths
+     *
+     * @param paths paths to avro files or directories containing avro files, Hadoop glob patterns are supported
+     * @param listener receives the result of every file as soon as it has been counted, might be called from
+     *                 multiple threads concurrently
+     * @return the summary over all files, completes exceptionally if listing or counting any file failed
+     */
+    public CompletableFuture<CountResult> count(List<String> paths, Consumer<CountResult> listener) {
+        return count(paths, false, file -> { }, listener, () -> { });
+    }
+
+    /**
+     * Counts all avro files matching the given paths, grouped by their Hive-style partition
+     *
+     * The partition of a file consists of the key=value segments of its directories, e.g. dt=2026-10-17/hr=03,
+     * files outside of any partition are grouped under an empty name.
+     *
+     * @param listener receives the summary of every partition, see {@link CountResult#getPath()}, in the order of
+     *                 their names: once listing is finished, every partition is handed over as soon as all of its
+     *                 files and all preceding partitions have been counted
+     * @return the summary over all files, completes exceptionally if listing or counting any file failed
+     */
+    public CompletableFuture<CountResult> countByPartition(List<String> paths, Consumer<CountResult> listener) {
+        PartitionGrouping partitions = new PartitionGrouping(listener);
+        return count(paths, false, partitions::listed, partitions::counted, partitions::listingFinished);
+    }
+
+    /**
+     * Counts all avro files matching the given paths, grouped by the writer schema and the codec of the files
+     *
+     * Schemas are identified by their fingerprint, see {@link CountResult#getSchemaFingerprint()}. Cached and indexed
+     * counts are still used, only the header of these files is read.
+     *
+     * @param listener receives the summary of every combination of schema and codec once all files are counted, in
+     *                 the order of their names: the fingerprint and the codec separated by a slash, e.g.
+     *                 9f1c0c9d4a1e8b7a/snappy, the fingerprint is "unknown" if the schema cannot be parsed
+     * @return the summary over all files, completes exceptionally if listing or counting any file failed
+     */
+    public CompletableFuture<CountResult> countBySchema(List<String> paths, Consumer<CountResult> listener) {
+        ConcurrentMap<String, CountResult> schemas = new ConcurrentHashMap<>();
+        return count(paths, true, file -> { }, file -> schemas
+                .computeIfAbsent(schemaGroup(file), CountResult::summary)
+                .add(file), () -> { })
+                .thenApply(summary -> {
+                    new TreeMap<>(schemas).values().forEach(listener);
+                    return summary;
+                });
+    }
+
+    /**
+     * @return the name of the group of a file by schema and codec, e.g. 9f1c0c9d4a1e8b7a/snappy
+     */
+    private static String schemaGroup(CountResult file) {
+        return String.format("%s/%s", file.getSchemaFingerprint() != null ? file.getSchemaFingerprint() : "unknown",
+                file.getCodec());
+    }
+
+    /**
+     * @param readHeaders whether the header of files is read even if their count is taken from the cache, index or sketch
+     */
+    private CompletableFuture<CountResult> count(List<String> paths, boolean readHeaders, Consumer<CountableFile> onListed,
+                                                 Consumer<CountResult> listener, Runnable onListingFinished) {
+        final long startedAt = System.nanoTime();
+        final Queue<CompletableFuture<CountResult>> files = new ConcurrentLinkedQueue<>();
+
+        Consumer<CountableFile> consumer = file -> {
+            onListed.accept(file);
+            if (progress != null) {
+                progress.listed(file);
+            }
+            CompletableFuture<CountResult> result = count(file);
+            if (readHeaders) {
+                // cached, indexed and sketched counts are taken without reading the file
+                result = result.thenCompose(count -> count.getCodec() == null
+                        ? submit(file.getPath(), 0L, () -> readHeader(file, count))
+                        : CompletableFuture.completedFuture(count));
+            }
+            files.add(result.thenApply(count -> {
+                if (progress != null) {
+                    progress.finished(count);
+                }
+                listener.accept(count);
+                return count;
+            }));
+        };
+
+        CompletableFuture<Void> listed = list(paths, consumer);
+
+        return listed
+                .thenCompose(v -> {
+                    onListingFinished.run();
+                    return CompletableFuture.allOf(files.toArray(new CompletableFuture<?>[0]));
+                })
+                .thenApply(v -> {
+                    CountResult summary = CountResult.summary();
+                    for (CompletableFuture<CountResult> file : files) {
+                        summary.add(file.join());
+                    }
+                    summary.startedAt = startedAt;
+                    summary.finished();
+
+                    if (cache != null) {
+                        try {
+                            cache.save();
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+                    return summary;
+                });
+    }
+
+    /**
+     * Keeps counting the avro files of the given paths as they arrive, until the returned watcher is closed
+     *
+     * Only files which are new or have changed since they were counted are counted at every poll, see
+     * {@link CountWatcher}. Paths are interpreted like those given to {@link #count(List, Consumer)}.
+     *
+     * @param pollIntervalMillis the interval at which changes are looked for, also the time for which the length of
+     *                           a file has to be stable before it is counted
+     * @param listener receives the files counted by every poll and the running total
+     * @throws IOException if the paths cannot be listed initially, e.g. because they do not exist
+     */
+    public CountWatcher watch(List<String> paths, long pollIntervalMillis, CountWatcher.Listener listener) throws IOException {
+        return new CountWatcher(this, paths, pollIntervalMillis, listener);
+    }
+
+    boolean isRecursive() {
+        return recursive;
+    }
+
+    void saveCache() throws IOException {
+        if (cache != null) {
+            cache.save();
+        }
+    }
+
+    /**
+     * Lists the avro files of the given paths with the lister of their filesystem, see {@link FileLister}
+     */
+    CompletableFuture<Void> list(List<String> paths, Consumer<CountableFile> consumer) {
+        return list(paths, null, consumer);
+    }
+
+    /**
+     * @param directories the directories of the previous listing of the same paths, only directories which changed
+     *                    since are listed if present, see {@link ListedDirectories}
+     */
+    CompletableFuture<Void> list(List<String> paths, ListedDirectories directories, Consumer<CountableFile> consumer) {
+        List<String> localPaths = new ArrayList<>();
+        List<String> hadoopPaths = new ArrayList<>();
+        List<String> objectStorePaths = new ArrayList<>();
+        for (String path : paths) {
+            if (ObjectStore.isObjectStorePath(path)) {
+                objectStorePaths.add(path);
+            } else {
+                (isLocal(path) ? localPaths : hadoopPaths).add(path);
+            }
+        }
+        CompletableFuture<Void> listed = new LocalFileLister(listingExecutor, recursive, directories, consumer).list(localPaths);
+        if (!hadoopPaths.isEmpty()) {
+            listed = CompletableFuture.allOf(listed,
+                    new AvroFileLister(configuration(), listingExecutor, recursive, directories, consumer).list(hadoopPaths));
+        }
+        if (!objectStorePaths.isEmpty()) {
+            listed = CompletableFuture.allOf(listed,
+                    new ObjectStoreLister(objectStore(), listingExecutor, recursive, consumer).list(objectStorePaths));
+        }
+        return listed;
+    }
+
+    /**
+     * Counts the avro data of the given stream, the stream is consumed completely and closed afterwards
+     *
+     * @param name name of the stream which is used as path of the result
+     */
+    public CompletableFuture<CountResult> count(InputStream in, String name) {
+        // the length of a stream is unknown, start it right away
+        CompletableFuture<CountResult> count = submit(name, Long.MAX_VALUE,
+                () -> countStream(new BufferedInputStream(in, bufferSize), name));
+        return progress == null ? count : count.thenApply(result -> {
+            progress.finished(result);
+            return result;
+        });
+    }
+
+    CompletableFuture<CountResult> count(CountableFile file) {
+        String path = file.getPath();
+        CountCache.Entry cached = cache != null ? cache.get(path) : null;
+        if (!verify && !writeIndex && cached != null && cached.isUnchanged(file.getLength(), file.getModificationTime())) {
+            LOGGER.debug("Using cached count for {}", path);
+            CountResult count = new CountResult(path, file.getLength());
+            count.addPrevious(cached.records, cached.blocks);
+            count.cached = true;
+            return CompletableFuture.completedFuture(count);
+        }
+
+        if (metadataKey != null) {
+            if (verifyMetadata > 0 && random(file).nextDouble() < verifyMetadata) {
+                // the blocks are counted even if the file has a valid index, the metadata is read while counting
+                LOGGER.debug("Verifying the count in the metadata of {}", path);
+                return count(file, cached);
+            }
+            return submit(path, file.getLength(), () -> readMetadataCount(file)).thenCompose(fromMetadata -> fromMetadata != null
+                    ? CompletableFuture.completedFuture(fromMetadata)
+                    : readSidecarOrCount(file, cached));
+        }
+        return readSidecarOrCount(file, cached);
+    }
+
+    /**
+     * Takes the count from the sketch or index next to the file if possible, counts the file otherwise
+     */
+    private CompletableFuture<CountResult> readSidecarOrCount(CountableFile file, CountCache.Entry cached) {
+        String path = file.getPath();
+        if (useIndex && distinct != null) {
+            return submit(path, file.getLength(), () -> readSketch(file)).thenCompose(sketched -> sketched != null
+                    ? CompletableFuture.completedFuture(sketched)
+                    : count(file, cached));
+        }
+        if (useIndex && !verify) {
+            return submit(path, file.getLength(), () -> readIndex(file)).thenCompose(indexed -> indexed != null
+                    ? CompletableFuture.completedFuture(indexed)
+                    : count(file, cached));
+        }
+        return count(file, cached);
+    }
+
+    private CompletableFuture<CountResult> count(CountableFile file, CountCache.Entry cached) {
+        String path = file.getPath();
+        CountResult initial = new CountResult(path, file.getLength());
+        if (writeIndex) {
+            initial.indexBlocks = new BlockIndex.Blocks();
+        }
+        CompletableFuture<CountResult> count = CompletableFuture.completedFuture(initial);
+        if (targetError > 0) {
+            count = count.thenCombine(submit(path, file.getLength(), () -> estimate(file)), CountResult::merge);
+        } else if (resume && !verify && !writeIndex && cached != null && cached.length < file.getLength()) {
+            count = count.thenCombine(submit(path, file.getLength() - cached.offset,
+                    () -> resume(file, cached)), CountResult::merge);
+        } else {
+            for (AvroFileSplit split : split(file, splitSize)) {
+                count = count.thenCombine(submit(split.getPath(), split.end - split.start,
+                        () -> count(split)), CountResult::merge);
+            }
+        }
+
+        if (writeIndex) {
+            count = count.thenApply(result -> {
+                writeIndex(file, result);
+                return result;
+            });
+        }
+        if (writeSketches) {
+            count = count.thenApply(result -> {
+                writeSketch(file, result);
+                return result;
+            });
+        }
+        if (cache == null) {
+            return count;
+        }
+        return count.thenApply(result -> {
+            if (!result.getSkippedRanges().isEmpty() || result.isEstimated()) {
+                LOGGER.debug("Not caching the incomplete count of {}", path);
+                return result;
+            }
+            cache.put(new CountCache.Entry(path, file.getLength(), file.getModificationTime(), result.sync,
+                    result.records, result.blocks, result.end));
+            return result;
+        });
+    }
+
+    /**
+     * @return the count from the block index of the given file, null if it has no valid index
+     */
+    private static CountResult readIndex(CountableFile file) throws IOException {
+        BlockIndex.Header header;
+        try (InputStream in = file.openSidecar(BlockIndex.SUFFIX)) {
+            if (in == null) {
+                return null;
+            }
+            header = BlockIndex.readHeader(new BufferedInputStream(in, 128));
+        } catch (EOFException e) {
+            LOGGER.warn("Ignoring truncated block index of {}", file.getPath());
+            return null;
+        } catch (IOException e) {
+            LOGGER.warn("Ignoring block index of {}: {}", file.getPath(), e.getMessage());
+            return null;
+        }
+        if (!header.isValidFor(file.getLength(), file.getModificationTime())) {
+            LOGGER.debug("Ignoring outdated block index of {}", file.getPath());
+            return null;
+        }
+
+        LOGGER.debug("Using block index of {}", file.getPath());
+        CountResult count = new CountResult(file.getPath(), file.getLength());
+        count.addPrevious(header.getRecords(), header.getBlocks());
+        count.sync = header.getSync();
+        count.indexed = true;
+        return count;
+    }
+
+    private static void writeIndex(CountableFile file, CountResult count) {
+        if (!count.getSkippedRanges().isEmpty()) {
+            LOGGER.warn("Not writing a block index of {}, corrupt ranges have been skipped", file.getPath());
+        } else {
+            try {
+                file.writeSidecar(BlockIndex.SUFFIX, BlockIndex.write(file.getLength(), file.getModificationTime(),
+                        count.sync, count.indexBlocks));
+                LOGGER.debug("Wrote block index of {}", file.getPath());
+            } catch (IOException e) {
+                throw new UncheckedIOException(String.format("Failed to write block index of %s", file.getPath()), e);
+            }
+        }
+        // the blocks are not needed anymore, but the result is kept until all files are counted
+        count.indexBlocks = null;
+    }
+
+    /**
+     * @return the count including the sketch of distinct values from the sidecar of the given file, null if it has
+     * no valid sketch
+     */
+    private CountResult readSketch(CountableFile file) throws IOException {
+        CountResult count;
+        try (InputStream in = file.openSidecar(SketchSidecar.suffix(distinct.getName()))) {
+            if (in == null) {
+                return null;
+            }
+            count = SketchSidecar.read(new BufferedInputStream(in, bufferSize), file);
+        } catch (EOFException e) {
+            LOGGER.warn("Ignoring truncated sketch of {}", file.getPath());
+            return null;
+        } catch (IOException e) {
+            LOGGER.warn("Ignoring sketch of {}: {}", file.getPath(), e.getMessage());
+            return null;
+        }
+        if (count == null) {
+            LOGGER.debug("Ignoring outdated sketch of {}", file.getPath());
+        } else {
+            LOGGER.debug("Using sketch of {}", file.getPath());
+        }
+        return count;
+    }
+
+    private void writeSketch(CountableFile file, CountResult count) {
+        if (!count.getSkippedRanges().isEmpty()) {
+            LOGGER.warn("Not writing a sketch of {}, corrupt ranges have been skipped", file.getPath());
+            return;
+        }
+        try {
+            file.writeSidecar(SketchSidecar.suffix(distinct.getName()),
+                    SketchSidecar.write(file.getLength(), file.getModificationTime(), count));
+            LOGGER.debug("Wrote sketch of {}", file.getPath());
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Failed to write sketch of %s", file.getPath()), e);
+        }
+    }
+
+    private static AvroFileSplit[] split(CountableFile file, long splitSize) {
+        if (splitSize > 0 && file.getLength() > splitSize) {
+            LOGGER.debug("Splitting {} ({} bytes) into ranges of {} bytes", file.getPath(), file.getLength(), splitSize);
+            AvroFileSplit[] splits = new AvroFileSplit[(int) ((file.getLength() + splitSize - 1) / splitSize)];
+            for (int i = 0; i < splits.length; i++) {
+                long start = i * splitSize;
+                splits[i] = new AvroFileSplit(file, start, Math.min(start + splitSize, file.getLength()));
+            }
+            return splits;
+        }
+        return new AvroFileSplit[]{new AvroFileSplit(file, 0, file.getLength())};
+    }
+
+    private static String codec(CountableBlockReader reader) {
+        String codec = reader.getMetaString(DataFileConstants.CODEC);
+        return codec != null ? codec : DataFileConstants.NULL_CODEC;
+    }
+
+    /**
+     * Takes the properties of a file from its header, the fingerprint of identical schemas is only computed once
+     */
+    private void header(CountableBlockReader reader, CountResult count) {
+        count.codec = codec(reader);
+        count.schemaFingerprint = fingerprints.get(reader.getMetaString(DataFileConstants.SCHEMA));
+        count.sync = reader.getSync();
+    }
+
+    /**
+     * @return the amount of records stated by the header metadata of a file, null if it is not stated or invalid
+     */
+    private Long metadataRecords(CountableBlockReader reader) {
+        String value = reader.getMetaString(metadataKey);
+        if (value == null) {
+            return null;
+        }
+        try {
+            long records = Long.parseLong(value.trim());
+            return records >= 0 ? records : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the count of a file from its header metadata, null if the metadata does not state it
+     */
+    private CountResult readMetadataCount(CountableFile file) throws IOException {
+        CountResult count = new CountResult(file.getPath(), file.getLength());
+        count.started();
+        Long records;
+        try (SeekableBlockReader fileReader = file.open(useMmap)) {
+            header(fileReader, count);
+            records = metadataRecords(fileReader);
+            if (records == null && fileReader.getMeta(metadataKey) != null) {
+                LOGGER.warn("Ignoring invalid record count '{}' in the metadata of {}",
+                        fileReader.getMetaString(metadataKey), file.getPath());
+            }
+            count.bytesRead = fileReader.getBytesRead();
+        }
+        if (records == null) {
+            LOGGER.debug("No record count in the metadata of {}", file.getPath());
+            return null;
+        }
+        count.finished();
+        count.records = records;
+        count.fromMetadata = true;
+        return count;
+    }
+
+    private CountResult readHeader(CountableFile file, CountResult count) throws IOException {
+        try (SeekableBlockReader fileReader = file.open(useMmap)) {
+            header(fileReader, count);
+            count.bytesRead += fileReader.getBytesRead();
+        }
+        return count;
+    }
+
+    private CountResult countStream(InputStream inStream, String name) throws IOException {
+        CountResult count = new CountResult(name, null);
+        count.started();
+        try (CountableSkipDataFileStream streamReader = new CountableSkipDataFileStream(inStream)) {
+            BlockVerification verification = verification(streamReader);
+            CountProgress.Batch batch = progress != null ? progress.batch() : null;
+            // the offsets of blocks within a stream are unknown, blocks are identified by their number instead
+            long block = 0L;
+            while (streamReader.hasNextBlock()) {
+                ByteBuffer data = verification != null ? streamReader.readBlockData() : null;
+                // all bytes read so far have been added to the progress, including the header
+                final long progressed = count.progressBytes;
+                streamReader.nextBlock();
+                count.addBlock(streamReader.getBlockCount(), streamReader.getBlockSize());
+                if (batch != null) {
+                    progress(batch, count, streamReader.getBlockCount(), streamReader.getBytesRead() - progressed);
+                }
+                if (verification != null) {
+                    verification.submit(String.format("#%s", block++), data, streamReader.getBlockCount());
+                }
+            }
+            if (batch != null) {
+                batch.flush();
+            }
+            if (verification != null) {
+                verified(verification, count);
+            }
+            header(streamReader, count);
+            count.bytesRead = streamReader.getBytesRead();
+        }
+        count.finished();
+        return count;
+    }
+
+    private CountResult count(AvroFileSplit split) throws IOException {
+        CountResult count = new CountResult(split.file.getPath(), split.file.getLength());
+        if (writeIndex) {
+            count.indexBlocks = new BlockIndex.Blocks();
+        }
+        count.started();
+        try (SeekableBlockReader fileReader = split.file.open(useMmap)) {
+            if (split.start > 0) {
+                fileReader.sync(split.start);
+            }
+            count(fileReader, split.end, resume, count);
+        }
+        count.finished();
+        return count;
+    }
+
+    /**
+     * Counts the blocks from the current position of the reader up to the given end of its split
+     *
+     * Files which are still being appended to might end with a partially written block, if tolerateTruncation is
+     * set, counting stops at the last complete block instead of failing. If skipCorrupt is set, a corrupt block is
+     * skipped up to the next sync marker of the file instead of failing.
+     */
+    private void count(SeekableBlockReader fileReader, long end, boolean tolerateTruncation, CountResult count) throws IOException {
+        BlockVerification verification = verification(fileReader);
+        CountProgress.Batch batch = progress != null ? progress.batch() : null;
+        while (!fileReader.pastSync(end)) {
+            final long blockStart = fileReader.previousSync();
+            ByteBuffer data = null;
+            try {
+                if (!fileReader.hasNextBlock()) {
+                    break;
+                }
+                if (verification != null) {
+                    data = fileReader.readBlockData();
+                }
+                fileReader.nextBlock();
+                if (fileReader.getBlockCount() < 0) {
+                    throw new IOException("Invalid block count: " + fileReader.getBlockCount());
+                }
+            } catch (EOFException e) {
+                if (tolerateTruncation) {
+                    LOGGER.debug("Ignoring truncated block at offset {}", blockStart);
+                    break;
+                }
+                if (!skipCorrupt) {
+                    throw e;
+                }
+                skipCorrupt(fileReader, blockStart, e, count);
+                continue;
+            } catch (IOException | AvroRuntimeException e) {
+                if (!skipCorrupt) {
+                    throw e;
+                }
+                skipCorrupt(fileReader, blockStart, e, count);
+                continue;
+            }
+            count.addBlock(fileReader.getBlockCount(), fileReader.getBlockSize());
+            if (count.indexBlocks != null) {
+                count.indexBlocks.add(blockStart, fileReader.getBlockSize(), fileReader.getBlockCount());
+            }
+            if (verification != null) {
+                verification.submit(String.format("at offset %s", blockStart), data, fileReader.getBlockCount());
+            }
+            if (batch != null) {
+                progress(batch, count, fileReader.getBlockCount(), fileReader.previousSync() - blockStart);
+            }
+        }
+        if (batch != null) {
+            batch.flush();
+        }
+        if (verification != null) {
+            verified(verification, count);
+        }
+        header(fileReader, count);
+        if (metadataKey != null) {
+            // every split of a file reads the header, the count is checked once they are merged
+            count.metadataRecords = metadataRecords(fileReader);
+        }
+        count.end = fileReader.previousSync();
+        count.bytesRead = fileReader.getBytesRead();
+    }
+
+    /**
+     * Adds a counted block to the batch of the counting thread, and remembers what has been added for the file
+     */
+    private static void progress(CountProgress.Batch batch, CountResult count, long blockCount, long bytes) {
+        batch.block(blockCount, bytes);
+        count.progressBytes += bytes;
+        count.progressRecords += blockCount;
+        count.progressBlocks++;
+    }
+
+    private void verified(BlockVerification verification, CountResult count) throws IOException {
+        count.verifiedBlocks = verification.await();
+        if (where != null) {
+            count.matchingRecords = verification.getMatchingRecords();
+            count.filtered = true;
+        }
+        if (distinct != null) {
+            count.distinct = verification.getDistinctValues();
+        }
+    }
+
+    private BlockVerification verification(CountableBlockReader reader) throws IOException {
+        return verify ? new BlockVerification(verifyExecutor, pendingVerifications,
+                new BlockVerifier(reader, where, distinct), distinct != null) : null;
+    }
+
+    /**
+     * Skips the corrupt block at the given offset by moving the reader behind the next sync marker of the file
+     *
+     * The sync marker of the last valid block is not part of the skipped range, neither is the sync marker which
+     * precedes the next valid block.
+     */
+    private static void skipCorrupt(SeekableBlockReader fileReader, long blockStart, Exception e, CountResult count) throws IOException {
+        fileReader.sync(blockStart + 1);
+        long next = fileReader.previousSync();
+        long skippedEnd = next >= count.getLength() ? count.getLength() : next - DataFileConstants.SYNC_SIZE;
+        count.addSkipped(blockStart, skippedEnd);
+        LOGGER.warn("Skipped corrupt bytes {}-{} of {}: {}", blockStart, skippedEnd, count.getPath(), e.getMessage());
+    }
+
+    /**
+     * Estimates the amount of records of a file from the blocks which contain random offsets of its data
+     *
+     * Including its trailing sync marker, every block covers a distinct range of the data, so it is sampled with a
+     * probability of exactly its size divided by the length of the data. The Hansen-Hurwitz estimate of the records
+     * is the mean of the records per byte of the sampled blocks times the length of the data, the estimate of the
+     * blocks the mean of their inverse sizes times the length of the data.
+     */
+    private CountResult estimate(CountableFile file) throws IOException {
+        CountResult count = new CountResult(file.getPath(), file.getLength());
+        count.started();
+        try (SeekableBlockReader fileReader = file.open(useMmap)) {
+            final long dataStart = fileReader.previousSync();
+            final long dataLength = file.getLength() - dataStart;
+            final Random random = random(file);
+
+            long samples = 0L;
+            long sampledBytes = 0L;
+            double sum = 0.0;
+            double sumOfSquares = 0.0;
+            double inverseSizes = 0.0;
+            double payloadPerByte = 0.0;
+            long minBlockSize = Long.MAX_VALUE;
+            long maxBlockSize = 0L;
+            long window = MIN_SAMPLE_WINDOW;
+            for (int attempt = 0; dataLength > 0 && samples < MAX_SAMPLES && attempt < 2 * MAX_SAMPLES; attempt++) {
+                final long offset = dataStart + (long) (random.nextDouble() * dataLength);
+                final long blockStart = readBlockContaining(fileReader, dataStart, offset, window);
+                if (blockStart < 0) {
+                    continue;
+                }
+                final long bytes = fileReader.previousSync() - blockStart;
+                final double recordsPerByte = fileReader.getBlockCount() / (double) bytes;
+                // the start of most blocks is found by a single search from the largest block size seen
+                window = Math.max(window, bytes);
+                samples++;
+                sampledBytes += bytes;
+                sum += recordsPerByte;
+                sumOfSquares += recordsPerByte * recordsPerByte;
+                inverseSizes += 1.0 / bytes;
+                payloadPerByte += fileReader.getBlockSize() / (double) bytes;
+                minBlockSize = Math.min(minBlockSize, fileReader.getBlockSize());
+                maxBlockSize = Math.max(maxBlockSize, fileReader.getBlockSize());
+
+                if (2 * sampledBytes >= dataLength) {
+                    break;
+                }
+                if (samples >= MIN_SAMPLES) {
+                    double mean = sum / samples;
+                    double variance = Math.max(0.0, (sumOfSquares - samples * mean * mean) / (samples - 1));
+                    if (CountResult.CONFIDENCE_Z * Math.sqrt(variance / samples) <= targetError * mean) {
+                        break;
+                    }
+                }
+            }
+
+            if (samples < MIN_SAMPLES || 2 * sampledBytes >= dataLength) {
+                LOGGER.debug("Counting {} exactly, sampling would read most of it", file.getPath());
+                fileReader.seek(dataStart);
+                count(fileReader, file.getLength(), resume, count);
+            } else {
+                double mean = sum / samples;
+                double variance = Math.max(0.0, (sumOfSquares - samples * mean * mean) / (samples - 1));
+                count.records = Math.round(mean * dataLength);
+                count.blocks = Math.max(1L, Math.round(dataLength * inverseSizes / samples));
+                // the sizes of the sampled blocks, and the estimated size of all blocks for their average
+                count.minBlockSize = minBlockSize;
+                count.maxBlockSize = maxBlockSize;
+                count.totalBlockSize = Math.round(dataLength * payloadPerByte / samples);
+                count.variance = (double) dataLength * dataLength * variance / samples;
+                count.sampledBlocks = samples;
+                count.estimated = true;
+                header(fileReader, count);
+                count.bytesRead = fileReader.getBytesRead();
+                LOGGER.debug("Estimated {} records of {} from {} blocks", count.records, file.getPath(), samples);
+            }
+        }
+        count.finished();
+        return count;
+    }
+
+    /**
+     * Continues counting a file which has grown since its last count at the end of the last counted block
+     *
+     * The file is only considered to be appended to if its header still holds the same sync marker and the
+     * previous end offset is still preceded by a sync marker, otherwise the whole file is counted again.
+     */
+    private CountResult resume(CountableFile file, CountCache.Entry previous) throws IOException {
+        CountResult count = new CountResult(file.getPath(), file.getLength());
+        count.started();
+        try (SeekableBlockReader fileReader = file.open(useMmap)) {
+            if (Arrays.equals(fileReader.getSync(), previous.sync) && previous.offset >= DataFileConstants.SYNC_SIZE) {
+                fileReader.sync(previous.offset - DataFileConstants.SYNC_SIZE);
+                if (fileReader.previousSync() == previous.offset) {
+                    LOGGER.debug("Resuming {} at offset {}", file.getPath(), previous.offset);
+                    count.addPrevious(previous.records, previous.blocks);
+                    count(fileReader, file.getLength(), true, count);
+                    count.finished();
+                    return count;
+                }
+            }
+
+            LOGGER.debug("{} has been rewritten since its last count, counting it from the start", file.getPath());
+            fileReader.sync(0);
+            count(fileReader, file.getLength(), true, count);
+        }
+        count.finished();
+        return count;
+    }
+
+    /**
+     * @return the random numbers for sampling the given file, the same for every count of the file if seeded
+     */
+    private Random random(CountableFile file) {
+        if (seed == null) {
+            return ThreadLocalRandom.current();
+        }
+        return new Random((seed * 31 + file.getPath().hashCode()) * 31 + file.getLength());
+    }
+
+    /**
+     * Reads the header of the block which contains the given offset of the data of a file
+     *
+     * Sync markers can only be searched forwards, so the search starts the given window before the offset, and is
+     * repeated with twice the window until it finds a block which starts at or before the offset. The blocks from
+     * there on are walked up to the one containing the offset.
+     *
+     * @return the start of the block, the reader is positioned at its end, -1 if there is no complete block at the
+     * offset
+     */
+    private static long readBlockContaining(SeekableBlockReader reader, long dataStart, long offset, long window)
+            throws IOException {
+        long blockStart;
+        do {
+            // the sync marker of the header precedes the first block
+            reader.sync(Math.max(dataStart - DataFileConstants.SYNC_SIZE, offset - window));
+            blockStart = reader.previousSync();
+            window *= 2;
+        } while (blockStart > offset);
+
+        while (reader.hasNextBlock()) {
+            reader.nextBlock();
+            if (reader.previousSync() > offset) {
+                return blockStart;
+            }
+            blockStart = reader.previousSync();
+        }
+        return -1L;
+    }
+
+    private <T> CompletableFuture<T> submit(String path, long size, Callable<T> counter) {
+        Callable<T> task = () -> {
+            try {
+                LOGGER.debug("Started to process {}", path);
+
+                long startedProcessingAt = System.currentTimeMillis();
+                T count = counter.call();
+
+                LOGGER.debug("Processed {} in {}ms", path, System.currentTimeMillis() - startedProcessingAt);
+                return count;
+            } catch (Exception e) {
+                LOGGER.error(String.format("Error occurred while processing %s", path), e);
+                throw e;
+            }
+        };
+
+        if (executor instanceof LargestFirstExecutor) {
+            return ((LargestFirstExecutor) executor).submit(size, task);
+        }
+        CompletableFuture<T> future = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                future.complete(task.call());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Shuts down the internal thread pools and the object store client, a given executor is left running
+     */
+    @Override
+    public void close() {
+        listingExecutor.shutdown();
+        if (verifyExecutor != null) {
+            verifyExecutor.shutdown();
+        }
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
+        synchronized (this) {
+            if (objectStore != null) {
+                try {
+                    objectStore.close();
+                } catch (IOException e) {
+                    LOGGER.warn("Failed to close the object store client: {}", e.getMessage());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.github.jwoschitz.avro.count;
+
+import com.github.jwoschitz.avro.file.CountableSkipDataFileReader;
+import com.github.jwoschitz.avro.file.MappedSkipDataFileReader;
+import com.github.jwoschitz.avro.file.SeekableBlockReader;
+import org.apache.avro.file.SeekableFileInput;
+import org.apache.avro.mapred.FsInput;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocalFileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Lists avro files via the Hadoop FileSystem API, which supports any filesystem Hadoop is configured for
+ *
+ * This is the only class of the counting engine which depends on Hadoop, it is only loaded if a path requires it.
+ *
+ * @see LocalFileLister
+ */
+class AvroFileLister extends FileLister {
+    private final static Logger LOGGER = LoggerFactory.getLogger(AvroFileLister.class);
+
+    // filesystems which update the modification time of a directory when its entries change, unlike object stores
+    private static final Set<String> DIRECTORY_TIMES_SCHEMES = new HashSet<>(Arrays.asList(
+            "file", "hdfs", "viewfs", "webhdfs", "swebhdfs"));
+
+    private final Configuration conf;
+
+    AvroFileLister(Configuration conf, Executor executor, boolean recursive, ListedDirectories directories,
+                   Consumer<CountableFile> consumer) {
+        super(executor, recursive, directories, consumer);
+        this.conf = conf;
+    }
+
+    /**
+     * @return whether paths without a scheme refer to the local filesystem
+     */
+    static boolean isDefaultFileSystemLocal(Configuration conf) {
+        return "file".equals(FileSystem.getDefaultUri(conf).getScheme());
+    }
+
+    @Override
+    void listPath(String path) throws IOException {
+        Path p = new Path(path);
+        FileSystem fs = p.getFileSystem(conf);
+
+        FileStatus[] matches = fs.globStatus(p);
+        if (matches == null) {
+            throw new FileNotFoundException(String.format("File %s does not exist", path));
+        }
+        if (matches.length == 0) {
+            LOGGER.error("Ignoring {}, does not match any file", path);
+        }
+
+        for (FileStatus status : matches) {
+            if (status.isDirectory()) {
+                listDirectory(fs, status);
+            } else {
+                accept(fs, status);
+            }
+        }
+    }
+
+    private void listDirectory(FileSystem fs, FileStatus directory) {
+        submit(() -> {
+            String path = directory.getPath().toString();
+            List<String> unchanged = directories != null && DIRECTORY_TIMES_SCHEMES.contains(fs.getScheme())
+                    ? directories.lookup(path, directory.getModificationTime())
+                    : null;
+            if (unchanged != null) {
+                LOGGER.debug("Skipping {}, has not changed", path);
+                for (String subdirectory : unchanged) {
+                    try {
+                        listDirectory(fs, fs.getFileStatus(new Path(subdirectory)));
+                    } catch (FileNotFoundException e) {
+                        LOGGER.debug("Ignoring {}, has been removed", subdirectory);
+                    }
+                }
+                return;
+            }
+
+            LOGGER.debug("Listing {}", path);
+            List<String> subdirectories = new ArrayList<>();
+            RemoteIterator<FileStatus> statuses = fs.listStatusIterator(directory.getPath());
+            while (statuses.hasNext() && !isFailed()) {
+                FileStatus status = statuses.next();
+                if (isHidden(status.getPath().getName())) {
+                    LOGGER.debug("Ignoring hidden {}", status.getPath());
+                } else if (status.isDirectory()) {
+                    if (recursive) {
+                        subdirectories.add(status.getPath().toString());
+                        listDirectory(fs, status);
+                    } else {
+                        LOGGER.debug("Ignoring directory {}, recursion is disabled", status.getPath());
+                    }
+                } else {
+                    accept(fs, status);
+                }
+            }
+            if (directories != null && !isFailed()) {
+                directories.listed(path, directory.getModificationTime(), subdirectories);
+            }
+        });
+    }
+
+    private void accept(FileSystem fs, FileStatus status) {
+        accept(status.getPath().getName(), new HadoopFile(fs, status));
+    }
+
+    private static class HadoopFile implements CountableFile {
+        private final FileSystem fs;
+        private final FileStatus status;
+
+        HadoopFile(FileSystem fs, FileStatus status) {
+            this.fs = fs;
+            this.status = status;
+        }
+
+        @Override
+        public String getPath() {
+            return status.getPath().toString();
+        }
+
+        @Override
+        public long getLength() {
+            return status.getLen();
+        }
+
+        @Override
+        public long getModificationTime() {
+            return status.getModificationTime();
+        }
+
+        @Override
+        public SeekableBlockReader open(boolean useMmap) throws IOException {
+            if (fs instanceof LocalFileSystem) {
+                // bypass the checksum layer of the local filesystem and read via FileChannel directly
+                File file = ((LocalFileSystem) fs).pathToFile(status.getPath());
+                return useMmap ? new MappedSkipDataFileReader(file) : new CountableSkipDataFileReader(new SeekableFileInput(file));
+            }
+            return new CountableSkipDataFileReader(new FsInput(status.getPath(), fs));
+        }
+
+        @Override
+        public InputStream openSidecar(String suffix) throws IOException {
+            try {
+                return fs.open(sidecar(suffix));
+            } catch (FileNotFoundException e) {
+                return null;
+            }
+        }
+
+        /**
+         * A Hadoop rename does not replace an existing file, readers might therefore briefly miss the sidecar
+         */
+        @Override
+        public void writeSidecar(String suffix, byte[] content) throws IOException {
+            Path sidecar = sidecar(suffix);
+            Path temp = new Path(sidecar.getParent(), String.format(".%s.%s.tmp", sidecar.getName(), System.nanoTime()));
+            try {
+                try (FSDataOutputStream out = fs.create(temp, true)) {
+                    out.write(content);
+                }
+                fs.delete(sidecar, false);
+                if (!fs.rename(temp, sidecar)) {
+                    throw new IOException(String.format("Failed to rename %s to %s", temp, sidecar));
+                }
+            } finally {
+                fs.delete(temp, false);
+            }
+        }
+
+        private Path sidecar(String suffix) {
+            return new Path(status.getPath().getParent(), status.getPath().getName() + suffix);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.github.jwoschitz.avro.count;
+
+import com.github.jwoschitz.avro.file.BlockVerifier;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Verifies the blocks of a single file or split on a separate pool, while the reading thread continues with the
+ * next block
+ *
+ * The amount of blocks which are pending verification is limited by permits shared by all files of a counter, once
+ * they are exhausted the reading threads wait for the verification to catch up. This bounds the memory held by
+ * blocks which have been read but not verified yet.
+ *
+ * When distinct values are counted, every verifying thread adds to a sketch of its own which it takes from a pool,
+ * so a file is sketched by at most as many sketches as there are verifying threads. They are merged once all blocks
+ * are verified.
+ */
+class BlockVerification {
+    private final Executor executor;
+    private final Semaphore permits;
+    private final BlockVerifier verifier;
+    // the sketches of the verifying threads, null unless distinct values are counted
+    private final Queue<HyperLogLog> sketches;
+
+    // the reading thread is registered as one party until it awaits the pending verifications
+    private final Phaser pending = new Phaser(1);
+    private final AtomicLong verifiedBlocks = new AtomicLong();
+    private final AtomicLong matchingRecords = new AtomicLong();
+    private final AtomicReference<IOException> failure = new AtomicReference<>();
+
+    BlockVerification(Executor executor, Semaphore permits, BlockVerifier verifier, boolean distinct) {
+        this.executor = executor;
+        this.permits = permits;
+        this.verifier = verifier;
+        this.sketches = distinct ? new ConcurrentLinkedQueue<>() : null;
+    }
+
+    /**
+     * Verifies the given block asynchronously
+     *
+     * @param block identifies the block in case of a failure, e.g. its offset
+     * @throws IOException if the verification of a previous block has failed already
+     */
+    void submit(String block, ByteBuffer data, long blockCount) throws IOException {
+        checkFailure();
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for verification", e);
+        }
+        pending.register();
+        try {
+            executor.execute(() -> {
+                try {
+                    if (sketches != null) {
+                        HyperLogLog sketch = sketches.poll();
+                        if (sketch == null) {
+                            sketch = new HyperLogLog();
+                        }
+                        try {
+                            matchingRecords.addAndGet(verifier.verify(data, blockCount, sketch::add));
+                        } finally {
+                            sketches.add(sketch);
+                        }
+                    } else {
+                        matchingRecords.addAndGet(verifier.verify(data, blockCount));
+                    }
+                    verifiedBlocks.incrementAndGet();
+                } catch (IOException e) {
+                    failure.compareAndSet(null, new IOException(
+                            String.format("Verification of block %s failed: %s", block, e.getMessage()), e));
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, new IOException(
+                            String.format("Verification of block %s failed", block), e));
+                } finally {
+                    permits.release();
+                    pending.arriveAndDeregister();
+                }
+            });
+        } catch (RuntimeException e) {
+            permits.release();
+            pending.arriveAndDeregister();
+            throw e;
+        }
+    }
+
+    /**
+     * Waits until all submitted blocks are verified
+     *
+     * @return the amount of verified blocks
+     * @throws IOException the first failure of any block
+     */
+    long await() throws IOException {
+        pending.arriveAndAwaitAdvance();
+        checkFailure();
+        return verifiedBlocks.get();
+    }
+
+    /**
+     * @return the amount of verified records which match the predicate of the verifier, valid after {@link #await()}
+     */
+    long getMatchingRecords() {
+        return matchingRecords.get();
+    }
+
+    /**
+     * @return the merged sketch of the distinct values of all verified blocks, valid after {@link #await()}
+     */
+    HyperLogLog getDistinctValues() {
+        HyperLogLog merged = new HyperLogLog();
+        for (HyperLogLog sketch : sketches) {
+            merged.merge(sketch);
+        }
+        return merged;
+    }
+
+    private void checkFailure() throws IOException {
+        IOException e = failure.get();
+        if (e != null) {
+            throw e;
+        }
+    }
+}
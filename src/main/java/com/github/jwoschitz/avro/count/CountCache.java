@@ -0,0 +1,161 @@
+package com.github.jwoschitz.avro.count;
+
+import org.apache.avro.file.DataFileConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persistent cache of record counts, stored in a compact binary index file
+ *
+ * Entries are keyed by the path of an avro file, its length and its modification time, a file which has been
+ * changed in any way will therefore be counted again. The cache holds at most maxEntries entries, the least recently
+ * used entries are evicted first.
+ *
+ * Besides the counts, every entry holds the offset at which the last counted block ends. For files which are still
+ * being appended to, this allows to resume counting at that offset instead of counting the whole file again.
+ *
+ * The index is loaded completely into memory and written back atomically via a rename, so concurrent runs
+ * sharing the same cache file never observe a partially written index (the last writer wins).
+ */
+class CountCache {
+    private final static Logger LOGGER = LoggerFactory.getLogger(CountCache.class);
+
+    private final static int MAGIC = 0x41564343; // AVCC
+    private final static int VERSION = 2;
+
+    static class Entry {
+        final String path;
+        final long length;
+        final long modificationTime;
+        final byte[] sync;
+        final long records;
+        final long blocks;
+        final long offset;
+
+        Entry(String path, long length, long modificationTime, byte[] sync, long records, long blocks, long offset) {
+            this.path = path;
+            this.length = length;
+            this.modificationTime = modificationTime;
+            this.sync = sync;
+            this.records = records;
+            this.blocks = blocks;
+            this.offset = offset;
+        }
+
+        boolean isUnchanged(long length, long modificationTime) {
+            return this.length == length && this.modificationTime == modificationTime;
+        }
+    }
+
+    private final File file;
+    private final LinkedHashMap<String, Entry> entries;
+    private boolean modified = false;
+
+    private CountCache(File file, int maxEntries) {
+        this.file = file;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Loads the cache from the given file, a missing or unreadable file results in an empty cache
+     */
+    static CountCache load(File file, int maxEntries) {
+        CountCache cache = new CountCache(file, maxEntries);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a count cache file");
+            }
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                String path = in.readUTF();
+                long length = in.readLong();
+                long modificationTime = in.readLong();
+                byte[] sync = new byte[DataFileConstants.SYNC_SIZE];
+                in.readFully(sync);
+                long records = in.readLong();
+                long blocks = in.readLong();
+                long offset = in.readLong();
+                cache.entries.put(path, new Entry(path, length, modificationTime, sync, records, blocks, offset));
+            }
+            LOGGER.debug("Loaded {} cached counts from {}", cache.entries.size(), file);
+        } catch (FileNotFoundException e) {
+            LOGGER.debug("Count cache {} does not exist yet", file);
+        } catch (IOException e) {
+            LOGGER.warn(String.format("Ignoring unreadable count cache %s", file), e);
+            cache.entries.clear();
+        }
+        return cache;
+    }
+
+    /**
+     * @return the entry of the last count of the file, which might have been modified since, or null
+     */
+    synchronized Entry get(String path) {
+        return entries.get(path);
+    }
+
+    synchronized void put(Entry entry) {
+        entries.put(entry.path, entry);
+        modified = true;
+    }
+
+    synchronized void save() throws IOException {
+        if (!modified) {
+            return;
+        }
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException(String.format("Unable to create directory %s", parent));
+        }
+
+        // iteration order is from least to most recently used, which is preserved when loading the file again
+        List<Entry> snapshot = new ArrayList<>(entries.values());
+        File temp = File.createTempFile(file.getName(), ".tmp", parent);
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(snapshot.size());
+                for (Entry entry : snapshot) {
+                    out.writeUTF(entry.path);
+                    out.writeLong(entry.length);
+                    out.writeLong(entry.modificationTime);
+                    out.write(entry.sync);
+                    out.writeLong(entry.records);
+                    out.writeLong(entry.blocks);
+                    out.writeLong(entry.offset);
+                }
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+        modified = false;
+        LOGGER.debug("Saved {} cached counts to {}", snapshot.size(), file);
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+}
@@ -0,0 +1,120 @@
+package com.github.jwoschitz.avro.count;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tracks the progress of counts while they are running, see {@link AvroCounter.Builder#progress(CountProgress)}
+ *
+ * All counters are striped {@link LongAdder}s, so the many counting threads of a counter do not contend for them.
+ * Counting threads do not even touch the adders for every block: they collect the blocks of a split in a
+ * {@link Batch} of their own, which is only added to the shared counters every few blocks. The counters can be read
+ * at any time, e.g. by a thread which reports the progress at a fixed interval, they are not a consistent snapshot
+ * though while counting is in progress.
+ */
+public class CountProgress {
+    // a batch is added to the shared counters once it covers this many blocks or bytes
+    private static final int BATCH_BLOCKS = 64;
+    private static final long BATCH_BYTES = 4L << 20;
+
+    private final LongAdder filesListed = new LongAdder();
+    private final LongAdder bytesListed = new LongAdder();
+    private final LongAdder filesFinished = new LongAdder();
+    private final LongAdder bytesProcessed = new LongAdder();
+    private final LongAdder records = new LongAdder();
+    private final LongAdder blocks = new LongAdder();
+    private final long startedAt = System.nanoTime();
+
+    /**
+     * Collects the blocks counted by a single thread, not thread-safe
+     */
+    class Batch {
+        private int pendingBlocks = 0;
+        private long pendingRecords = 0L;
+        private long pendingBytes = 0L;
+
+        /**
+         * @param bytes the bytes of the file covered by the block, including its header and sync marker
+         */
+        void block(long blockCount, long bytes) {
+            pendingBlocks++;
+            pendingRecords += blockCount;
+            pendingBytes += bytes;
+            if (pendingBlocks >= BATCH_BLOCKS || pendingBytes >= BATCH_BYTES) {
+                flush();
+            }
+        }
+
+        void flush() {
+            if (pendingBlocks > 0) {
+                blocks.add(pendingBlocks);
+                records.add(pendingRecords);
+                bytesProcessed.add(pendingBytes);
+                pendingBlocks = 0;
+                pendingRecords = 0L;
+                pendingBytes = 0L;
+            }
+        }
+    }
+
+    Batch batch() {
+        return new Batch();
+    }
+
+    void listed(CountableFile file) {
+        filesListed.increment();
+        bytesListed.add(file.getLength());
+    }
+
+    /**
+     * Adds whatever the batches of a finished file have not covered, e.g. its header, or the whole file if its count
+     * has been taken from the cache
+     */
+    void finished(CountResult file) {
+        filesFinished.increment();
+        if (file.getLength() != null) {
+            bytesProcessed.add(Math.max(0L, file.getLength() - file.progressBytes));
+        }
+        records.add(file.records - file.progressRecords);
+        blocks.add(file.blocks - file.progressBlocks);
+    }
+
+    /**
+     * @return the amount of files listed so far, which grows while listing is still in progress
+     */
+    public long getFilesListed() {
+        return filesListed.sum();
+    }
+
+    /**
+     * @return the total length of the files listed so far, not including streams
+     */
+    public long getBytesListed() {
+        return bytesListed.sum();
+    }
+
+    public long getFilesFinished() {
+        return filesFinished.sum();
+    }
+
+    /**
+     * @return the amount of bytes of the listed files and streams which have been counted
+     */
+    public long getBytesProcessed() {
+        return bytesProcessed.sum();
+    }
+
+    public long getRecords() {
+        return records.sum();
+    }
+
+    public long getBlocks() {
+        return blocks.sum();
+    }
+
+    /**
+     * @return the time since this progress has been created, in seconds
+     */
+    public double getElapsedSeconds() {
+        return (System.nanoTime() - startedAt) / 1e9;
+    }
+}
@@ -0,0 +1,450 @@
+package com.github.jwoschitz.avro.count;
+
+import com.github.jwoschitz.avro.file.BlockIndex;
+import org.apache.avro.file.DataFileConstants;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Statistics which are gathered while counting an avro file, or a summary over multiple files
+ *
+ * Counts of multiple splits of the same file are combined via {@link #merge(CountResult)}, counts of multiple files
+ * are combined into a summary via {@link #add(CountResult)}.
+ */
+public class CountResult {
+
+    /**
+     * A byte range of a file which has been skipped because it could not be read, see
+     * {@link AvroCounter.Builder#skipCorrupt(boolean)}
+     */
+    public static class Range {
+        private final long start;
+        private final long end;
+
+        Range(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        public long getStart() {
+            return start;
+        }
+
+        /**
+         * @return the end of the range, exclusive
+         */
+        public long getEnd() {
+            return end;
+        }
+
+        public long getLength() {
+            return end - start;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s-%s", start, end);
+        }
+    }
+
+    // quantile of the standard normal distribution for 95% confidence intervals
+    static final double CONFIDENCE_Z = 1.96;
+
+    private final String path;
+    private Long length;
+    private int files;
+
+    long records = 0L;
+    long blocks = 0L;
+    long bytesRead = 0L;
+    long minBlockSize = Long.MAX_VALUE;
+    long maxBlockSize = 0L;
+    long totalBlockSize = 0L;
+    long previousBlocks = 0L;
+    long verifiedBlocks = 0L;
+    long matchingRecords = 0L;
+    boolean filtered = false;
+    // the sketch of the distinct values of a field, null unless they are counted
+    HyperLogLog distinct;
+    // what has already been added to the progress of the counter while counting the blocks of the file
+    long progressBytes = 0L;
+    long progressRecords = 0L;
+    long progressBlocks = 0L;
+    long sampledBlocks = 0L;
+    double variance = 0.0;
+    boolean estimated = false;
+
+    String codec;
+    String schemaFingerprint;
+    byte[] sync;
+    long end = 0L;
+    boolean cached = false;
+    boolean indexed = false;
+    boolean fromMetadata = false;
+    // the amount of records stated by the header metadata of a file whose blocks are counted, null if not stated
+    Long metadataRecords;
+    // the blocks of a file whose index is written, null otherwise
+    BlockIndex.Blocks indexBlocks;
+
+    private final List<Range> skippedRanges = new ArrayList<>();
+    // totals of the files which have been added to a summary, a summary does not keep their single ranges
+    private long skippedBytes = 0L;
+    private long lostBlocks = 0L;
+    private long metadataChecks = 0L;
+    private long metadataMismatches = 0L;
+
+    long startedAt = Long.MAX_VALUE;
+    long finishedAt = Long.MIN_VALUE;
+
+    /**
+     * @param length the length of the file in bytes, null if unknown (e.g. for streams)
+     */
+    CountResult(String path, Long length) {
+        this.path = path;
+        this.length = length;
+        this.files = 1;
+    }
+
+    /**
+     * @return an empty summary to which the results of files can be added
+     */
+    public static CountResult summary() {
+        return summary(null);
+    }
+
+    /**
+     * @param path identifies the files of the summary, e.g. their partition
+     */
+    static CountResult summary(String path) {
+        CountResult summary = new CountResult(path, 0L);
+        summary.files = 0;
+        return summary;
+    }
+
+    void addBlock(long count, long size) {
+        records += count;
+        blocks++;
+        totalBlockSize += size;
+        minBlockSize = Math.min(minBlockSize, size);
+        maxBlockSize = Math.max(maxBlockSize, size);
+    }
+
+    /**
+     * Adds the counts of blocks which have been counted previously, e.g. before resuming at the end of a file
+     *
+     * The sizes of these blocks are unknown, so they are not taken into account for the block size statistics.
+     */
+    void addPrevious(long records, long blocks) {
+        this.records += records;
+        this.blocks += blocks;
+        this.previousBlocks += blocks;
+    }
+
+    void addSkipped(long start, long end) {
+        skippedRanges.add(new Range(start, end));
+    }
+
+    void started() {
+        startedAt = System.nanoTime();
+    }
+
+    void finished() {
+        finishedAt = System.nanoTime();
+    }
+
+    /**
+     * Combines the count of another split of the same file into this result
+     */
+    CountResult merge(CountResult other) {
+        combine(other);
+        skippedRanges.addAll(other.skippedRanges);
+        if (indexBlocks != null && other.indexBlocks != null) {
+            indexBlocks.addAll(other.indexBlocks);
+        }
+        if (metadataRecords == null) {
+            metadataRecords = other.metadataRecords;
+        }
+        return this;
+    }
+
+    private void combine(CountResult other) {
+        records += other.records;
+        blocks += other.blocks;
+        bytesRead += other.bytesRead;
+        totalBlockSize += other.totalBlockSize;
+        previousBlocks += other.previousBlocks;
+        verifiedBlocks += other.verifiedBlocks;
+        progressBytes += other.progressBytes;
+        progressRecords += other.progressRecords;
+        progressBlocks += other.progressBlocks;
+        matchingRecords += other.matchingRecords;
+        filtered |= other.filtered;
+        sampledBlocks += other.sampledBlocks;
+        variance += other.variance;
+        estimated |= other.estimated;
+        minBlockSize = Math.min(minBlockSize, other.minBlockSize);
+        maxBlockSize = Math.max(maxBlockSize, other.maxBlockSize);
+        end = Math.max(end, other.end);
+        startedAt = Math.min(startedAt, other.startedAt);
+        finishedAt = Math.max(finishedAt, other.finishedAt);
+        if (codec == null) {
+            codec = other.codec;
+        } else if (other.codec != null && !codec.equals(other.codec)) {
+            codec = "mixed";
+        }
+        if (schemaFingerprint == null) {
+            schemaFingerprint = other.schemaFingerprint;
+        } else if (other.schemaFingerprint != null && !schemaFingerprint.equals(other.schemaFingerprint)) {
+            schemaFingerprint = "mixed";
+        }
+        if (sync == null) sync = other.sync;
+        if (other.distinct != null) {
+            distinct = distinct == null ? other.distinct.copy() : distinct.merge(other.distinct);
+        }
+    }
+
+    /**
+     * Adds the result of a file, or another summary, to this summary
+     *
+     * The length of streams is unknown, the amount of bytes read from them is used instead.
+     */
+    public synchronized CountResult add(CountResult other) {
+        combine(other);
+        skippedBytes += other.getSkippedBytes();
+        lostBlocks += other.getEstimatedLostBlocks();
+        metadataChecks += other.getMetadataChecks();
+        metadataMismatches += other.getMetadataMismatches();
+        length += other.length != null ? other.length : other.bytesRead;
+        files += other.files;
+        return this;
+    }
+
+    /**
+     * @return the path of the counted file, the name of the partition for the summary of a partition, null for
+     * other summaries
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return the length of the file in bytes, null if unknown
+     */
+    public Long getLength() {
+        return length;
+    }
+
+    /**
+     * @return the amount of files this result consists of
+     */
+    public int getFiles() {
+        return files;
+    }
+
+    public long getRecords() {
+        return records;
+    }
+
+    public long getBlocks() {
+        return blocks;
+    }
+
+    /**
+     * @return the amount of bytes which have actually been read to count the records
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * @return the amount of blocks whose data has been verified, see {@link AvroCounter.Builder#verify(boolean)}
+     */
+    public long getVerifiedBlocks() {
+        return verifiedBlocks;
+    }
+
+    /**
+     * @return the amount of records matching the predicate of the count, null without a predicate, see
+     * {@link AvroCounter.Builder#where(com.github.jwoschitz.avro.file.RecordPredicate)}
+     */
+    public Long getMatchingRecords() {
+        return filtered ? matchingRecords : null;
+    }
+
+    /**
+     * @return the estimated amount of distinct values of the field whose values are counted, null if none are
+     * counted, see {@link AvroCounter.Builder#distinct(com.github.jwoschitz.avro.file.DistinctField)}
+     */
+    public Long getDistinctValues() {
+        return distinct != null ? distinct.estimate() : null;
+    }
+
+    /**
+     * @return a copy of the sketch of the distinct values, which can be merged with the sketches of other counts,
+     * null if no distinct values are counted
+     */
+    public HyperLogLog getDistinctValuesSketch() {
+        return distinct != null ? distinct.copy() : null;
+    }
+
+    /**
+     * @return whether the amount of records and blocks is estimated from a sample of blocks, see
+     * {@link AvroCounter.Builder#estimate(double)}
+     */
+    public boolean isEstimated() {
+        return estimated;
+    }
+
+    /**
+     * @return the amount of blocks from which the amount of records has been estimated
+     */
+    public long getSampledBlocks() {
+        return sampledBlocks;
+    }
+
+    /**
+     * @return the lower bound of the 95% confidence interval of an estimated amount of records, the exact amount
+     * of records otherwise
+     */
+    public long getRecordsLowerBound() {
+        return Math.max(0L, records - Math.round(CONFIDENCE_Z * Math.sqrt(variance)));
+    }
+
+    /**
+     * @return the upper bound of the 95% confidence interval of an estimated amount of records, the exact amount
+     * of records otherwise
+     */
+    public long getRecordsUpperBound() {
+        return records + Math.round(CONFIDENCE_Z * Math.sqrt(variance));
+    }
+
+    /**
+     * @return the codec from the header of the file, "mixed" if a summary covers multiple codecs
+     */
+    public String getCodec() {
+        return codec;
+    }
+
+    /**
+     * @return the CRC-64-AVRO fingerprint of the Parsing Canonical Form of the writer schema from the header of the
+     * file as 16 hexadecimal digits, "mixed" if a summary covers multiple schemas, null if the header has not been
+     * read (e.g. for cached counts)
+     */
+    public String getSchemaFingerprint() {
+        return schemaFingerprint;
+    }
+
+    /**
+     * @return whether the count has been taken from the cache instead of reading the file
+     */
+    public boolean isCached() {
+        return cached;
+    }
+
+    /**
+     * @return whether the count has been taken from the block index next to the file instead of reading the file,
+     * see {@link AvroCounter.Builder#useIndex(boolean)}
+     */
+    public boolean isIndexed() {
+        return indexed;
+    }
+
+    /**
+     * @return whether the amount of records has been taken from the header metadata instead of counting the blocks
+     * of the file, see {@link AvroCounter.Builder#metadataCount(String)}
+     */
+    public boolean isFromMetadata() {
+        return fromMetadata;
+    }
+
+    /**
+     * @return the amount of records stated by the header metadata of a file whose blocks have been counted anyway,
+     * null if the metadata has not been checked, always null for a summary
+     */
+    public Long getMetadataRecords() {
+        return metadataRecords;
+    }
+
+    /**
+     * @return the amount of files whose count from the header metadata has been checked against their blocks, see
+     * {@link AvroCounter.Builder#verifyMetadata(double)}
+     */
+    public long getMetadataChecks() {
+        return metadataChecks + (metadataRecords != null ? 1 : 0);
+    }
+
+    /**
+     * @return the amount of checked files whose blocks contain another amount of records than their header
+     * metadata states
+     */
+    public long getMetadataMismatches() {
+        return metadataMismatches + (metadataRecords != null && metadataRecords != records ? 1 : 0);
+    }
+
+    /**
+     * @return the wall clock time between the start of the first and the end of the last split, null if not counted
+     */
+    public Double getElapsedMillis() {
+        return finishedAt >= startedAt ? (finishedAt - startedAt) / 1e6 : null;
+    }
+
+    /**
+     * @return the byte ranges of the file which have been skipped as corrupt, always empty for a summary
+     */
+    public List<Range> getSkippedRanges() {
+        return Collections.unmodifiableList(skippedRanges);
+    }
+
+    /**
+     * @return the amount of bytes which have been skipped as corrupt
+     */
+    public long getSkippedBytes() {
+        long bytes = skippedBytes;
+        for (Range range : skippedRanges) {
+            bytes += range.getLength();
+        }
+        return bytes;
+    }
+
+    /**
+     * Estimates the amount of blocks within the skipped ranges from the average size of the blocks which have been
+     * counted, every skipped range contains at least one block
+     *
+     * @return the estimated amount of blocks which have not been counted
+     */
+    public long getEstimatedLostBlocks() {
+        long blocks = lostBlocks;
+        Double averageBlockSize = getAverageBlockSize();
+        for (Range range : skippedRanges) {
+            blocks += averageBlockSize == null
+                    ? 1
+                    : Math.max(1, Math.round(range.getLength() / (averageBlockSize + DataFileConstants.SYNC_SIZE)));
+        }
+        return blocks;
+    }
+
+    public Long getMinBlockSize() {
+        return blocks > previousBlocks ? minBlockSize : null;
+    }
+
+    public Long getMaxBlockSize() {
+        return blocks > previousBlocks ? maxBlockSize : null;
+    }
+
+    public Double getAverageBlockSize() {
+        return blocks > previousBlocks ? (double) totalBlockSize / (blocks - previousBlocks) : null;
+    }
+
+    /**
+     * @return the size of the file in MiB, divided by the time it took to count it
+     */
+    public Double getMegabytesPerSecond() {
+        Double elapsedMillis = getElapsedMillis();
+        if (length == null || elapsedMillis == null || elapsedMillis <= 0) {
+            return null;
+        }
+        return (length / (double) (1 << 20)) / (elapsedMillis / 1000);
+    }
+}
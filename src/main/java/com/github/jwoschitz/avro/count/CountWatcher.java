@@ -0,0 +1,440 @@
+package com.github.jwoschitz.avro.count;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps counting the avro files of a set of paths as they arrive, e.g. of a landing directory, see
+ * {@link AvroCounter#watch(List, long, Listener)}
+ *
+ * Local directories and files are watched via a {@link WatchService}, only the files for which it reports a change
+ * are looked at. Paths which cannot be watched, i.e. glob patterns and paths of Hadoop filesystems or object stores,
+ * are polled: glob patterns are expanded again at every poll, but only the directories whose modification time
+ * changed since the previous poll are listed again, see {@link ListedDirectories}. Object stores have no such
+ * directories and are listed again in full. Either way, only new and changed files are counted.
+ *
+ * A file is counted once it is closed, i.e. once its length and modification time have not changed for a poll
+ * interval, so files which are still being written are not counted partially. A file which changes after it has
+ * been counted, e.g. because it is appended to, is counted again and replaces its previous result. Appending to a
+ * file does not change its directory though, so a polled file which is appended to after it has been counted is
+ * only counted again once its directory changes. Files which are deleted are dropped from the total.
+ *
+ * Polls run one after another on a thread of their own, which also calls the listener.
+ */
+public class CountWatcher implements Closeable {
+    private final static Logger LOGGER = LoggerFactory.getLogger(CountWatcher.class);
+
+    private static final String LOCAL_SCHEME = "file:";
+
+    public interface Listener {
+
+        /**
+         * Called after the first poll, and after every poll which counted or dropped any file
+         *
+         * @param files the files counted by the poll
+         * @param total the running total over the latest results of all files counted so far
+         */
+        void update(List<CountResult> files, CountResult total);
+    }
+
+    /**
+     * The length and modification time of a file when it was looked at last
+     */
+    private static class Seen {
+        private final long length;
+        private final long modificationTime;
+        private final boolean counted;
+
+        Seen(CountableFile file, boolean counted) {
+            this.length = file.getLength();
+            this.modificationTime = file.getModificationTime();
+            this.counted = counted;
+        }
+
+        boolean isUnchanged(CountableFile file) {
+            return length == file.getLength() && modificationTime == file.getModificationTime();
+        }
+    }
+
+    private final AvroCounter counter;
+    private final long pollIntervalMillis;
+    private final Listener listener;
+    private final boolean recursive;
+    private final long startedAt = System.nanoTime();
+
+    // paths which are listed at every poll, the directories found by the latest listing and the files found in them
+    private final List<String> polledPaths = new ArrayList<>();
+    private final ListedDirectories polledDirectories = new ListedDirectories();
+    private final Set<String> polledFiles = new HashSet<>();
+    // local directories and files which are watched, and the files which are watched in the directory of each file
+    private final List<Path> watchedPaths = new ArrayList<>();
+    private final Map<Path, Set<Path>> watchedFiles = new HashMap<>();
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+
+    private final Map<String, Seen> seen = new HashMap<>();
+    private final Map<String, CountResult> results = new LinkedHashMap<>();
+    private CountResult total = CountResult.summary();
+    // whether the result of a deleted file has been dropped since the latest update of the listener
+    private boolean dropped = false;
+    private boolean polled = false;
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Polls the given paths once, the following polls are run at the given interval
+     *
+     * @throws IOException if the first poll fails, e.g. because a path does not exist
+     */
+    CountWatcher(AvroCounter counter, List<String> paths, long pollIntervalMillis, Listener listener) throws IOException {
+        if (pollIntervalMillis <= 0) {
+            throw new IllegalArgumentException("Poll interval must be positive: " + pollIntervalMillis);
+        }
+        this.counter = counter;
+        this.pollIntervalMillis = pollIntervalMillis;
+        this.listener = listener;
+        this.recursive = counter.isRecursive();
+        for (String path : paths) {
+            if (counter.isLocal(path) && !LocalFileLister.isGlob(path)) {
+                watchedPaths.add(Paths.get(path).toAbsolutePath().normalize());
+            } else {
+                polledPaths.add(path);
+            }
+        }
+        this.watchService = watchedPaths.isEmpty() ? null : FileSystems.getDefault().newWatchService();
+        try {
+            for (Path path : watchedPaths) {
+                if (!Files.exists(path)) {
+                    throw new FileNotFoundException(String.format("File %s does not exist", path));
+                }
+                if (Files.isDirectory(path)) {
+                    register(path);
+                } else {
+                    watchedFiles.computeIfAbsent(path.getParent(), directory -> new HashSet<>()).add(path);
+                    watch(path.getParent());
+                }
+            }
+
+            Map<String, CountableFile> observed = observePolled();
+            List<String> watched = new ArrayList<>();
+            for (Path path : watchedPaths) {
+                watched.add(path.toString());
+            }
+            observed.putAll(observe(watched, false));
+            poll(observed);
+            polledDirectories.finishListing();
+        } catch (IOException | RuntimeException e) {
+            close(watchService);
+            throw e;
+        }
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "avro-watcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::poll, pollIntervalMillis, pollIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Watches the given directory, and its sub-directories if counting is recursive
+     */
+    private void register(Path directory) throws IOException {
+        if (!recursive) {
+            watch(directory);
+            return;
+        }
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) throws IOException {
+                if (!dir.equals(directory) && FileLister.isHidden(dir.getFileName().toString())) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                watch(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void watch(Path directory) throws IOException {
+        WatchKey key = directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        directories.put(key, directory);
+    }
+
+    private void poll() {
+        try {
+            Map<String, CountableFile> observed = observePolled();
+            Set<String> changed = changedPaths();
+            // files which have not been closed at the previous poll are looked at again, also if their directory
+            // has not changed
+            for (Map.Entry<String, Seen> entry : seen.entrySet()) {
+                if (!entry.getValue().counted && !observed.containsKey(entry.getKey())) {
+                    changed.add(listingPath(entry.getKey()));
+                }
+            }
+            observed.putAll(observe(new ArrayList<>(changed), true));
+            poll(observed);
+            polledDirectories.finishListing();
+        } catch (InterruptedIOException | ClosedWatchServiceException e) {
+            LOGGER.debug("Stopped watching");
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Failed to poll, retrying at the next poll: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Lists the polled paths, files which have not been found again are forgotten
+     *
+     * @return the files of the directories which changed since the previous listing by their path
+     */
+    private Map<String, CountableFile> observePolled() throws IOException {
+        Map<String, CountableFile> observed = new ConcurrentHashMap<>();
+        if (polledPaths.isEmpty()) {
+            return observed;
+        }
+        polledDirectories.startListing();
+        await(counter.list(polledPaths, polledDirectories, file -> observed.put(file.getPath(), file)));
+        for (Iterator<String> iterator = polledFiles.iterator(); iterator.hasNext(); ) {
+            String path = iterator.next();
+            if (!observed.containsKey(path) && !polledDirectories.isUnchanged(path.substring(0, path.lastIndexOf('/')))) {
+                iterator.remove();
+                forget(path);
+            }
+        }
+        polledFiles.addAll(observed.keySet());
+        return observed;
+    }
+
+    /**
+     * @return the local paths for which the watch service reported a change, including all paths of new directories.
+     *         The files of deleted directories are forgotten.
+     */
+    private Set<String> changedPaths() throws IOException {
+        Set<String> changed = new LinkedHashSet<>();
+        if (watchService == null) {
+            return changed;
+        }
+        WatchKey key;
+        while ((key = watchService.poll()) != null) {
+            Path directory = directories.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    LOGGER.warn("Missed changes of {}, listing all watched paths again", directory);
+                    for (Path path : watchedPaths) {
+                        changed.add(path.toString());
+                    }
+                    continue;
+                }
+                Path child = directory.resolve((Path) event.context());
+                String name = child.getFileName().toString();
+                Set<Path> files = watchedFiles.get(directory);
+                if (FileLister.isHidden(name) || files != null && !files.contains(child) && !watchedPaths.contains(directory)) {
+                    continue;
+                }
+                if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE && !name.endsWith(".avro")) {
+                    // might have been a directory, deleted files are forgotten once they are not found anymore
+                    String prefix = LOCAL_SCHEME + child + "/";
+                    for (String path : new ArrayList<>(seen.keySet())) {
+                        if (path.startsWith(prefix)) {
+                            forget(path);
+                        }
+                    }
+                } else if (Files.isDirectory(child)) {
+                    if (recursive && event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                        // files might have been created before the directory is watched
+                        register(child);
+                        changed.add(child.toString());
+                    }
+                } else if (name.endsWith(".avro")) {
+                    changed.add(child.toString());
+                }
+            }
+            if (!key.reset()) {
+                directories.remove(key);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Lists the given paths
+     *
+     * @param mayVanish whether a path which does not exist (anymore) is ignored rather than failing the poll
+     * @return the listed files by their path
+     */
+    private Map<String, CountableFile> observe(List<String> paths, boolean mayVanish) throws IOException {
+        Map<String, CountableFile> observed = new ConcurrentHashMap<>();
+        if (paths.isEmpty()) {
+            return observed;
+        }
+        if (!mayVanish) {
+            await(counter.list(paths, file -> observed.put(file.getPath(), file)));
+            return observed;
+        }
+        Map<String, CompletableFuture<Void>> listings = new LinkedHashMap<>();
+        for (String path : paths) {
+            listings.put(path, counter.list(Collections.singletonList(path), file -> observed.put(file.getPath(), file)));
+        }
+        for (Map.Entry<String, CompletableFuture<Void>> listing : listings.entrySet()) {
+            try {
+                await(listing.getValue());
+            } catch (FileNotFoundException e) {
+                LOGGER.debug("Ignoring {}, has been removed", listing.getKey());
+                forget(counter.isLocal(listing.getKey()) ? LOCAL_SCHEME + listing.getKey() : listing.getKey());
+            }
+        }
+        return observed;
+    }
+
+    /**
+     * @return the path to list the file of the given path with
+     */
+    private String listingPath(String path) {
+        if (path.startsWith(LOCAL_SCHEME)) {
+            String local = path.substring(LOCAL_SCHEME.length());
+            if (counter.isLocal(local)) {
+                return local;
+            }
+        }
+        return path;
+    }
+
+    /**
+     * Drops the file of the given path, which has been deleted
+     */
+    private void forget(String path) {
+        seen.remove(path);
+        polledFiles.remove(path);
+        if (results.remove(path) != null) {
+            LOGGER.debug("Dropping the count of {}, has been removed", path);
+            dropped = true;
+        }
+    }
+
+    private void poll(Map<String, CountableFile> observed) throws IOException {
+        long now = System.currentTimeMillis();
+        Map<String, CompletableFuture<CountResult>> counts = new LinkedHashMap<>();
+        for (CountableFile file : observed.values()) {
+            String path = file.getPath();
+            Seen previous = seen.get(path);
+            if (previous != null && previous.counted && previous.isUnchanged(file)) {
+                continue;
+            }
+            boolean closed = previous != null && previous.isUnchanged(file)
+                    || now - file.getModificationTime() >= pollIntervalMillis;
+            seen.put(path, new Seen(file, closed));
+            if (closed) {
+                counts.put(path, counter.count(file));
+            } else {
+                LOGGER.debug("Waiting for {} to be closed", path);
+            }
+        }
+
+        List<CountResult> counted = new ArrayList<>();
+        boolean replaced = false;
+        for (Map.Entry<String, CompletableFuture<CountResult>> count : counts.entrySet()) {
+            CountResult result;
+            try {
+                result = await(count.getValue());
+            } catch (InterruptedIOException e) {
+                throw e;
+            } catch (IOException e) {
+                // not counted again unless the file changes
+                LOGGER.warn("Failed to count {}: {}", count.getKey(), e.getMessage());
+                continue;
+            }
+            replaced |= results.put(count.getKey(), result) != null;
+            counted.add(result);
+            if (!replaced) {
+                total.add(result);
+            }
+        }
+        if (replaced || dropped) {
+            total = CountResult.summary();
+            results.values().forEach(total::add);
+        }
+        counter.saveCache();
+
+        if (!counted.isEmpty() || dropped || !polled) {
+            CountResult snapshot = CountResult.summary().add(total);
+            snapshot.startedAt = startedAt;
+            snapshot.finished();
+            listener.update(counted, snapshot);
+        }
+        dropped = false;
+        polled = true;
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while watching");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Stops watching, a running poll is interrupted
+     */
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            try {
+                scheduler.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        close(watchService);
+    }
+
+    private static void close(WatchService watchService) {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                LOGGER.debug("Failed to close the watch service: {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.github.jwoschitz.avro.count;
+
+import com.github.jwoschitz.avro.file.SeekableBlockReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A listed avro file, independent of the filesystem it is stored on
+ */
+interface CountableFile {
+
+    /**
+     * @return the fully qualified path of the file, used to identify it in results and the cache
+     */
+    String getPath();
+
+    long getLength();
+
+    long getModificationTime();
+
+    /**
+     * @param useMmap whether local files should be memory-mapped
+     */
+    SeekableBlockReader open(boolean useMmap) throws IOException;
+
+    /**
+     * Opens the sidecar of this file, i.e. the file next to it whose name is the name of this file plus the suffix
+     *
+     * @return null if the sidecar does not exist
+     */
+    InputStream openSidecar(String suffix) throws IOException;
+
+    /**
+     * Replaces the sidecar of this file with the given content, concurrent readers never see partially written
+     * content
+     */
+    void writeSidecar(String suffix, byte[] content) throws IOException;
+}
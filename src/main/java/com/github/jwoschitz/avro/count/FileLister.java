@@ -0,0 +1,120 @@
+package com.github.jwoschitz.avro.count;
+
+import com.github.jwoschitz.avro.file.BlockIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Expands glob patterns and lists the avro files of multiple paths
+ *
+ * Every glob pattern and every directory is listed by its own task on the given executor, so large partitioned trees
+ * are listed concurrently and the caller is not blocked while listing. Files are handed to the consumer as soon as
+ * they have been listed, which allows to start counting while the listing is still in progress. The consumer might
+ * be called from multiple threads.
+ *
+ * Files and directories starting with '_' or '.' which are found while listing a directory are considered hidden
+ * and are skipped, e.g. _SUCCESS markers, _temporary directories or .crc checksum files. Block indexes next to avro
+ * files are skipped as well.
+ */
+abstract class FileLister {
+    private final static Logger LOGGER = LoggerFactory.getLogger(FileLister.class);
+
+    interface ListingTask {
+        void run() throws IOException;
+    }
+
+    private final Executor executor;
+    final boolean recursive;
+    // the directories of the previous listing, only directories which changed since are listed if present
+    final ListedDirectories directories;
+    private final Consumer<CountableFile> consumer;
+
+    // the caller of list() counts as one pending listing until all top-level paths are submitted
+    private final AtomicLong pendingListings = new AtomicLong(1);
+    private final CompletableFuture<Void> listed = new CompletableFuture<>();
+    private final AtomicReference<Exception> failure = new AtomicReference<>();
+
+    FileLister(Executor executor, boolean recursive, ListedDirectories directories, Consumer<CountableFile> consumer) {
+        this.executor = executor;
+        this.recursive = recursive;
+        this.directories = directories;
+        this.consumer = consumer;
+    }
+
+    /**
+     * Lists all given paths, the returned future completes once every (sub-)directory has been listed
+     *
+     * An instance can only be used for a single listing.
+     */
+    CompletableFuture<Void> list(List<String> paths) {
+        for (String path : paths) {
+            submit(() -> listPath(path));
+        }
+        listingFinished();
+        return listed;
+    }
+
+    /**
+     * Expands the given path or glob pattern, listing directories via {@link #submit(ListingTask)}
+     */
+    abstract void listPath(String path) throws IOException;
+
+    /**
+     * Runs the given listing on the executor, the listing is finished once all submitted tasks are finished
+     */
+    void submit(ListingTask task) {
+        pendingListings.incrementAndGet();
+        executor.execute(() -> {
+            try {
+                task.run();
+            } catch (IOException | RuntimeException e) {
+                failure.compareAndSet(null, e);
+            } finally {
+                listingFinished();
+            }
+        });
+    }
+
+    boolean isFailed() {
+        return failure.get() != null;
+    }
+
+    private void listingFinished() {
+        if (pendingListings.decrementAndGet() == 0) {
+            Exception e = failure.get();
+            if (e != null) {
+                listed.completeExceptionally(e);
+            } else {
+                listed.complete(null);
+            }
+        }
+    }
+
+    void accept(String name, CountableFile file) {
+        if (name.endsWith(".avro" + BlockIndex.SUFFIX)) {
+            LOGGER.debug("Ignoring block index {}", file.getPath());
+            return;
+        }
+        if (name.contains(".avro.") && name.endsWith(SketchSidecar.EXTENSION)) {
+            LOGGER.debug("Ignoring sketch {}", file.getPath());
+            return;
+        }
+        if (!name.endsWith(".avro")) {
+            LOGGER.error("Ignoring file {}, does not have .avro suffix", file.getPath());
+            return;
+        }
+        consumer.accept(file);
+    }
+
+    static boolean isHidden(String name) {
+        return name.startsWith("_") || name.startsWith(".");
+    }
+}
@@ -0,0 +1,74 @@
+package com.github.jwoschitz.avro.count;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed size thread pool which runs the pending task with the largest amount of bytes first
+ *
+ * Tasks are submitted while files are still being listed, so the order of submission follows the listing and not
+ * the size of the files. Queueing the pending tasks by size ensures a single large file which is listed last does
+ * not start after all the small files and determines the total duration on its own. Tasks of the same size are run
+ * in the order of their submission.
+ *
+ * All threads are started upfront, so every task passes through the queue and is ordered with the other pending
+ * tasks once all threads are busy.
+ */
+class LargestFirstExecutor extends ThreadPoolExecutor {
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    LargestFirstExecutor(int threads, ThreadFactory threadFactory) {
+        super(threads, threads, 0L, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>(), threadFactory);
+        prestartAllCoreThreads();
+    }
+
+    /**
+     * @param size the amount of bytes processed by the task, determines its priority
+     */
+    <T> CompletableFuture<T> submit(long size, Callable<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        execute(new SizedTask(() -> {
+            try {
+                future.complete(task.call());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        }, size, sequence.getAndIncrement()));
+        return future;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        // tasks without a size (e.g. submitted via the ExecutorService methods) are run after the sized tasks
+        super.execute(command instanceof SizedTask ? command : new SizedTask(command, -1L, sequence.getAndIncrement()));
+    }
+
+    private static class SizedTask implements Runnable, Comparable<SizedTask> {
+        private final Runnable runnable;
+        private final long size;
+        private final long sequence;
+
+        SizedTask(Runnable runnable, long size, long sequence) {
+            this.runnable = runnable;
+            this.size = size;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            runnable.run();
+        }
+
+        @Override
+        public int compareTo(SizedTask other) {
+            int bySize = Long.compare(other.size, size);
+            return bySize != 0 ? bySize : Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.github.jwoschitz.avro.count;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The modification times and sub-directories of the directories found by the previous listing of the same paths,
+ * which allows a {@link FileLister} to list only the directories which changed since, see {@link CountWatcher}
+ *
+ * Creating, deleting or renaming an entry of a directory updates its modification time, so the files of a directory
+ * whose modification time did not change are the same as before. Their lengths might have changed though, files which
+ * are appended to have to be looked at by themselves. A directory whose modification time is that recent that it
+ * might change again within the granularity of the filesystem's timestamps is listed again at the next listing.
+ */
+class ListedDirectories {
+
+    // timestamps of directories have a granularity of up to two seconds on some filesystems
+    private static final long GRANULARITY_MILLIS = 2000L;
+
+    private static class Directory {
+        private final long modificationTime;
+        private final boolean settled;
+        private final List<String> subdirectories;
+
+        Directory(long modificationTime, boolean settled, List<String> subdirectories) {
+            this.modificationTime = modificationTime;
+            this.settled = settled;
+            this.subdirectories = subdirectories;
+        }
+    }
+
+    // the directories of the latest listing which succeeded
+    private volatile Map<String, Directory> previous = Collections.emptyMap();
+    private final Map<String, Directory> current = new ConcurrentHashMap<>();
+    private final Set<String> unchanged = ConcurrentHashMap.newKeySet();
+    private volatile long listingStartedAt;
+
+    /**
+     * Starts the next listing, a listing which fails is compared with the same directories as the one before
+     */
+    void startListing() {
+        current.clear();
+        unchanged.clear();
+        listingStartedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Called once all files of a listing have been handled, the next listing is compared with its directories
+     */
+    void finishListing() {
+        previous = new ConcurrentHashMap<>(current);
+    }
+
+    /**
+     * Looks up a directory which is about to be listed, directories which are not visited by a listing are forgotten
+     *
+     * @param directory the path of the directory, as the lister names the files in it
+     * @param modificationTime the modification time of the directory, looked up before it is listed
+     * @return the sub-directories of the directory if it has not changed since the previous listing, which have to be
+     *         looked up in turn, or null if it has to be listed
+     */
+    List<String> lookup(String directory, long modificationTime) {
+        Directory listed = previous.get(directory);
+        if (listed == null || !listed.settled || modificationTime <= 0 || listed.modificationTime != modificationTime) {
+            return null;
+        }
+        current.put(directory, listed);
+        unchanged.add(directory);
+        return listed.subdirectories;
+    }
+
+    /**
+     * Remembers a directory after it has been listed
+     */
+    void listed(String directory, long modificationTime, List<String> subdirectories) {
+        boolean settled = listingStartedAt - modificationTime >= GRANULARITY_MILLIS;
+        current.put(directory, new Directory(modificationTime, settled, Collections.unmodifiableList(subdirectories)));
+    }
+
+    /**
+     * @return whether the given directory was skipped by the latest listing, its files have not been reported then
+     */
+    boolean isUnchanged(String directory) {
+        return unchanged.contains(directory);
+    }
+}
@@ -0,0 +1,221 @@
+package com.github.jwoschitz.avro.count;
+
+import com.github.jwoschitz.avro.file.CountableSkipDataFileReader;
+import com.github.jwoschitz.avro.file.MappedSkipDataFileReader;
+import com.github.jwoschitz.avro.file.SeekableBlockReader;
+import org.apache.avro.file.SeekableFileInput;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Lists avro files on the local filesystem via java.nio, without loading any Hadoop classes
+ *
+ * Glob patterns are matched with the glob syntax of java.nio, which supports the same wildcards as Hadoop
+ * ('*', '?', '[...]' and '{a,b}') for patterns which do not span multiple directory levels within braces.
+ * Files are identified by the same paths as the Hadoop local filesystem uses, e.g. file:/data/file.avro,
+ * so cached counts remain valid independent of the lister which found the file.
+ *
+ * @see AvroFileLister
+ */
+class LocalFileLister extends FileLister {
+    private final static Logger LOGGER = LoggerFactory.getLogger(LocalFileLister.class);
+
+    private static final String SCHEME = "file:";
+
+    LocalFileLister(Executor executor, boolean recursive, ListedDirectories directories, Consumer<CountableFile> consumer) {
+        super(executor, recursive, directories, consumer);
+    }
+
+    @Override
+    void listPath(String path) throws IOException {
+        List<Path> matches;
+        if (isGlob(path)) {
+            matches = glob(path);
+            if (matches.isEmpty()) {
+                LOGGER.error("Ignoring {}, does not match any file", path);
+            }
+        } else {
+            Path p = Paths.get(path);
+            if (!Files.exists(p)) {
+                throw new FileNotFoundException(String.format("File %s does not exist", path));
+            }
+            matches = Collections.singletonList(p);
+        }
+
+        for (Path match : matches) {
+            BasicFileAttributes attributes = Files.readAttributes(match, BasicFileAttributes.class);
+            if (attributes.isDirectory()) {
+                listDirectory(match, attributes);
+            } else {
+                accept(match, attributes);
+            }
+        }
+    }
+
+    static boolean isGlob(String path) {
+        for (char c : path.toCharArray()) {
+            if (c == '*' || c == '?' || c == '[' || c == '{') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Walks the longest directory prefix of the pattern which does not contain any wildcards, down to the depth of
+     * the pattern
+     */
+    private static List<Path> glob(String pattern) throws IOException {
+        String[] components = pattern.split("/", -1);
+        int literal = 0;
+        while (literal < components.length && !isGlob(components[literal])) {
+            literal++;
+        }
+        String prefix = String.join("/", Arrays.copyOfRange(components, 0, literal));
+        Path base = prefix.isEmpty() ? Paths.get(pattern.startsWith("/") ? "/" : ".") : Paths.get(prefix);
+        if (!Files.isDirectory(base)) {
+            return Collections.emptyList();
+        }
+
+        // match relative to the base, so neither a leading './' nor the separator of the base affect matching
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher(
+                "glob:" + String.join("/", Arrays.copyOfRange(components, literal, components.length)));
+        int depth = components.length - literal;
+        try (Stream<Path> paths = Files.walk(base, depth)) {
+            return paths
+                    .filter(p -> !p.equals(base) && base.relativize(p).getNameCount() == depth && matcher.matches(base.relativize(p)))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private void listDirectory(Path directory, BasicFileAttributes attributes) {
+        submit(() -> {
+            String path = SCHEME + directory.toAbsolutePath().normalize();
+            long modificationTime = attributes.lastModifiedTime().toMillis();
+            List<String> unchanged = directories != null ? directories.lookup(path, modificationTime) : null;
+            if (unchanged != null) {
+                LOGGER.debug("Skipping {}, has not changed", directory);
+                for (String subdirectory : unchanged) {
+                    Path p = Paths.get(subdirectory.substring(SCHEME.length()));
+                    try {
+                        listDirectory(p, Files.readAttributes(p, BasicFileAttributes.class));
+                    } catch (NoSuchFileException e) {
+                        LOGGER.debug("Ignoring {}, has been removed", p);
+                    }
+                }
+                return;
+            }
+
+            LOGGER.debug("Listing {}", directory);
+            List<String> subdirectories = new ArrayList<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+                for (Path entry : entries) {
+                    if (isFailed()) {
+                        return;
+                    }
+                    if (isHidden(entry.getFileName().toString())) {
+                        LOGGER.debug("Ignoring hidden {}", entry);
+                        continue;
+                    }
+                    BasicFileAttributes entryAttributes = Files.readAttributes(entry, BasicFileAttributes.class);
+                    if (entryAttributes.isDirectory()) {
+                        if (recursive) {
+                            subdirectories.add(SCHEME + entry.toAbsolutePath().normalize());
+                            listDirectory(entry, entryAttributes);
+                        } else {
+                            LOGGER.debug("Ignoring directory {}, recursion is disabled", entry);
+                        }
+                    } else {
+                        accept(entry, entryAttributes);
+                    }
+                }
+            }
+            if (directories != null) {
+                directories.listed(path, modificationTime, subdirectories);
+            }
+        });
+    }
+
+    private void accept(Path path, BasicFileAttributes attributes) {
+        accept(path.getFileName().toString(), new LocalFile(path.toAbsolutePath().normalize(), attributes));
+    }
+
+    private static class LocalFile implements CountableFile {
+        private final Path path;
+        private final long length;
+        private final long modificationTime;
+
+        LocalFile(Path path, BasicFileAttributes attributes) {
+            this.path = path;
+            this.length = attributes.size();
+            this.modificationTime = attributes.lastModifiedTime().toMillis();
+        }
+
+        @Override
+        public String getPath() {
+            return SCHEME + path;
+        }
+
+        @Override
+        public long getLength() {
+            return length;
+        }
+
+        @Override
+        public long getModificationTime() {
+            return modificationTime;
+        }
+
+        @Override
+        public SeekableBlockReader open(boolean useMmap) throws IOException {
+            return useMmap
+                    ? new MappedSkipDataFileReader(path.toFile())
+                    : new CountableSkipDataFileReader(new SeekableFileInput(path.toFile()));
+        }
+
+        @Override
+        public InputStream openSidecar(String suffix) throws IOException {
+            try {
+                return Files.newInputStream(path.resolveSibling(path.getFileName() + suffix));
+            } catch (NoSuchFileException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public void writeSidecar(String suffix, byte[] content) throws IOException {
+            // the temporary file is hidden, so it is never listed as an avro file
+            Path temp = path.resolveSibling(String.format(".%s%s.%s.tmp", path.getFileName(), suffix, System.nanoTime()));
+            try {
+                Files.write(temp, content, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                Files.move(temp, path.resolveSibling(path.getFileName() + suffix),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.github.jwoschitz.avro.count;
+
+import com.github.jwoschitz.avro.file.CountableSkipDataFileReader;
+import com.github.jwoschitz.avro.file.ObjectStoreInput;
+import com.github.jwoschitz.avro.file.SeekableBlockReader;
+import org.jets3t.service.Jets3tProperties;
+import org.jets3t.service.ServiceException;
+import org.jets3t.service.impl.rest.httpclient.RestS3Service;
+import org.jets3t.service.model.S3Object;
+import org.jets3t.service.model.StorageObject;
+import org.jets3t.service.security.AWSCredentials;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads avro files from S3 or an S3-compatible object store via range requests, see {@link ObjectStoreInput}
+ *
+ * Objects are addressed by paths of the form s3://bucket/key. Requests are signed with the credentials in the
+ * environment variables AWS_ACCESS_KEY_ID and AWS_SECRET_ACCESS_KEY, without them requests are anonymous.
+ */
+class ObjectStore implements Closeable {
+    static final String SCHEME = "s3://";
+
+    // connections shared by all files of all counts, the default of the http client is 20
+    private static final int MAX_CONNECTIONS = 256;
+    private static final int NOT_FOUND = 404;
+
+    private final RestS3Service s3;
+    private final int rangeSize;
+    private final int requestsInFlight;
+    private final ExecutorService requests;
+
+    /**
+     * @param endpoint e.g. http://localhost:9000 for an S3-compatible store, buckets are then addressed by path
+     *                 instead of by host name, null for AWS
+     */
+    ObjectStore(String endpoint, int rangeSize, int requestsInFlight) {
+        Jets3tProperties properties = new Jets3tProperties();
+        properties.setProperty("httpclient.max-connections", String.valueOf(MAX_CONNECTIONS));
+        properties.setProperty("s3service.enable-storage-classes", "false");
+        if (endpoint != null) {
+            URI uri = URI.create(endpoint);
+            if (uri.getHost() == null) {
+                throw new IllegalArgumentException("Invalid object store endpoint: " + endpoint);
+            }
+            boolean https = !"http".equalsIgnoreCase(uri.getScheme());
+            properties.setProperty("s3service.s3-endpoint", uri.getHost());
+            if (uri.getPort() > 0) {
+                properties.setProperty(https ? "s3service.s3-endpoint-https-port" : "s3service.s3-endpoint-http-port",
+                        String.valueOf(uri.getPort()));
+            }
+            properties.setProperty("s3service.https-only", String.valueOf(https));
+            properties.setProperty("s3service.disable-dns-buckets", "true");
+        }
+        String accessKey = System.getenv("AWS_ACCESS_KEY_ID");
+        String secretKey = System.getenv("AWS_SECRET_ACCESS_KEY");
+        AWSCredentials credentials = accessKey != null && secretKey != null
+                ? new AWSCredentials(accessKey, secretKey)
+                : null;
+        this.s3 = new RestS3Service(credentials, "avrocount", null, properties);
+        this.rangeSize = rangeSize;
+        this.requestsInFlight = requestsInFlight;
+        AtomicInteger threads = new AtomicInteger();
+        this.requests = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, String.format("avro-range-%s", threads.incrementAndGet()));
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    static boolean isObjectStorePath(String path) {
+        return path.startsWith(SCHEME);
+    }
+
+    RestS3Service service() {
+        return s3;
+    }
+
+    CountableFile file(String bucket, StorageObject object) {
+        return new ObjectStoreFile(bucket, object.getKey(), object.getContentLength(),
+                object.getLastModifiedDate().getTime());
+    }
+
+    private byte[] read(String bucket, String key, long position, int length) throws IOException {
+        try {
+            S3Object object = s3.getObject(bucket, key, null, null, null, null, position, position + length - 1);
+            byte[] data = new byte[length];
+            try (DataInputStream in = new DataInputStream(object.getDataInputStream())) {
+                in.readFully(data);
+            }
+            return data;
+        } catch (ServiceException e) {
+            throw new IOException(String.format("Failed to read %s bytes at %s of %s%s/%s", length, position, SCHEME,
+                    bucket, key), e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        requests.shutdown();
+        try {
+            s3.shutdown();
+        } catch (ServiceException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private class ObjectStoreFile implements CountableFile {
+        private final String bucket;
+        private final String key;
+        private final long length;
+        private final long modificationTime;
+
+        ObjectStoreFile(String bucket, String key, long length, long modificationTime) {
+            this.bucket = bucket;
+            this.key = key;
+            this.length = length;
+            this.modificationTime = modificationTime;
+        }
+
+        @Override
+        public String getPath() {
+            return SCHEME + bucket + "/" + key;
+        }
+
+        @Override
+        public long getLength() {
+            return length;
+        }
+
+        @Override
+        public long getModificationTime() {
+            return modificationTime;
+        }
+
+        @Override
+        public SeekableBlockReader open(boolean useMmap) throws IOException {
+            return new CountableSkipDataFileReader(new ObjectStoreInput(
+                    (start, size) -> read(bucket, key, start, size),
+                    length, rangeSize, requestsInFlight, requests));
+        }
+
+        @Override
+        public InputStream openSidecar(String suffix) throws IOException {
+            try {
+                return s3.getObject(bucket, key + suffix).getDataInputStream();
+            } catch (ServiceException e) {
+                if (e.getResponseCode() == NOT_FOUND) {
+                    return null;
+                }
+                throw new IOException(String.format("Failed to read %s%s", getPath(), suffix), e);
+            }
+        }
+
+        /**
+         * Objects are replaced atomically by the store itself
+         */
+        @Override
+        public void writeSidecar(String suffix, byte[] content) throws IOException {
+            try {
+                s3.putObject(bucket, new S3Object(key + suffix, content));
+            } catch (ServiceException | NoSuchAlgorithmException e) {
+                throw new IOException(String.format("Failed to write %s%s", getPath(), suffix), e);
+            }
+        }
+    }
+}
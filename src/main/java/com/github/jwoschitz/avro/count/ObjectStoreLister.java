@@ -0,0 +1,123 @@
+package com.github.jwoschitz.avro.count;
+
+import org.jets3t.service.ServiceException;
+import org.jets3t.service.StorageObjectsChunk;
+import org.jets3t.service.model.StorageObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Lists avro files in an object store, see {@link ObjectStore}
+ *
+ * Keys are treated as paths with '/' as separator: a path names either a single object or a directory, i.e. the
+ * common prefix of the keys below it. Like directories of a filesystem, every directory is listed by its own task,
+ * without recursion only the objects directly below a directory are counted. Glob patterns are not supported.
+ */
+class ObjectStoreLister extends FileLister {
+    private final static Logger LOGGER = LoggerFactory.getLogger(ObjectStoreLister.class);
+
+    private static final String DELIMITER = "/";
+    private static final long MAX_KEYS = 1000L;
+
+    private final ObjectStore store;
+
+    ObjectStoreLister(ObjectStore store, Executor executor, boolean recursive, Consumer<CountableFile> consumer) {
+        // object stores have no directories which could tell whether their keys changed
+        super(executor, recursive, null, consumer);
+        this.store = store;
+    }
+
+    @Override
+    void listPath(String path) throws IOException {
+        String location = path.substring(ObjectStore.SCHEME.length());
+        int slash = location.indexOf('/');
+        String bucket = slash >= 0 ? location.substring(0, slash) : location;
+        String key = slash >= 0 ? location.substring(slash + 1) : "";
+        if (bucket.isEmpty()) {
+            throw new IllegalArgumentException("Path does not name a bucket: " + path);
+        }
+        if (key.isEmpty() || key.endsWith(DELIMITER)) {
+            listDirectory(bucket, key);
+            return;
+        }
+
+        // the key names an object, a directory or both
+        String priorLastKey = null;
+        boolean found = false;
+        do {
+            StorageObjectsChunk chunk = list(bucket, key, priorLastKey);
+            for (StorageObject object : chunk.getObjects()) {
+                if (object.getKey().equals(key)) {
+                    accept(bucket, object);
+                    found = true;
+                }
+            }
+            for (String prefix : chunk.getCommonPrefixes()) {
+                if (prefix.equals(key + DELIMITER)) {
+                    listDirectory(bucket, prefix);
+                    found = true;
+                }
+            }
+            priorLastKey = chunk.isListingComplete() ? null : chunk.getPriorLastKey();
+        } while (priorLastKey != null && !isFailed());
+        if (!found) {
+            throw new FileNotFoundException(String.format("File %s does not exist", path));
+        }
+    }
+
+    private void listDirectory(String bucket, String prefix) {
+        submit(() -> {
+            LOGGER.debug("Listing {}{}/{}", ObjectStore.SCHEME, bucket, prefix);
+            String priorLastKey = null;
+            do {
+                StorageObjectsChunk chunk = list(bucket, prefix, priorLastKey);
+                for (StorageObject object : chunk.getObjects()) {
+                    if (object.getKey().equals(prefix)) {
+                        // the marker object of the directory itself, as created by some tools
+                        continue;
+                    }
+                    if (isHidden(name(object.getKey()))) {
+                        LOGGER.debug("Ignoring hidden {}{}/{}", ObjectStore.SCHEME, bucket, object.getKey());
+                    } else {
+                        accept(bucket, object);
+                    }
+                }
+                for (String directory : chunk.getCommonPrefixes()) {
+                    if (isHidden(name(directory))) {
+                        LOGGER.debug("Ignoring hidden {}{}/{}", ObjectStore.SCHEME, bucket, directory);
+                    } else if (recursive) {
+                        listDirectory(bucket, directory);
+                    } else {
+                        LOGGER.debug("Ignoring directory {}{}/{}, recursion is disabled", ObjectStore.SCHEME, bucket, directory);
+                    }
+                }
+                priorLastKey = chunk.isListingComplete() ? null : chunk.getPriorLastKey();
+            } while (priorLastKey != null && !isFailed());
+        });
+    }
+
+    private StorageObjectsChunk list(String bucket, String prefix, String priorLastKey) throws IOException {
+        try {
+            return store.service().listObjectsChunked(bucket, prefix, DELIMITER, MAX_KEYS, priorLastKey);
+        } catch (ServiceException e) {
+            throw new IOException(String.format("Failed to list %s%s/%s", ObjectStore.SCHEME, bucket, prefix), e);
+        }
+    }
+
+    /**
+     * @return the last segment of a key, without the trailing delimiter of directories
+     */
+    private static String name(String key) {
+        String trimmed = key.endsWith(DELIMITER) ? key.substring(0, key.length() - 1) : key;
+        return trimmed.substring(trimmed.lastIndexOf('/') + 1);
+    }
+
+    private void accept(String bucket, StorageObject object) {
+        accept(name(object.getKey()), store.file(bucket, object));
+    }
+}
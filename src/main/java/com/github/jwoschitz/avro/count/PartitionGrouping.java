@@ -0,0 +1,99 @@
+package com.github.jwoschitz.avro.count;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Aggregates the results of files by their Hive-style partition, i.e. the key=value segments of their directories
+ *
+ * Every partition counts the files which have been listed but not counted yet. Once listing is finished, partitions
+ * are handed to the listener in the order of their names, each as soon as all of its files and all partitions
+ * before it have been counted. Partitions are therefore reported in a stable order while counting is still in
+ * progress.
+ */
+class PartitionGrouping {
+
+    private static class Partition {
+        final CountResult summary;
+        final AtomicInteger pendingFiles = new AtomicInteger();
+
+        Partition(String name) {
+            this.summary = CountResult.summary(name);
+        }
+    }
+
+    private final Consumer<CountResult> listener;
+    private final ConcurrentMap<String, Partition> partitions = new ConcurrentHashMap<>();
+
+    // the names of all partitions in order, known once listing is finished
+    private List<String> names;
+    private int reported = 0;
+
+    PartitionGrouping(Consumer<CountResult> listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @return the key=value directory segments of the given path, e.g. dt=2026-10-17/hr=03, or an empty string if
+     * the file is not within a partition
+     */
+    static String partition(String path) {
+        String[] segments = path.split("/");
+        StringBuilder partition = new StringBuilder();
+        // the last segment is the name of the file itself
+        for (int i = 0; i < segments.length - 1; i++) {
+            int separator = segments[i].indexOf('=');
+            if (separator > 0 && segments[i].indexOf(':') < 0) {
+                if (partition.length() > 0) {
+                    partition.append('/');
+                }
+                partition.append(segments[i]);
+            }
+        }
+        return partition.toString();
+    }
+
+    void listed(CountableFile file) {
+        String name = partition(file.getPath());
+        partitions.computeIfAbsent(name, Partition::new).pendingFiles.incrementAndGet();
+    }
+
+    void counted(CountResult file) {
+        Partition partition = partitions.get(partition(file.getPath()));
+        partition.summary.add(file);
+        if (partition.pendingFiles.decrementAndGet() == 0) {
+            report();
+        }
+    }
+
+    void listingFinished() {
+        List<String> names = new ArrayList<>(partitions.keySet());
+        Collections.sort(names);
+        synchronized (this) {
+            this.names = names;
+        }
+        report();
+    }
+
+    /**
+     * Hands all partitions to the listener which are counted completely and not preceded by a pending partition
+     */
+    private synchronized void report() {
+        if (names == null) {
+            return;
+        }
+        while (reported < names.size()) {
+            Partition partition = partitions.get(names.get(reported));
+            if (partition.pendingFiles.get() > 0) {
+                return;
+            }
+            listener.accept(partition.summary);
+            reported++;
+        }
+    }
+}
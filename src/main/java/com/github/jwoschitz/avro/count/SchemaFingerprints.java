@@ -0,0 +1,54 @@
+package com.github.jwoschitz.avro.count;
+
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaNormalization;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Fingerprints the writer schemas from the headers of avro files
+ *
+ * The fingerprint is the CRC-64-AVRO fingerprint of the Parsing Canonical Form of a schema, so schemas which only
+ * differ in documentation, default values or formatting share a fingerprint. Fingerprints are cached by the schema
+ * as stored in the header: the files of a dataset usually carry identical headers, which are therefore parsed and
+ * hashed only once.
+ */
+class SchemaFingerprints {
+    private final static Logger LOGGER = LoggerFactory.getLogger(SchemaFingerprints.class);
+
+    private final static int MAX_ENTRIES = 1024;
+
+    private final ConcurrentMap<String, String> fingerprints = new ConcurrentHashMap<>();
+
+    /**
+     * @param schema the writer schema as stored in the header of a file
+     * @return the fingerprint as 16 hexadecimal digits, null if the schema is missing or cannot be parsed
+     */
+    String get(String schema) {
+        if (schema == null) {
+            return null;
+        }
+        String fingerprint = fingerprints.get(schema);
+        if (fingerprint != null) {
+            return fingerprint;
+        }
+
+        try {
+            long value = SchemaNormalization.parsingFingerprint64(
+                    new Schema.Parser().setValidateDefaults(false).parse(schema));
+            fingerprint = String.format("%016x", value);
+        } catch (RuntimeException e) {
+            LOGGER.warn("Unable to fingerprint schema: {}", e.getMessage());
+            return null;
+        }
+        // a new schema per file would be a very unusual dataset, just start over instead of tracking their usage
+        if (fingerprints.size() >= MAX_ENTRIES) {
+            fingerprints.clear();
+        }
+        fingerprints.put(schema, fingerprint);
+        return fingerprint;
+    }
+}
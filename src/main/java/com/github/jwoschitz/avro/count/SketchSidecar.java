@@ -0,0 +1,105 @@
+package com.github.jwoschitz.avro.count;
+
+import org.apache.avro.file.DataFileConstants;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+
+/**
+ * Stores the {@link HyperLogLog} sketch of the distinct values of a field of an avro file in a sidecar file next to
+ * it, so that later counts merge the sketch instead of reading the file again
+ *
+ * The sidecar of the field user_id of file.avro is named file.avro.user_id.hll. It holds the length and modification
+ * time of the file it has been written for, the sync marker and the amount of records and blocks of the file,
+ * followed by the serialized sketch and a checksum over all of it.
+ */
+class SketchSidecar {
+    static final String EXTENSION = ".hll";
+
+    private static final int MAGIC = 0x4156534B; // AVSK
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 44 + DataFileConstants.SYNC_SIZE;
+
+    private SketchSidecar() {
+    }
+
+    /**
+     * @return the suffix which is appended to the name of the file, e.g. .user_id.hll
+     */
+    static String suffix(String field) {
+        return "." + field + EXTENSION;
+    }
+
+    static byte[] write(long length, long modificationTime, CountResult count) throws IOException {
+        byte[] sketch = count.distinct.toByteArray();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + sketch.length);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(length);
+            out.writeLong(modificationTime);
+            out.write(count.sync);
+            out.writeLong(count.records);
+            out.writeLong(count.blocks);
+            out.writeInt(sketch.length);
+            out.write(sketch);
+            CRC32 crc = new CRC32();
+            crc.update(bytes.toByteArray());
+            out.writeInt((int) crc.getValue());
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return the count of the file including the sketch of its distinct values, null if the sidecar has been
+     * written for a different length or modification time
+     * @throws IOException if the sidecar is not a valid sketch sidecar
+     */
+    static CountResult read(InputStream in, CountableFile file) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) >= 0) {
+            content.write(buffer, 0, n);
+        }
+        byte[] bytes = content.toByteArray();
+        if (bytes.length < 4) {
+            throw new IOException("Not a sketch sidecar");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - 4);
+        DataInputStream sidecar = new DataInputStream(new ByteArrayInputStream(bytes));
+        if (sidecar.readInt() != MAGIC || sidecar.readInt() != VERSION) {
+            throw new IOException("Not a sketch sidecar");
+        }
+        long length = sidecar.readLong();
+        long modificationTime = sidecar.readLong();
+        if (length != file.getLength() || modificationTime != file.getModificationTime()) {
+            return null;
+        }
+        byte[] sync = new byte[DataFileConstants.SYNC_SIZE];
+        sidecar.readFully(sync);
+        long records = sidecar.readLong();
+        long blocks = sidecar.readLong();
+        int sketchLength = sidecar.readInt();
+        if (records < 0 || blocks < 0 || sketchLength < 0 || sketchLength != bytes.length - HEADER_SIZE - 4) {
+            throw new IOException("Invalid sketch sidecar header");
+        }
+        byte[] sketch = new byte[sketchLength];
+        sidecar.readFully(sketch);
+        if (sidecar.readInt() != (int) crc.getValue()) {
+            throw new IOException("Invalid sketch sidecar checksum");
+        }
+
+        CountResult count = new CountResult(file.getPath(), file.getLength());
+        count.addPrevious(records, blocks);
+        count.sync = sync;
+        count.distinct = HyperLogLog.fromByteArray(sketch);
+        return count;
+    }
+}
@@ -0,0 +1,272 @@
+package com.github.jwoschitz.avro.file;
+
+import org.apache.avro.file.DataFileConstants;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Offsets, sizes and record counts of all blocks of an avro data file, stored in a compact sidecar file next to it
+ *
+ * The sidecar of file.avro is named file.avro.idx. Its header holds the length and modification time of the
+ * indexed file together with a checksum over both, the sync marker of the file and the total amount of records and
+ * blocks. The header alone is sufficient to count a file, see {@link #readHeader(InputStream)}.
+ *
+ * The header is followed by one entry per block: the distance of its offset to the offset of the previous block, the
+ * size of its data and its amount of records, all encoded as variable-length longs. With the whole index, a reader
+ * can seek straight to the block which holds a given record, e.g. to split a file into exact ranges of records.
+ */
+public class BlockIndex {
+    public static final String SUFFIX = ".idx";
+
+    private static final int MAGIC = 0x41564958; // AVIX
+    private static final int VERSION = 1;
+
+    /**
+     * The header of an index, describing the indexed file
+     */
+    public static class Header {
+        private final long length;
+        private final long modificationTime;
+        private final byte[] sync;
+        private final long records;
+        private final long blocks;
+
+        Header(long length, long modificationTime, byte[] sync, long records, long blocks) {
+            this.length = length;
+            this.modificationTime = modificationTime;
+            this.sync = sync;
+            this.records = records;
+            this.blocks = blocks;
+        }
+
+        /**
+         * @return whether the index has been built for a file of the given length and modification time
+         */
+        public boolean isValidFor(long length, long modificationTime) {
+            return this.length == length && this.modificationTime == modificationTime;
+        }
+
+        public byte[] getSync() {
+            return sync.clone();
+        }
+
+        public long getRecords() {
+            return records;
+        }
+
+        public long getBlocks() {
+            return blocks;
+        }
+    }
+
+    /**
+     * Collects the blocks of a file in the order of their offsets
+     */
+    public static class Blocks {
+        private long[] offsets = new long[16];
+        private long[] sizes = new long[16];
+        private long[] counts = new long[16];
+        private int size = 0;
+
+        public void add(long offset, long blockSize, long blockCount) {
+            if (size == offsets.length) {
+                offsets = Arrays.copyOf(offsets, size * 2);
+                sizes = Arrays.copyOf(sizes, size * 2);
+                counts = Arrays.copyOf(counts, size * 2);
+            }
+            offsets[size] = offset;
+            sizes[size] = blockSize;
+            counts[size] = blockCount;
+            size++;
+        }
+
+        /**
+         * Appends the blocks of a following range of the same file
+         */
+        public void addAll(Blocks other) {
+            for (int i = 0; i < other.size; i++) {
+                add(other.offsets[i], other.sizes[i], other.counts[i]);
+            }
+        }
+    }
+
+    private final Header header;
+    private final long[] offsets;
+    private final long[] sizes;
+    // first record of every block, followed by the total amount of records
+    private final long[] firstRecords;
+
+    private BlockIndex(Header header, long[] offsets, long[] sizes, long[] firstRecords) {
+        this.header = header;
+        this.offsets = offsets;
+        this.sizes = sizes;
+        this.firstRecords = firstRecords;
+    }
+
+    public Header getHeader() {
+        return header;
+    }
+
+    public int getBlocks() {
+        return offsets.length;
+    }
+
+    /**
+     * @return the offset of the block header, i.e. the position directly following the sync marker of the previous
+     * block, which can be passed to {@link SeekableBlockReader#seek(long)}
+     */
+    public long getOffset(int block) {
+        return offsets[block];
+    }
+
+    /**
+     * @return the size of the (compressed) data of the block
+     */
+    public long getSize(int block) {
+        return sizes[block];
+    }
+
+    public long getRecords(int block) {
+        return firstRecords[block + 1] - firstRecords[block];
+    }
+
+    /**
+     * @return the number of the first record of the block, counting the records of the file from 0
+     */
+    public long getFirstRecord(int block) {
+        return firstRecords[block];
+    }
+
+    /**
+     * @return the block which holds the record with the given number, counting the records of the file from 0
+     */
+    public int findBlock(long record) {
+        if (record < 0 || record >= header.records) {
+            throw new IndexOutOfBoundsException(String.format("Record %s of %s", record, header.records));
+        }
+        int low = 0;
+        int high = offsets.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (firstRecords[mid] <= record) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Serializes the index of a file of the given length and modification time
+     */
+    public static byte[] write(long length, long modificationTime, byte[] sync, Blocks blocks) throws IOException {
+        long records = 0L;
+        for (int i = 0; i < blocks.size; i++) {
+            records += blocks.counts[i];
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + blocks.size * 8);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(length);
+            out.writeLong(modificationTime);
+            out.writeInt(checksum(length, modificationTime));
+            out.write(sync);
+            out.writeLong(records);
+            out.writeLong(blocks.size);
+            long previousOffset = 0L;
+            for (int i = 0; i < blocks.size; i++) {
+                writeLong(out, blocks.offsets[i] - previousOffset);
+                writeLong(out, blocks.sizes[i]);
+                writeLong(out, blocks.counts[i]);
+                previousOffset = blocks.offsets[i];
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads only the header of an index, which is sufficient to count the indexed file
+     */
+    public static Header readHeader(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC || data.readInt() != VERSION) {
+            throw new IOException("Not a block index");
+        }
+        long length = data.readLong();
+        long modificationTime = data.readLong();
+        if (data.readInt() != checksum(length, modificationTime)) {
+            throw new IOException("Invalid block index checksum");
+        }
+        byte[] sync = new byte[DataFileConstants.SYNC_SIZE];
+        data.readFully(sync);
+        long records = data.readLong();
+        long blocks = data.readLong();
+        if (records < 0 || blocks < 0 || blocks > Integer.MAX_VALUE) {
+            throw new IOException("Invalid block index header");
+        }
+        return new Header(length, modificationTime, sync, records, blocks);
+    }
+
+    /**
+     * Reads a whole index, including the entries of all blocks
+     */
+    public static BlockIndex read(InputStream in) throws IOException {
+        Header header = readHeader(in);
+        DataInputStream data = new DataInputStream(in);
+        int blocks = (int) header.blocks;
+        long[] offsets = new long[blocks];
+        long[] sizes = new long[blocks];
+        long[] firstRecords = new long[blocks + 1];
+        long offset = 0L;
+        for (int i = 0; i < blocks; i++) {
+            offset += readLong(data);
+            offsets[i] = offset;
+            sizes[i] = readLong(data);
+            firstRecords[i + 1] = firstRecords[i] + readLong(data);
+        }
+        if (firstRecords[blocks] != header.records) {
+            throw new IOException("Block index does not match its header");
+        }
+        return new BlockIndex(header, offsets, sizes, firstRecords);
+    }
+
+    private static int checksum(long length, long modificationTime) {
+        CRC32 crc = new CRC32();
+        crc.update(ByteBuffer.allocate(16).putLong(length).putLong(modificationTime).array(), 0, 16);
+        return (int) crc.getValue();
+    }
+
+    private static void writeLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readLong(DataInputStream in) throws IOException {
+        long value = 0L;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Invalid long encoding");
+    }
+}
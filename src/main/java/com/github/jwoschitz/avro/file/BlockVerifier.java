@@ -0,0 +1,199 @@
+package com.github.jwoschitz.avro.file;
+
+import com.github.luben.zstd.ZstdInputStreamNoFinalizer;
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaParseException;
+import org.apache.avro.file.DataFileConstants;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.tukaani.xz.XZInputStream;
+import org.xerial.snappy.Snappy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.function.LongConsumer;
+import java.util.zip.CRC32;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Verifies the data of single blocks: decompresses them with the codec of the file, checks the checksum of snappy
+ * compressed blocks and skips the amount of records stated in the block header with the writer schema of the file
+ *
+ * Given a predicate, the records are decoded with its plan instead of being skipped, which counts the records
+ * matching the predicate while verifying the block. Likewise, given a field whose distinct values are counted, the
+ * hashes of its values are handed to a sketch while verifying the block.
+ *
+ * Blocks are verified independently of each other, so a single instance can be used by multiple threads at once.
+ *
+ * @see CountableBlockReader#readBlockData()
+ */
+public class BlockVerifier {
+    private final String codec;
+    private final Schema schema;
+    private final RecordPredicate.Plan plan;
+    private final DistinctField.Plan distinctPlan;
+
+    public BlockVerifier(CountableBlockReader reader) throws IOException {
+        this(reader, null, null);
+    }
+
+    /**
+     * @param predicate the predicate whose matching records are counted, null to only verify blocks
+     * @param distinct the field whose values are hashed, null to only verify blocks, cannot be combined with a
+     *                 predicate
+     * @throws IOException if the predicate or field cannot be applied to the writer schema of the file
+     */
+    public BlockVerifier(CountableBlockReader reader, RecordPredicate predicate, DistinctField distinct) throws IOException {
+        if (predicate != null && distinct != null) {
+            throw new IllegalArgumentException("Distinct values cannot be counted for a predicate");
+        }
+        String codec = reader.getMetaString(DataFileConstants.CODEC);
+        this.codec = codec != null ? codec : DataFileConstants.NULL_CODEC;
+        if (!isSupported(this.codec)) {
+            throw new IOException("Unsupported codec: " + this.codec);
+        }
+        String schema = reader.getMetaString(DataFileConstants.SCHEMA);
+        if (schema == null) {
+            throw new IOException("Missing writer schema");
+        }
+        try {
+            this.schema = new Schema.Parser().setValidateDefaults(false).parse(schema);
+        } catch (SchemaParseException e) {
+            throw new IOException("Invalid writer schema", e);
+        }
+        try {
+            this.plan = predicate != null ? predicate.plan(this.schema) : null;
+        } catch (IllegalArgumentException e) {
+            throw new IOException(String.format("Cannot apply predicate %s: %s", predicate, e.getMessage()), e);
+        }
+        try {
+            this.distinctPlan = distinct != null ? distinct.plan(this.schema) : null;
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    private static boolean isSupported(String codec) {
+        switch (codec) {
+            case DataFileConstants.NULL_CODEC:
+            case DataFileConstants.DEFLATE_CODEC:
+            case DataFileConstants.SNAPPY_CODEC:
+            case DataFileConstants.BZIP2_CODEC:
+            case DataFileConstants.XZ_CODEC:
+            case DataFileConstants.ZSTANDARD_CODEC:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @see #verify(ByteBuffer, long, LongConsumer)
+     */
+    public long verify(ByteBuffer data, long blockCount) throws IOException {
+        return verify(data, blockCount, hash -> { });
+    }
+
+    /**
+     * @param data the data of the block as returned by {@link CountableBlockReader#readBlockData()}
+     * @param blockCount the amount of records stated in the block header
+     * @param distinctValues receives the hashes of the values of the distinct field, if any
+     * @return the amount of records matching the predicate, blockCount without a predicate
+     * @throws IOException if the data cannot be decompressed, or does not consist of exactly blockCount records
+     */
+    public long verify(ByteBuffer data, long blockCount, LongConsumer distinctValues) throws IOException {
+        byte[] records = decompress(data);
+        BinaryDecoder decoder = DecoderFactory.get().binaryDecoder(records, null);
+        long matching = blockCount;
+        try {
+            if (plan != null) {
+                matching = plan.count(decoder, blockCount);
+            } else if (distinctPlan != null) {
+                distinctPlan.hashValues(decoder, blockCount, distinctValues);
+            } else {
+                for (long i = 0; i < blockCount; i++) {
+                    GenericDatumReader.skip(schema, decoder);
+                }
+            }
+        } catch (EOFException e) {
+            throw new IOException(String.format("Block holds fewer than %s records", blockCount));
+        } catch (AvroRuntimeException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IOException(String.format("Block holds fewer than %s valid records: %s", blockCount, e.getMessage()));
+        }
+        if (!decoder.isEnd()) {
+            throw new IOException(String.format("Block holds more data than %s records", blockCount));
+        }
+        return matching;
+    }
+
+    private byte[] decompress(ByteBuffer data) throws IOException {
+        byte[] compressed = new byte[data.remaining()];
+        data.duplicate().get(compressed);
+        switch (codec) {
+            case DataFileConstants.NULL_CODEC:
+                return compressed;
+            case DataFileConstants.DEFLATE_CODEC:
+                Inflater inflater = new Inflater(true);
+                try {
+                    return readFully(new InflaterInputStream(new ByteArrayInputStream(compressed), inflater));
+                } finally {
+                    inflater.end();
+                }
+            case DataFileConstants.SNAPPY_CODEC:
+                return uncompressSnappy(compressed);
+            case DataFileConstants.BZIP2_CODEC:
+                return readFully(new BZip2CompressorInputStream(new ByteArrayInputStream(compressed)));
+            case DataFileConstants.XZ_CODEC:
+                return readFully(new XZInputStream(new ByteArrayInputStream(compressed)));
+            case DataFileConstants.ZSTANDARD_CODEC:
+                return readFully(new ZstdInputStreamNoFinalizer(new ByteArrayInputStream(compressed)));
+            default:
+                throw new IOException("Unsupported codec: " + codec);
+        }
+    }
+
+    /**
+     * Snappy compressed blocks are followed by the big-endian CRC32 checksum of the uncompressed data
+     */
+    private static byte[] uncompressSnappy(byte[] compressed) throws IOException {
+        if (compressed.length < 4) {
+            throw new IOException("Block is too short for a snappy checksum");
+        }
+        int length = compressed.length - 4;
+        byte[] uncompressed;
+        try {
+            uncompressed = new byte[Snappy.uncompressedLength(compressed, 0, length)];
+            Snappy.uncompress(compressed, 0, length, uncompressed, 0);
+        } catch (IOException e) {
+            throw new IOException("Invalid snappy data: " + e.getMessage(), e);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(uncompressed, 0, uncompressed.length);
+        int expected = ByteBuffer.wrap(compressed, length, 4).getInt();
+        if (expected != (int) crc.getValue()) {
+            throw new IOException("Snappy checksum mismatch");
+        }
+        return uncompressed;
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        try (InputStream stream = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = stream.read(buffer)) >= 0) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+}
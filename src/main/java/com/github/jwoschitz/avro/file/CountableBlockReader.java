@@ -0,0 +1,57 @@
+package com.github.jwoschitz.avro.file;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Iterates over the blocks of an avro data file without deserializing any records
+ */
+public interface CountableBlockReader extends Closeable {
+
+    boolean hasNextBlock();
+
+    void nextBlock() throws IOException;
+
+    /**
+     * @return the amount of records within the current block
+     */
+    long getBlockCount();
+
+    /**
+     * @return the size in bytes of the current block, as stored in the file (after compression)
+     */
+    long getBlockSize();
+
+    /**
+     * Reads the data of the current block as stored in the file, i.e. still compressed
+     *
+     * Must be called after {@link #hasNextBlock()} and before {@link #nextBlock()}, which then only reads the
+     * trailing sync marker. The returned buffer is not modified by any further call of this reader.
+     */
+    ByteBuffer readBlockData() throws IOException;
+
+    /**
+     * @return the sync marker of the file as defined in its header
+     */
+    byte[] getSync();
+
+    /**
+     * @return the value of a metadata property of the file header, or null if the property is not present
+     */
+    byte[] getMeta(String key);
+
+    /**
+     * @return the value of a metadata property of the file header as string, or null if the property is not present
+     */
+    default String getMetaString(String key) {
+        byte[] value = getMeta(key);
+        return value != null ? new String(value, StandardCharsets.UTF_8) : null;
+    }
+
+    /**
+     * @return the amount of bytes which have actually been read from the underlying input so far
+     */
+    long getBytesRead();
+}
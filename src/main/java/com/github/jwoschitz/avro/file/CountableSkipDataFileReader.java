@@ -0,0 +1,301 @@
+package com.github.jwoschitz.avro.file;
+
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.file.DataFileConstants;
+import org.apache.avro.file.SeekableInput;
+import org.apache.avro.io.DecoderFactory;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.NoSuchElementException;
+
+/**
+ * Seekable version of CountableSkipDataFileStream, modelled after org.apache.avro.file.DataFileReader
+ *
+ * Besides counting a file from start to end, the reader can be positioned at the first block following an
+ * arbitrary byte offset via {@link #sync(long)}. Together with {@link #pastSync(long)} this allows to count
+ * independent byte ranges of the same file, e.g. on multiple threads.
+ *
+ * A block belongs to the range in which its preceding sync marker starts, so splitting a file into adjacent
+ * ranges will count every block exactly once.
+ *
+ * Blocks are walked by absolute offsets: only the two varints of the block header and the trailing sync marker
+ * are read, the block payload is never transferred. The sync marker of a block and the header of the following
+ * block are fetched with a single read, so the amount of I/O scales with the number of blocks, not the file size.
+ *
+ * @see org.apache.avro.file.DataFileReader
+ */
+public class CountableSkipDataFileReader extends CountableSkipDataFileStream implements SeekableBlockReader {
+
+    // block count and block size, both encoded as variable-length zig-zag longs
+    private static final int MAX_BLOCK_HEADER_SIZE = 20;
+
+    // amount of bytes which are read at once while searching for a sync marker, growing up to the maximum size
+    private static final int MIN_SYNC_CHUNK_SIZE = 8 * 1024;
+    private static final int MAX_SYNC_CHUNK_SIZE = 64 * 1024;
+
+    private final SeekableInputStream sin;
+    private long blockStart;
+    private long blockDataStart;
+
+    private final byte[] buffer = new byte[DataFileConstants.SYNC_SIZE + MAX_BLOCK_HEADER_SIZE];
+    private long bufferStart = -1;
+    private int bufferLength = 0;
+    private int bufferPosition = 0;
+
+    private byte[] syncChunk;
+    private SyncMarkerSearch search;
+
+    public CountableSkipDataFileReader(SeekableInput in) throws IOException {
+        this(new SeekableInputStream(in));
+    }
+
+    private CountableSkipDataFileReader(SeekableInputStream sin) throws IOException {
+        super(sin);
+        this.sin = sin;
+        this.blockStart = sin.tell() - vin.inputStream().available();
+    }
+
+    /**
+     * Move to a specific, known synchronization point, e.g. one returned by {@link #previousSync()}
+     */
+    @Override
+    public void seek(long position) throws IOException {
+        sin.seek(position);
+        vin = DecoderFactory.get().binaryDecoder(input, vin);
+        availableBlock = false;
+        blockStart = position;
+    }
+
+    /**
+     * Move to the next synchronization point after a position. To process a range of file entries,
+     * call this with the starting position, then check {@link #pastSync(long)} with the end position
+     * before each call to {@link #nextBlock()}.
+     */
+    @Override
+    public void sync(long position) throws IOException {
+        seek(position);
+        if (search == null) {
+            search = new SyncMarkerSearch(expectedSync);
+            syncChunk = new byte[MIN_SYNC_CHUNK_SIZE];
+        }
+        final long length = sin.length();
+        // consecutive chunks overlap by the size of a sync marker minus one, so markers spanning two chunks are found
+        long chunkStart = position;
+        while (chunkStart + DataFileConstants.SYNC_SIZE <= length) {
+            if (chunkStart > position && syncChunk.length < MAX_SYNC_CHUNK_SIZE) {
+                // most searches end within the first chunk, only long searches for a corrupt region need more
+                syncChunk = new byte[syncChunk.length * 2];
+            }
+            int n = (int) Math.min(syncChunk.length, length - chunkStart);
+            sin.seek(chunkStart);
+            int read = 0;
+            while (read < n) {
+                int r = sin.read(syncChunk, read, n - read);
+                if (r < 0) break;
+                read += r;
+            }
+            bytesRead += read;
+            int index = search.indexOf(syncChunk, 0, read);
+            if (index >= 0) {
+                blockStart = chunkStart + index + DataFileConstants.SYNC_SIZE;
+                return;
+            }
+            if (read < n) break;
+            chunkStart += read - (DataFileConstants.SYNC_SIZE - 1);
+        }
+        // if no match set start to the end position
+        blockStart = length;
+    }
+
+    /**
+     * Return true if past the next synchronization point after a position.
+     */
+    @Override
+    public boolean pastSync(long position) throws IOException {
+        return blockStart >= position + DataFileConstants.SYNC_SIZE || blockStart >= sin.length();
+    }
+
+    /**
+     * Return the last synchronization point before our current position.
+     */
+    @Override
+    public long previousSync() {
+        return blockStart;
+    }
+
+    @Override
+    public boolean hasNextBlock() {
+        try {
+            if (availableBlock) return true;
+            final long length = sin.length();
+            if (blockStart >= length) return false;
+            final int headerLength = (int) Math.min(MAX_BLOCK_HEADER_SIZE, length - blockStart);
+            if (blockStart < bufferStart || blockStart + headerLength > bufferStart + bufferLength) {
+                fill(blockStart, headerLength);
+            }
+            bufferPosition = (int) (blockStart - bufferStart);
+            final long blockRemaining = readLong();
+            blockSize = readLong();
+            if (blockSize > Integer.MAX_VALUE ||
+                    blockSize < 0) {
+                throw new IOException("Block size invalid or too large for this " +
+                        "implementation: " + blockSize);
+            }
+            blockCount = blockRemaining;
+            blockDataStart = bufferStart + bufferPosition;
+            availableBlock = true;
+            return true;
+        } catch (EOFException eof) {
+            return false;
+        } catch (IOException e) {
+            throw new AvroRuntimeException(e);
+        }
+    }
+
+    @Override
+    public void nextBlock() throws IOException {
+        if (!hasNextBlock()) {
+            throw new NoSuchElementException();
+        }
+        final long syncPosition = blockDataStart + blockSize;
+        final long remaining = sin.length() - syncPosition;
+        if (remaining < DataFileConstants.SYNC_SIZE) {
+            throw new EOFException();
+        }
+        // read the sync marker together with the header of the next block
+        fill(syncPosition, (int) Math.min(buffer.length, remaining));
+        availableBlock = false;
+        for (int i = 0; i < DataFileConstants.SYNC_SIZE; i++) {
+            if (buffer[i] != expectedSync[i])
+                throw new IOException("Invalid sync!");
+        }
+        blockStart = syncPosition + DataFileConstants.SYNC_SIZE;
+        blockFinished();
+    }
+
+    @Override
+    public ByteBuffer readBlockData() throws IOException {
+        if (!hasNextBlock()) {
+            throw new NoSuchElementException();
+        }
+        if (blockDataStart + blockSize > sin.length()) {
+            throw new EOFException();
+        }
+        byte[] data = new byte[(int) blockSize];
+        sin.seek(blockDataStart);
+        int n = 0;
+        while (n < data.length) {
+            int read = sin.read(data, n, data.length - n);
+            if (read < 0) throw new EOFException();
+            n += read;
+        }
+        bytesRead += n;
+        return ByteBuffer.wrap(data);
+    }
+
+    private void fill(long position, int length) throws IOException {
+        sin.seek(position);
+        int n = 0;
+        while (n < length) {
+            int read = sin.read(buffer, n, length - n);
+            if (read < 0) break;
+            n += read;
+        }
+        bufferStart = position;
+        bufferLength = n;
+        bytesRead += n;
+    }
+
+    private long readLong() throws IOException {
+        long n = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (bufferPosition >= bufferLength) {
+                throw new EOFException();
+            }
+            int b = buffer[bufferPosition++] & 0xff;
+            n |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return (n >>> 1) ^ -(n & 1);
+            }
+        }
+        throw new IOException("Invalid long encoding");
+    }
+
+    /**
+     * An InputStream which reads from a SeekableInput
+     */
+    static class SeekableInputStream extends InputStream implements SeekableInput {
+        private final byte[] oneByte = new byte[1];
+        private final SeekableInput in;
+
+        SeekableInputStream(SeekableInput in) {
+            this.in = in;
+        }
+
+        @Override
+        public void seek(long p) throws IOException {
+            if (p < 0)
+                throw new IOException("Illegal seek: " + p);
+            in.seek(p);
+        }
+
+        @Override
+        public long tell() throws IOException {
+            return in.tell();
+        }
+
+        @Override
+        public long length() throws IOException {
+            return in.length();
+        }
+
+        @Override
+        public int read(byte[] b) throws IOException {
+            return in.read(b, 0, b.length);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return in.read(b, off, len);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int n = read(oneByte, 0, 1);
+            if (n == 1) {
+                return oneByte[0] & 0xff;
+            } else {
+                return n;
+            }
+        }
+
+        @Override
+        public long skip(long skip) throws IOException {
+            long position = in.tell();
+            long length = in.length();
+            long remaining = length - position;
+            if (remaining > skip) {
+                in.seek(position + skip);
+                return skip;
+            } else {
+                in.seek(length);
+                return remaining;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+            super.close();
+        }
+
+        @Override
+        public int available() throws IOException {
+            long remaining = in.length() - in.tell();
+            return (remaining > Integer.MAX_VALUE) ? Integer.MAX_VALUE : (int) remaining;
+        }
+    }
+}
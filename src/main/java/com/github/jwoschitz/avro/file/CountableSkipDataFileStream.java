@@ -5,11 +5,14 @@ import org.apache.avro.file.DataFileConstants;
 import org.apache.avro.io.BinaryDecoder;
 import org.apache.avro.io.DecoderFactory;
 
-import java.io.Closeable;
 import java.io.EOFException;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.NoSuchElementException;
 
 /**
@@ -21,23 +24,29 @@ import java.util.NoSuchElementException;
  *
  * @see org.apache.avro.file.DataFileStream
  */
-public class CountableSkipDataFileStream implements Closeable {
+public class CountableSkipDataFileStream implements CountableBlockReader {
 
-    private BinaryDecoder vin;
+    InputStream input;
+    BinaryDecoder vin;
 
-    private boolean availableBlock = false;
-    private long blockSize;
-    private long blockCount;
+    private final Map<String, byte[]> meta = new HashMap<>();
+    long bytesRead = 0L;
 
-    private byte[] expectedSync = new byte[DataFileConstants.SYNC_SIZE];
-    private byte[] syncBuffer = new byte[DataFileConstants.SYNC_SIZE];
+    boolean availableBlock = false;
+    boolean blockDataRead = false;
+    long blockSize;
+    long blockCount;
+
+    final byte[] expectedSync = new byte[DataFileConstants.SYNC_SIZE];
+    final byte[] syncBuffer = new byte[DataFileConstants.SYNC_SIZE];
 
     public CountableSkipDataFileStream(InputStream in) throws IOException {
         initialize(in);
     }
 
     private void initialize(InputStream in) throws IOException {
-        this.vin = DecoderFactory.get().binaryDecoder(in, vin);
+        this.input = new CountingInputStream(in);
+        this.vin = DecoderFactory.get().binaryDecoder(input, vin);
         byte[] magic = new byte[DataFileConstants.MAGIC.length];
         try {
             vin.readFixed(magic);
@@ -51,16 +60,33 @@ public class CountableSkipDataFileStream implements Closeable {
         if (l > 0) {
             do {
                 for (long i = 0; i < l; i++) {
-                    vin.skipString();
-                    vin.skipBytes();
+                    String key = vin.readString();
+                    ByteBuffer value = vin.readBytes(null);
+                    byte[] bb = new byte[value.remaining()];
+                    value.get(bb);
+                    meta.put(key, bb);
                 }
             } while ((l = vin.mapNext()) != 0);
         }
         vin.readFixed(expectedSync);
     }
 
+    @Override
     public long getBlockCount() { return blockCount; }
 
+    @Override
+    public long getBlockSize() { return blockSize; }
+
+    @Override
+    public byte[] getSync() { return expectedSync.clone(); }
+
+    @Override
+    public byte[] getMeta(String key) { return meta.get(key); }
+
+    @Override
+    public long getBytesRead() { return bytesRead; }
+
+    @Override
     public boolean hasNextBlock() {
         try {
             if (availableBlock) return true;
@@ -82,19 +108,68 @@ public class CountableSkipDataFileStream implements Closeable {
         }
     }
 
+    @Override
     public void nextBlock() throws IOException {
         if (!hasNextBlock()) {
             throw new NoSuchElementException();
         }
-        vin.skipFixed((int) blockSize);
+        if (!blockDataRead) {
+            vin.skipFixed((int) blockSize);
+        }
         vin.readFixed(syncBuffer);
         availableBlock = false;
+        blockDataRead = false;
         if (!Arrays.equals(syncBuffer, expectedSync))
             throw new IOException("Invalid sync!");
+        blockFinished();
+    }
+
+    @Override
+    public ByteBuffer readBlockData() throws IOException {
+        if (!hasNextBlock()) {
+            throw new NoSuchElementException();
+        }
+        if (blockDataRead) {
+            throw new IllegalStateException("Data of the current block has already been read");
+        }
+        byte[] data = new byte[(int) blockSize];
+        vin.readFixed(data);
+        blockDataRead = true;
+        return ByteBuffer.wrap(data);
+    }
+
+    /**
+     * Hook which is invoked after a block including its trailing sync marker has been consumed
+     */
+    protected void blockFinished() throws IOException {
     }
 
     @Override
     public void close() throws IOException {
         vin.inputStream().close();
     }
+
+    /**
+     * Keeps track of the amount of bytes which have actually been read from the underlying stream
+     */
+    class CountingInputStream extends FilterInputStream {
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) bytesRead++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) bytesRead += n;
+            return n;
+        }
+    }
 }
@@ -0,0 +1,236 @@
+package com.github.jwoschitz.avro.file;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.io.Decoder;
+import org.apache.avro.util.Utf8;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.function.LongConsumer;
+import java.util.regex.Pattern;
+
+/**
+ * A top-level field of records whose distinct values are counted, e.g. {@code user_id}
+ *
+ * Values are not collected, instead every value is reduced to a 64-bit hash which is handed to a sketch. Values are
+ * hashed independently of the exact type they are written with, so distinct values can be counted across schema
+ * evolutions: ints and longs are hashed as longs, floats and doubles as doubles, enum symbols like strings. Bytes
+ * and fixed values are hashed by their content, nulls are not counted.
+ *
+ * A field is compiled into a {@link Plan} per writer schema. The plan decodes only this field of every record, all
+ * other fields are skipped without being materialized.
+ */
+public class DistinctField {
+    private static final Pattern NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+    private static final long SEED = 0x9E3779B97F4A7C15L;
+    private static final long MULTIPLIER = 0xC6A4A7935BD1E995L;
+
+    private final String name;
+
+    /**
+     * @throws IllegalArgumentException if the given name is not a valid avro field name
+     */
+    public DistinctField(String name) {
+        if (!NAME.matcher(name).matches()) {
+            throw new IllegalArgumentException("Not a valid field name: " + name);
+        }
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Compiles a plan which decodes the field from records written with the given schema
+     *
+     * @throws IllegalArgumentException if the schema is not a record, or the field is of a type whose values cannot
+     * be counted, e.g. an array
+     */
+    public Plan plan(Schema writerSchema) {
+        if (writerSchema.getType() != Schema.Type.RECORD) {
+            throw new IllegalArgumentException("Distinct values require a record schema, not " + writerSchema.getType());
+        }
+        Schema.Field field = writerSchema.getField(name);
+        if (field != null) {
+            check(field.schema());
+        }
+        List<Schema.Field> fields = writerSchema.getFields();
+        Schema[] schemas = new Schema[fields.size()];
+        for (int i = 0; i < schemas.length; i++) {
+            schemas[i] = fields.get(i).schema();
+        }
+        if (field == null) {
+            // a field which is missing from the writer schema is null for all records
+            return new Plan(schemas, -1, null, null);
+        }
+
+        Schema schema = field.schema();
+        boolean union = schema.getType() == Schema.Type.UNION;
+        Schema[] branches = union ? schema.getTypes().toArray(new Schema[0]) : new Schema[]{schema};
+        // enum symbols are hashed upfront instead of for every record
+        long[][] symbols = new long[branches.length][];
+        for (int i = 0; i < branches.length; i++) {
+            if (branches[i].getType() == Schema.Type.ENUM) {
+                List<String> names = branches[i].getEnumSymbols();
+                symbols[i] = new long[names.size()];
+                for (int s = 0; s < symbols[i].length; s++) {
+                    byte[] symbol = Utf8.getBytesFor(names.get(s));
+                    symbols[i][s] = hash(symbol, 0, symbol.length);
+                }
+            }
+        }
+        return new Plan(schemas, field.pos(), union ? branches : null, symbols);
+    }
+
+    private void check(Schema schema) {
+        switch (schema.getType()) {
+            case UNION:
+                for (Schema branch : schema.getTypes()) {
+                    check(branch);
+                }
+                return;
+            case NULL:
+            case STRING:
+            case ENUM:
+            case INT:
+            case LONG:
+            case FLOAT:
+            case DOUBLE:
+            case BOOLEAN:
+            case BYTES:
+            case FIXED:
+                return;
+            default:
+                throw new IllegalArgumentException(String.format("Cannot count distinct values of field %s of type %s",
+                        name, schema.getType().getName()));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    /**
+     * The field compiled for a writer schema, which can be shared by multiple threads
+     */
+    public static class Plan {
+        private final Schema[] fields;
+        private final int position;
+        // the branches of the field if it is a union, null otherwise
+        private final Schema[] branches;
+        private final long[][] symbols;
+
+        private Plan(Schema[] fields, int position, Schema[] branches, long[][] symbols) {
+            this.fields = fields;
+            this.position = position;
+            this.branches = branches;
+            this.symbols = symbols;
+        }
+
+        /**
+         * Decodes the given amount of records and hands the hash of every non-null value of the field to the
+         * given consumer
+         */
+        public void hashValues(Decoder in, long records, LongConsumer hashes) throws IOException {
+            Utf8 string = new Utf8();
+            ByteBuffer bytes = null;
+            byte[] fixed = null;
+            for (long i = 0; i < records; i++) {
+                for (int f = 0; f < fields.length; f++) {
+                    if (f != position) {
+                        GenericDatumReader.skip(fields[f], in);
+                        continue;
+                    }
+                    int branch = branches != null ? in.readIndex() : 0;
+                    Schema schema = branches != null ? branches[branch] : fields[f];
+                    switch (schema.getType()) {
+                        case NULL:
+                            in.readNull();
+                            break;
+                        case STRING:
+                            string = in.readString(string);
+                            hashes.accept(hash(string.getBytes(), 0, string.getByteLength()));
+                            break;
+                        case ENUM:
+                            hashes.accept(symbols[branch][in.readEnum()]);
+                            break;
+                        case INT:
+                            hashes.accept(hash(in.readInt()));
+                            break;
+                        case LONG:
+                            hashes.accept(hash(in.readLong()));
+                            break;
+                        case FLOAT:
+                            hashes.accept(hash(Double.doubleToLongBits(in.readFloat())));
+                            break;
+                        case DOUBLE:
+                            hashes.accept(hash(Double.doubleToLongBits(in.readDouble())));
+                            break;
+                        case BOOLEAN:
+                            hashes.accept(hash(in.readBoolean() ? 1L : 0L));
+                            break;
+                        case BYTES:
+                            bytes = in.readBytes(bytes);
+                            hashes.accept(hash(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining()));
+                            break;
+                        case FIXED:
+                            if (fixed == null || fixed.length != schema.getFixedSize()) {
+                                fixed = new byte[schema.getFixedSize()];
+                            }
+                            in.readFixed(fixed);
+                            hashes.accept(hash(fixed, 0, fixed.length));
+                            break;
+                        default:
+                            throw new IllegalStateException("Unexpected type " + schema.getType());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the 64-bit hash of a number, all bits of which depend on all bits of the number
+     */
+    static long hash(long value) {
+        return mix(value ^ SEED);
+    }
+
+    /**
+     * @return the 64-bit hash of a byte sequence, consumed as little-endian longs
+     */
+    static long hash(byte[] bytes, int offset, int length) {
+        long hash = SEED ^ (length * MULTIPLIER);
+        int end = offset + length;
+        int i = offset;
+        for (; i + 8 <= end; i += 8) {
+            long chunk = 0L;
+            for (int b = 7; b >= 0; b--) {
+                chunk = (chunk << 8) | (bytes[i + b] & 0xFFL);
+            }
+            hash = (hash ^ mix(chunk)) * MULTIPLIER;
+        }
+        long tail = 0L;
+        for (int shift = 0; i < end; i++, shift += 8) {
+            tail |= (bytes[i] & 0xFFL) << shift;
+        }
+        hash = (hash ^ mix(tail)) * MULTIPLIER;
+        return mix(hash);
+    }
+
+    /**
+     * The finalizer of MurmurHash3, which spreads every input bit over all output bits
+     */
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xFF51AFD7ED558CCDL;
+        value ^= value >>> 33;
+        value *= 0xC4CEB9FE1A85EC53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
@@ -0,0 +1,324 @@
+package com.github.jwoschitz.avro.file;
+
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.file.DataFileConstants;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Counting engine for local files which reads block headers and sync markers straight from a memory-mapped file
+ *
+ * In contrast to CountableSkipDataFileReader, this implementation does not rely on avro's decoders or any
+ * intermediate buffers: the variable-length zig-zag longs of the header and the block headers are decoded directly
+ * from the MappedByteBuffer and no objects are allocated per block.
+ *
+ * The amount of bytes read reported by this implementation refers to the bytes which have been accessed in the
+ * mapped memory, i.e. the header, block headers and sync markers.
+ *
+ * Files larger than the mapping window (by default 1 GB) are mapped in consecutive windows, a window is remapped
+ * whenever a read crosses its boundaries.
+ *
+ * @see CountableSkipDataFileReader
+ */
+public class MappedSkipDataFileReader implements SeekableBlockReader {
+
+    static final long DEFAULT_WINDOW_SIZE = 1L << 30;
+
+    private final FileChannel channel;
+    private final long length;
+    private final long windowSize;
+
+    private MappedByteBuffer window;
+    private long windowStart = 0;
+    private long windowEnd = 0;
+
+    private final byte[] expectedSync = new byte[DataFileConstants.SYNC_SIZE];
+    private SyncMarkerSearch search;
+    private final Map<String, byte[]> meta = new HashMap<>();
+    private long bytesRead = 0L;
+
+    private long position;
+    private boolean availableBlock = false;
+    private long blockStart;
+    private long blockDataStart;
+    private long blockSize;
+    private long blockCount;
+
+    public MappedSkipDataFileReader(File file) throws IOException {
+        this(file, DEFAULT_WINDOW_SIZE);
+    }
+
+    MappedSkipDataFileReader(File file, long windowSize) throws IOException {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.windowSize = windowSize;
+        try {
+            this.length = channel.size();
+            initialize();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private void initialize() throws IOException {
+        if (length < DataFileConstants.MAGIC.length)
+            throw new IOException("Not a data file.");
+        for (int i = 0; i < DataFileConstants.MAGIC.length; i++) {
+            if (get(position++) != DataFileConstants.MAGIC[i])
+                throw new IOException("Not a data file.");
+        }
+
+        long l;
+        while ((l = readLong()) != 0) {
+            if (l < 0) {
+                l = -l;
+                readLong(); // byte size of the map block
+            }
+            for (long i = 0; i < l; i++) {
+                String key = new String(readBytes(), StandardCharsets.UTF_8);
+                meta.put(key, readBytes());
+            }
+        }
+
+        for (int i = 0; i < DataFileConstants.SYNC_SIZE; i++) {
+            expectedSync[i] = get(position++);
+        }
+        blockStart = position;
+        bytesRead = position;
+    }
+
+    @Override
+    public long getBlockCount() {
+        return blockCount;
+    }
+
+    @Override
+    public long getBlockSize() {
+        return blockSize;
+    }
+
+    @Override
+    public byte[] getSync() {
+        return expectedSync.clone();
+    }
+
+    @Override
+    public byte[] getMeta(String key) {
+        return meta.get(key);
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    @Override
+    public boolean hasNextBlock() {
+        try {
+            if (availableBlock) return true;
+            if (blockStart >= length) return false;
+            position = blockStart;
+            final long blockRemaining = readLong();
+            blockSize = readLong();
+            if (blockSize > Integer.MAX_VALUE ||
+                    blockSize < 0) {
+                throw new IOException("Block size invalid or too large for this " +
+                        "implementation: " + blockSize);
+            }
+            blockCount = blockRemaining;
+            blockDataStart = position;
+            bytesRead += blockDataStart - blockStart;
+            availableBlock = true;
+            return true;
+        } catch (EOFException eof) {
+            return false;
+        } catch (IOException e) {
+            throw new AvroRuntimeException(e);
+        }
+    }
+
+    /**
+     * Blocks within the current window are returned as a slice of the mapping without copying them, the mapping
+     * remains valid as long as the slice is referenced
+     */
+    @Override
+    public ByteBuffer readBlockData() throws IOException {
+        if (!hasNextBlock()) {
+            throw new NoSuchElementException();
+        }
+        final long blockDataEnd = blockDataStart + blockSize;
+        if (blockDataEnd > length) {
+            throw new EOFException();
+        }
+        bytesRead += blockSize;
+        if (blockSize > 0 && (blockDataStart < windowStart || blockDataEnd > windowEnd)) {
+            map(blockDataStart);
+        }
+        if (blockDataEnd <= windowEnd) {
+            ByteBuffer data = window.duplicate();
+            data.position((int) (blockDataStart - windowStart));
+            data.limit((int) (blockDataEnd - windowStart));
+            return data.slice();
+        }
+        // the block is larger than a window
+        ByteBuffer data = ByteBuffer.allocate((int) blockSize);
+        while (data.hasRemaining()) {
+            if (channel.read(data, blockDataStart + data.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        data.flip();
+        return data;
+    }
+
+    @Override
+    public void nextBlock() throws IOException {
+        if (!hasNextBlock()) {
+            throw new NoSuchElementException();
+        }
+        final long syncPosition = blockDataStart + blockSize;
+        if (syncPosition + DataFileConstants.SYNC_SIZE > length) {
+            throw new EOFException();
+        }
+        availableBlock = false;
+        bytesRead += DataFileConstants.SYNC_SIZE;
+        if (!isSyncAt(syncPosition))
+            throw new IOException("Invalid sync!");
+        blockStart = syncPosition + DataFileConstants.SYNC_SIZE;
+    }
+
+    @Override
+    public void seek(long position) throws IOException {
+        if (position < 0)
+            throw new IOException("Illegal seek: " + position);
+        availableBlock = false;
+        blockStart = position;
+    }
+
+    @Override
+    public void sync(long position) throws IOException {
+        seek(position);
+        long match = windowSize >= DataFileConstants.SYNC_SIZE ? searchSync(position) : scanSync(position);
+        if (match >= 0) {
+            blockStart = match + DataFileConstants.SYNC_SIZE;
+            bytesRead += blockStart - position;
+            return;
+        }
+        // if no match set start to the end position
+        blockStart = length;
+        bytesRead += length - position;
+    }
+
+    @Override
+    public boolean pastSync(long position) {
+        return blockStart >= position + DataFileConstants.SYNC_SIZE || blockStart >= length;
+    }
+
+    @Override
+    public long previousSync() {
+        return blockStart;
+    }
+
+    /**
+     * Searches the mapped windows, consecutive windows overlap so that markers spanning two windows are found
+     *
+     * @return the position of the first sync marker at or after the given position, or -1
+     */
+    private long searchSync(long position) throws IOException {
+        if (search == null) {
+            search = new SyncMarkerSearch(expectedSync);
+        }
+        long p = position;
+        while (p + DataFileConstants.SYNC_SIZE <= length) {
+            if (p < windowStart || p + DataFileConstants.SYNC_SIZE > windowEnd) {
+                map(p);
+            }
+            int index = search.indexOf(window, (int) (p - windowStart), (int) (windowEnd - windowStart));
+            if (index >= 0) {
+                return windowStart + index;
+            }
+            if (windowEnd >= length) {
+                break;
+            }
+            p = windowEnd - (DataFileConstants.SYNC_SIZE - 1);
+        }
+        return -1;
+    }
+
+    /**
+     * Compares the sync marker at every single position, for windows which cannot hold a complete marker
+     */
+    private long scanSync(long position) throws IOException {
+        for (long p = position; p + DataFileConstants.SYNC_SIZE <= length; p++) {
+            if (isSyncAt(p)) {
+                return p;
+            }
+        }
+        return -1;
+    }
+
+    private boolean isSyncAt(long p) throws IOException {
+        for (int i = 0; i < DataFileConstants.SYNC_SIZE; i++) {
+            if (get(p + i) != expectedSync[i])
+                return false;
+        }
+        return true;
+    }
+
+    private byte[] readBytes() throws IOException {
+        long len = readLong();
+        if (len < 0 || position + len > length)
+            throw new EOFException();
+        byte[] bytes = new byte[(int) len];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = get(position++);
+        }
+        return bytes;
+    }
+
+    private long readLong() throws IOException {
+        long n = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (position >= length) {
+                throw new EOFException();
+            }
+            int b = get(position++) & 0xff;
+            n |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return (n >>> 1) ^ -(n & 1);
+            }
+        }
+        throw new IOException("Invalid long encoding");
+    }
+
+    private byte get(long p) throws IOException {
+        if (p < windowStart || p >= windowEnd) {
+            map(p);
+        }
+        return window.get((int) (p - windowStart));
+    }
+
+    private void map(long p) throws IOException {
+        if (p >= length)
+            throw new EOFException();
+        windowStart = p;
+        windowEnd = Math.min(length, p + windowSize);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowEnd - windowStart);
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+}
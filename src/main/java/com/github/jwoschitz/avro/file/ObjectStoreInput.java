@@ -0,0 +1,176 @@
+package com.github.jwoschitz.avro.file;
+
+import org.apache.avro.file.SeekableInput;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+/**
+ * A SeekableInput over an object in an object store, which only fetches the byte ranges that are actually read
+ *
+ * The object is divided into aligned windows of a fixed size, every window is fetched with a single range request
+ * and kept until it has not been read for a while. Together with {@link CountableSkipDataFileReader}, which only
+ * reads the header and the sync marker of every block, the transfer of a file is a few windows per block instead
+ * of the whole object.
+ *
+ * Range requests are pipelined on the given executor, up to a configurable amount per input:
+ * <ul>
+ *     <li>a read spanning multiple windows, e.g. of the data of a block which is verified, requests all of them
+ *     concurrently</li>
+ *     <li>once the input is read sequentially, i.e. from the same or the following window as the previous read,
+ *     the windows after it are requested ahead, so files with blocks smaller than a window are walked without
+ *     waiting for a request per window</li>
+ * </ul>
+ * Reads jumping over windows, as when walking large blocks, do not request anything ahead.
+ *
+ * An instance is not thread-safe, like any SeekableInput.
+ */
+public class ObjectStoreInput implements SeekableInput {
+
+    /**
+     * Fetches byte ranges of an object, called concurrently from the threads of the executor
+     */
+    public interface RangeReader {
+
+        /**
+         * @return exactly the given amount of bytes starting at the given position, which are within the object
+         */
+        byte[] read(long position, int length) throws IOException;
+    }
+
+    private final RangeReader ranges;
+    private final long length;
+    private final int windowSize;
+    private final int requestsInFlight;
+    private final Executor executor;
+
+    // the windows requested so far, least recently read first
+    private final Map<Long, CompletableFuture<byte[]>> windows;
+    private long position = 0L;
+    private long previousWindow = -2L;
+
+    /**
+     * @param length the length of the object
+     * @param windowSize the amount of bytes fetched with a single range request
+     * @param requestsInFlight the maximum amount of range requests issued ahead of the window being read
+     */
+    public ObjectStoreInput(RangeReader ranges, long length, int windowSize, int requestsInFlight, Executor executor) {
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException("Window size must be positive: " + windowSize);
+        }
+        if (requestsInFlight <= 0) {
+            throw new IllegalArgumentException("Requests in flight must be positive: " + requestsInFlight);
+        }
+        this.ranges = ranges;
+        this.length = length;
+        this.windowSize = windowSize;
+        this.requestsInFlight = requestsInFlight;
+        this.executor = executor;
+        final int capacity = 2 * requestsInFlight + 2;
+        this.windows = new LinkedHashMap<Long, CompletableFuture<byte[]>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, CompletableFuture<byte[]>> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    @Override
+    public void seek(long p) throws IOException {
+        if (p < 0 || p > length) {
+            throw new EOFException(String.format("Cannot seek to %s, the object has %s bytes", p, length));
+        }
+        position = p;
+    }
+
+    @Override
+    public long tell() {
+        return position;
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (position >= length) {
+            return -1;
+        }
+        len = (int) Math.min(len, length - position);
+        final long first = position / windowSize;
+        final long last = (position + len - 1) / windowSize;
+        final long lastOfObject = (length - 1) / windowSize;
+        final boolean sequential = first == previousWindow || first == previousWindow + 1;
+        final long ahead = sequential ? Math.min(lastOfObject, last + requestsInFlight - 1) : last;
+
+        int n = 0;
+        for (long window = first; window <= last; window++) {
+            for (long next = window; next <= Math.min(ahead, window + requestsInFlight - 1); next++) {
+                request(next);
+            }
+            byte[] data = await(window);
+            int offset = (int) (position + n - window * windowSize);
+            int count = Math.min(len - n, data.length - offset);
+            System.arraycopy(data, offset, b, off + n, count);
+            n += count;
+        }
+        position += n;
+        previousWindow = last;
+        return n;
+    }
+
+    private CompletableFuture<byte[]> request(long window) {
+        CompletableFuture<byte[]> data = windows.get(window);
+        if (data == null) {
+            final long start = window * windowSize;
+            final int size = (int) Math.min(windowSize, length - start);
+            data = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return ranges.read(start, size);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, executor);
+            windows.put(window, data);
+        }
+        return data;
+    }
+
+    private byte[] await(long window) throws IOException {
+        try {
+            return request(window).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while fetching a range");
+        } catch (ExecutionException | CancellationException e) {
+            // a failed request is retried by the next read of its window
+            windows.remove(window);
+            Throwable cause = e.getCause() instanceof UncheckedIOException ? e.getCause().getCause() : e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Failed to fetch a range", cause != null ? cause : e);
+        }
+    }
+
+    /**
+     * Drops the fetched windows, requests which are still in flight are left to finish
+     */
+    @Override
+    public void close() {
+        windows.clear();
+    }
+}
@@ -0,0 +1,843 @@
+package com.github.jwoschitz.avro.file;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.io.Decoder;
+import org.apache.avro.util.Utf8;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A predicate over the top-level fields of records, e.g. {@code event_type = 'purchase' and amount >= 10}
+ *
+ * Comparisons ({@code = != < <= > >=}) of a field with a string, number, boolean or null literal can be combined
+ * with {@code and}, {@code or}, {@code not} and parentheses. Fields of type string, enum, int, long, float, double
+ * and boolean can be compared, as well as unions of one of them with null. Enums are ordered like their symbols
+ * are declared, as in the sort order of Avro. Numbers are compared exactly, except that a float field is compared
+ * with the float nearest to a decimal literal, so {@code ratio = 0.1} matches a float written as 0.1.
+ *
+ * Like in SQL, predicates use three-valued logic: a comparison of a field which is null, or missing from the writer
+ * schema of a file, with a literal is unknown, {@code not} keeps it unknown, and {@code and} and {@code or} only
+ * resolve it if the other side is false respectively true. A record matches if the predicate is true, so a null
+ * field matches neither {@code x = 'a'} nor {@code not (x = 'a')}. {@code = null} and {@code != null} test whether
+ * a field is null, like {@code IS NULL} and {@code IS NOT NULL} in SQL.
+ *
+ * A predicate is parsed once and compiled into a {@link Plan} per writer schema. The plan decodes only the fields
+ * the predicate refers to, all other fields are skipped without being materialized.
+ */
+public class RecordPredicate {
+
+    // truth values ordered such that and is their minimum and or their maximum
+    private static final int FALSE = 0;
+    private static final int UNKNOWN = 1;
+    private static final int TRUE = 2;
+
+    private enum Operator {
+        EQ, NE, LT, LE, GT, GE;
+
+        boolean test(int comparison) {
+            switch (this) {
+                case EQ:
+                    return comparison == 0;
+                case NE:
+                    return comparison != 0;
+                case LT:
+                    return comparison < 0;
+                case LE:
+                    return comparison <= 0;
+                case GT:
+                    return comparison > 0;
+                default:
+                    return comparison >= 0;
+            }
+        }
+    }
+
+    /**
+     * The decoded values of the referenced fields by their slot, reused for all records of a block
+     */
+    private static class Values {
+        final boolean[] nulls;
+        // ints, longs, enum indexes and booleans as 0 or 1
+        final long[] longs;
+        // floats and doubles
+        final double[] doubles;
+        final Utf8[] strings;
+
+        Values(int slots) {
+            // fields which are missing from the writer schema remain null
+            nulls = new boolean[slots];
+            Arrays.fill(nulls, true);
+            longs = new long[slots];
+            doubles = new double[slots];
+            strings = new Utf8[slots];
+        }
+    }
+
+    /**
+     * A node of the expression, evaluated against the decoded values of the referenced fields
+     */
+    private interface Expression {
+        /**
+         * @return the expression compiled for the types of the referenced fields by their slot
+         */
+        Expression bind(Schema[] types);
+
+        /**
+         * @return {@link #TRUE}, {@link #FALSE} or {@link #UNKNOWN}
+         */
+        int test(Values values);
+    }
+
+    /**
+     * A comparison as parsed, which is bound to one of the comparisons below depending on the type of the field
+     */
+    private static class Comparison implements Expression {
+        final String field;
+        final Operator operator;
+        final Object literal;
+        // the slot of the field within the decoded values, assigned while parsing
+        final int slot;
+
+        Comparison(String field, Operator operator, Object literal, int slot) {
+            this.field = field;
+            this.operator = operator;
+            this.literal = literal;
+            this.slot = slot;
+        }
+
+        @Override
+        public Expression bind(Schema[] types) {
+            Schema type = types[slot];
+            if (literal == null) {
+                return new NullComparison(slot, operator);
+            }
+            if (type == null || type.getType() == Schema.Type.NULL) {
+                return new Constant(UNKNOWN);
+            }
+            switch (type.getType()) {
+                case STRING:
+                    return new StringComparison(slot, operator, (Utf8) literal);
+                case ENUM:
+                    // the order of the symbols relative to the literal, so that records only compare indexes
+                    int index = type.getEnumSymbols().indexOf(literal.toString());
+                    if (index < 0 && operator != Operator.EQ && operator != Operator.NE) {
+                        throw new IllegalArgumentException(String.format("Cannot order field %s by %s, it is not a symbol of %s",
+                                field, format(literal), type.getFullName()));
+                    }
+                    int[] comparisons = new int[type.getEnumSymbols().size()];
+                    for (int i = 0; i < comparisons.length; i++) {
+                        comparisons[i] = index < 0 ? 1 : Integer.compare(i, index);
+                    }
+                    return new EnumComparison(slot, operator, comparisons);
+                case INT:
+                case LONG:
+                    if (literal instanceof Long) {
+                        return new LongComparison(slot, operator, (Long) literal);
+                    }
+                    return new LongDoubleComparison(slot, operator, (Double) literal);
+                case FLOAT:
+                    if (literal instanceof Long) {
+                        return new DoubleLongComparison(slot, operator, (Long) literal);
+                    }
+                    // the value was rounded to a float when it was written, so is the literal
+                    return new DoubleComparison(slot, operator, ((Double) literal).floatValue());
+                case DOUBLE:
+                    if (literal instanceof Long) {
+                        return new DoubleLongComparison(slot, operator, (Long) literal);
+                    }
+                    return new DoubleComparison(slot, operator, (Double) literal);
+                case BOOLEAN:
+                    return new LongComparison(slot, operator, (Boolean) literal ? 1L : 0L);
+                default:
+                    throw new IllegalStateException("Unexpected type " + type.getType());
+            }
+        }
+
+        @Override
+        public int test(Values values) {
+            throw new IllegalStateException("Comparison of " + field + " is not bound to a schema");
+        }
+    }
+
+    private static class Constant implements Expression {
+        final int value;
+
+        Constant(int value) {
+            this.value = value;
+        }
+
+        @Override
+        public Expression bind(Schema[] types) {
+            return this;
+        }
+
+        @Override
+        public int test(Values values) {
+            return value;
+        }
+    }
+
+    private static class NullComparison implements Expression {
+        final int slot;
+        final Operator operator;
+
+        NullComparison(int slot, Operator operator) {
+            this.slot = slot;
+            this.operator = operator;
+        }
+
+        @Override
+        public Expression bind(Schema[] types) {
+            return this;
+        }
+
+        @Override
+        public int test(Values values) {
+            return values.nulls[slot] == (operator == Operator.EQ) ? TRUE : FALSE;
+        }
+    }
+
+    /**
+     * A comparison of a field with a literal, which is unknown if the field is null
+     */
+    private static abstract class ValueComparison implements Expression {
+        final int slot;
+        final Operator operator;
+
+        ValueComparison(int slot, Operator operator) {
+            this.slot = slot;
+            this.operator = operator;
+        }
+
+        /**
+         * @return the field compared with the literal
+         */
+        abstract int compare(Values values);
+
+        @Override
+        public Expression bind(Schema[] types) {
+            return this;
+        }
+
+        @Override
+        public int test(Values values) {
+            if (values.nulls[slot]) {
+                return UNKNOWN;
+            }
+            return operator.test(compare(values)) ? TRUE : FALSE;
+        }
+    }
+
+    private static class LongComparison extends ValueComparison {
+        final long literal;
+
+        LongComparison(int slot, Operator operator, long literal) {
+            super(slot, operator);
+            this.literal = literal;
+        }
+
+        @Override
+        int compare(Values values) {
+            return Long.compare(values.longs[slot], literal);
+        }
+    }
+
+    private static class DoubleComparison extends ValueComparison {
+        final double literal;
+
+        DoubleComparison(int slot, Operator operator, double literal) {
+            super(slot, operator);
+            this.literal = literal;
+        }
+
+        @Override
+        int compare(Values values) {
+            return Double.compare(values.doubles[slot], literal);
+        }
+    }
+
+    private static class LongDoubleComparison extends ValueComparison {
+        final double literal;
+
+        LongDoubleComparison(int slot, Operator operator, double literal) {
+            super(slot, operator);
+            this.literal = literal;
+        }
+
+        @Override
+        int compare(Values values) {
+            return compareExactly(values.longs[slot], literal);
+        }
+    }
+
+    private static class DoubleLongComparison extends ValueComparison {
+        final long literal;
+
+        DoubleLongComparison(int slot, Operator operator, long literal) {
+            super(slot, operator);
+            this.literal = literal;
+        }
+
+        @Override
+        int compare(Values values) {
+            return -compareExactly(literal, values.doubles[slot]);
+        }
+    }
+
+    /**
+     * Compares without converting the long to a double, which would round longs beyond 2^53
+     *
+     * @return the comparison of both values, with NaN being greater than any long like in {@link Double#compare}
+     */
+    private static int compareExactly(long value, double other) {
+        if (Double.isNaN(other) || other >= 0x1p63) {
+            return -1;
+        }
+        if (other < -0x1p63) {
+            return 1;
+        }
+        // within the range of longs, so the floor is exact
+        double floor = Math.floor(other);
+        int comparison = Long.compare(value, (long) floor);
+        return comparison != 0 || floor == other ? comparison : -1;
+    }
+
+    private static class EnumComparison extends ValueComparison {
+        // the comparison of each symbol with the literal by its index
+        final int[] comparisons;
+
+        EnumComparison(int slot, Operator operator, int[] comparisons) {
+            super(slot, operator);
+            this.comparisons = comparisons;
+        }
+
+        @Override
+        int compare(Values values) {
+            return comparisons[(int) values.longs[slot]];
+        }
+    }
+
+    private static class StringComparison extends ValueComparison {
+        final Utf8 literal;
+
+        StringComparison(int slot, Operator operator, Utf8 literal) {
+            super(slot, operator);
+            this.literal = literal;
+        }
+
+        @Override
+        int compare(Values values) {
+            return values.strings[slot].compareTo(literal);
+        }
+    }
+
+    private static class And implements Expression {
+        final Expression left;
+        final Expression right;
+
+        And(Expression left, Expression right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public Expression bind(Schema[] types) {
+            return new And(left.bind(types), right.bind(types));
+        }
+
+        @Override
+        public int test(Values values) {
+            int left = this.left.test(values);
+            return left == FALSE ? FALSE : Math.min(left, right.test(values));
+        }
+    }
+
+    private static class Or implements Expression {
+        final Expression left;
+        final Expression right;
+
+        Or(Expression left, Expression right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public Expression bind(Schema[] types) {
+            return new Or(left.bind(types), right.bind(types));
+        }
+
+        @Override
+        public int test(Values values) {
+            int left = this.left.test(values);
+            return left == TRUE ? TRUE : Math.max(left, right.test(values));
+        }
+    }
+
+    private static class Not implements Expression {
+        final Expression expression;
+
+        Not(Expression expression) {
+            this.expression = expression;
+        }
+
+        @Override
+        public Expression bind(Schema[] types) {
+            return new Not(expression.bind(types));
+        }
+
+        @Override
+        public int test(Values values) {
+            return TRUE - expression.test(values);
+        }
+    }
+
+    private final String source;
+    private final Expression expression;
+    // the referenced fields by their slot, together with the literals they are compared with
+    private final Map<String, Integer> slots;
+    private final List<Comparison> comparisons;
+
+    private RecordPredicate(String source, Expression expression, Map<String, Integer> slots, List<Comparison> comparisons) {
+        this.source = source;
+        this.expression = expression;
+        this.slots = slots;
+        this.comparisons = comparisons;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the expression is not a valid predicate
+     */
+    public static RecordPredicate parse(String expression) {
+        Parser parser = new Parser(expression);
+        Expression parsed = parser.parseOr();
+        if (parser.peek() != null) {
+            throw parser.error("Unexpected " + parser.peek());
+        }
+        return new RecordPredicate(expression, parsed, parser.slots, parser.comparisons);
+    }
+
+    /**
+     * Compiles the predicate into a plan which decodes records written with the given schema
+     *
+     * @throws IllegalArgumentException if the schema is not a record, or a referenced field cannot be compared with
+     * its literal
+     */
+    public Plan plan(Schema writerSchema) {
+        if (writerSchema.getType() != Schema.Type.RECORD) {
+            throw new IllegalArgumentException("Predicates require a record schema, not " + writerSchema.getType());
+        }
+        Schema[] types = new Schema[slots.size()];
+        for (Map.Entry<String, Integer> slot : slots.entrySet()) {
+            Schema.Field field = writerSchema.getField(slot.getKey());
+            if (field != null) {
+                types[slot.getValue()] = comparableType(field);
+            }
+        }
+        for (Comparison comparison : comparisons) {
+            Schema type = types[comparison.slot];
+            if (type != null && comparison.literal != null && !isComparable(type, comparison.literal)) {
+                throw new IllegalArgumentException(String.format("Cannot compare field %s of type %s with %s",
+                        comparison.field, type.getType().getName(), format(comparison.literal)));
+            }
+        }
+
+        List<Schema.Field> fields = writerSchema.getFields();
+        Step[] steps = new Step[fields.size()];
+        for (int i = 0; i < steps.length; i++) {
+            Schema.Field field = fields.get(i);
+            Integer slot = slots.get(field.name());
+            steps[i] = new Step(field.schema(), slot != null ? slot : -1);
+        }
+        return new Plan(expression.bind(types), steps, slots.size());
+    }
+
+    /**
+     * @return the type of the field without a null branch of a union
+     */
+    private static Schema comparableType(Schema.Field field) {
+        Schema schema = field.schema();
+        if (schema.getType() == Schema.Type.UNION) {
+            Schema nonNull = null;
+            for (Schema branch : schema.getTypes()) {
+                if (branch.getType() != Schema.Type.NULL) {
+                    if (nonNull != null) {
+                        throw new IllegalArgumentException(String.format("Cannot compare field %s, it is a union of multiple types", field.name()));
+                    }
+                    nonNull = branch;
+                }
+            }
+            schema = nonNull != null ? nonNull : schema.getTypes().get(0);
+        }
+        switch (schema.getType()) {
+            case STRING:
+            case ENUM:
+            case INT:
+            case LONG:
+            case FLOAT:
+            case DOUBLE:
+            case BOOLEAN:
+            case NULL:
+                return schema;
+            default:
+                throw new IllegalArgumentException(String.format("Cannot compare field %s of type %s", field.name(), schema.getType().getName()));
+        }
+    }
+
+    private static boolean isComparable(Schema type, Object literal) {
+        switch (type.getType()) {
+            case STRING:
+            case ENUM:
+                return literal instanceof Utf8;
+            case INT:
+            case LONG:
+            case FLOAT:
+            case DOUBLE:
+                return literal instanceof Number;
+            case BOOLEAN:
+                return literal instanceof Boolean;
+            default:
+                return false;
+        }
+    }
+
+    private static String format(Object literal) {
+        return literal instanceof Utf8 ? String.format("'%s'", literal) : String.valueOf(literal);
+    }
+
+    @Override
+    public String toString() {
+        return source;
+    }
+
+    /**
+     * Decodes a single top-level field of a record, or skips it if the predicate does not refer to it
+     */
+    private static class Step {
+        final Schema schema;
+        final int slot;
+
+        Step(Schema schema, int slot) {
+            this.schema = schema;
+            this.slot = slot;
+        }
+
+        void read(Decoder in, Values values) throws IOException {
+            if (slot < 0) {
+                GenericDatumReader.skip(schema, in);
+                return;
+            }
+            Schema type = schema.getType() == Schema.Type.UNION ? schema.getTypes().get(in.readIndex()) : schema;
+            values.nulls[slot] = type.getType() == Schema.Type.NULL;
+            switch (type.getType()) {
+                case NULL:
+                    in.readNull();
+                    break;
+                case STRING:
+                    values.strings[slot] = in.readString(values.strings[slot]);
+                    break;
+                case ENUM:
+                    values.longs[slot] = in.readEnum();
+                    break;
+                case INT:
+                    values.longs[slot] = in.readInt();
+                    break;
+                case LONG:
+                    values.longs[slot] = in.readLong();
+                    break;
+                case FLOAT:
+                    values.doubles[slot] = in.readFloat();
+                    break;
+                case DOUBLE:
+                    values.doubles[slot] = in.readDouble();
+                    break;
+                case BOOLEAN:
+                    values.longs[slot] = in.readBoolean() ? 1L : 0L;
+                    break;
+                default:
+                    throw new IllegalStateException("Unexpected type " + type.getType());
+            }
+        }
+    }
+
+    /**
+     * The predicate compiled for a writer schema, which can be shared by multiple threads
+     */
+    public static class Plan {
+        private final Expression expression;
+        private final Step[] steps;
+        private final int slots;
+
+        private Plan(Expression expression, Step[] steps, int slots) {
+            this.expression = expression;
+            this.steps = steps;
+            this.slots = slots;
+        }
+
+        /**
+         * Decodes the given amount of records
+         *
+         * @return the amount of records which match the predicate
+         */
+        public long count(Decoder in, long records) throws IOException {
+            Values values = new Values(slots);
+            long matching = 0L;
+            for (long i = 0; i < records; i++) {
+                for (Step step : steps) {
+                    step.read(in, values);
+                }
+                if (expression.test(values) == TRUE) {
+                    matching++;
+                }
+            }
+            return matching;
+        }
+    }
+
+    /**
+     * Recursive descent parser, keywords are case-insensitive
+     */
+    private static class Parser {
+        private final String input;
+        private final List<Object> tokens = new ArrayList<>();
+        private final List<Integer> positions = new ArrayList<>();
+        private int next = 0;
+
+        final Map<String, Integer> slots = new LinkedHashMap<>();
+        final List<Comparison> comparisons = new ArrayList<>();
+
+        // a quoted string literal, to distinguish it from identifiers and symbols
+        private static class StringToken {
+            final String value;
+
+            StringToken(String value) {
+                this.value = value;
+            }
+
+            @Override
+            public String toString() {
+                return String.format("'%s'", value);
+            }
+        }
+
+        Parser(String input) {
+            this.input = input;
+            tokenize();
+        }
+
+        IllegalArgumentException error(String message) {
+            int position = next < positions.size() ? positions.get(next) : input.length();
+            return new IllegalArgumentException(String.format("%s at position %s of: %s", message, position, input));
+        }
+
+        Object peek() {
+            return next < tokens.size() ? tokens.get(next) : null;
+        }
+
+        private boolean accept(String keyword) {
+            Object token = peek();
+            if (token instanceof String && ((String) token).equalsIgnoreCase(keyword)) {
+                next++;
+                return true;
+            }
+            return false;
+        }
+
+        Expression parseOr() {
+            Expression expression = parseAnd();
+            while (accept("or")) {
+                expression = new Or(expression, parseAnd());
+            }
+            return expression;
+        }
+
+        private Expression parseAnd() {
+            Expression expression = parseUnary();
+            while (accept("and")) {
+                expression = new And(expression, parseUnary());
+            }
+            return expression;
+        }
+
+        private Expression parseUnary() {
+            if (accept("not")) {
+                return new Not(parseUnary());
+            }
+            if (accept("(")) {
+                Expression expression = parseOr();
+                if (!accept(")")) {
+                    throw error("Expected )");
+                }
+                return expression;
+            }
+            return parseComparison();
+        }
+
+        private Expression parseComparison() {
+            Object field = peek();
+            if (!(field instanceof String) || !isIdentifier((String) field) || isKeyword((String) field)) {
+                throw error(field == null ? "Expected a field" : "Expected a field instead of " + field);
+            }
+            next++;
+            Operator operator = parseOperator();
+            Object literal = parseLiteral();
+            if (literal == null && operator != Operator.EQ && operator != Operator.NE) {
+                next--;
+                throw error("Only = and != can be applied to null");
+            }
+
+            String name = (String) field;
+            Integer slot = slots.computeIfAbsent(name, n -> slots.size());
+            Comparison comparison = new Comparison(name, operator, literal, slot);
+            comparisons.add(comparison);
+            return comparison;
+        }
+
+        private Operator parseOperator() {
+            Object token = peek();
+            next++;
+            if ("=".equals(token) || "==".equals(token)) {
+                return Operator.EQ;
+            } else if ("!=".equals(token) || "<>".equals(token)) {
+                return Operator.NE;
+            } else if ("<".equals(token)) {
+                return Operator.LT;
+            } else if ("<=".equals(token)) {
+                return Operator.LE;
+            } else if (">".equals(token)) {
+                return Operator.GT;
+            } else if (">=".equals(token)) {
+                return Operator.GE;
+            }
+            next--;
+            throw error(token == null ? "Expected an operator" : "Expected an operator instead of " + token);
+        }
+
+        private Object parseLiteral() {
+            Object token = peek();
+            next++;
+            if (token instanceof StringToken) {
+                return new Utf8(((StringToken) token).value);
+            }
+            if (token instanceof Number) {
+                return token;
+            }
+            if (token instanceof String) {
+                switch (((String) token).toLowerCase(Locale.ROOT)) {
+                    case "true":
+                        return Boolean.TRUE;
+                    case "false":
+                        return Boolean.FALSE;
+                    case "null":
+                        return null;
+                }
+            }
+            next--;
+            throw error(token == null ? "Expected a value" : "Expected a value instead of " + token);
+        }
+
+        private static boolean isIdentifier(String token) {
+            return Character.isLetter(token.charAt(0)) || token.charAt(0) == '_';
+        }
+
+        private static boolean isKeyword(String token) {
+            switch (token.toLowerCase(Locale.ROOT)) {
+                case "and":
+                case "or":
+                case "not":
+                case "true":
+                case "false":
+                case "null":
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        private void tokenize() {
+            int i = 0;
+            while (i < input.length()) {
+                char c = input.charAt(i);
+                int start = i;
+                if (Character.isWhitespace(c)) {
+                    i++;
+                    continue;
+                }
+                if (c == '\'') {
+                    StringBuilder value = new StringBuilder();
+                    i++;
+                    while (true) {
+                        if (i >= input.length()) {
+                            next = tokens.size();
+                            positions.add(start);
+                            throw error("Unterminated string");
+                        }
+                        if (input.charAt(i) == '\'') {
+                            // a quote within a string is escaped by doubling it
+                            if (i + 1 < input.length() && input.charAt(i + 1) == '\'') {
+                                value.append('\'');
+                                i += 2;
+                                continue;
+                            }
+                            i++;
+                            break;
+                        }
+                        value.append(input.charAt(i++));
+                    }
+                    add(new StringToken(value.toString()), start);
+                } else if (Character.isLetter(c) || c == '_') {
+                    while (i < input.length() && (Character.isLetterOrDigit(input.charAt(i)) || input.charAt(i) == '_')) {
+                        i++;
+                    }
+                    add(input.substring(start, i), start);
+                } else if (Character.isDigit(c) || (c == '-' || c == '.') && i + 1 < input.length() && Character.isDigit(input.charAt(i + 1))) {
+                    i++;
+                    boolean decimal = c == '.';
+                    while (i < input.length() && (Character.isDigit(input.charAt(i)) || ".eE".indexOf(input.charAt(i)) >= 0
+                            || (input.charAt(i) == '-' || input.charAt(i) == '+') && "eE".indexOf(input.charAt(i - 1)) >= 0)) {
+                        decimal |= ".eE".indexOf(input.charAt(i)) >= 0;
+                        i++;
+                    }
+                    String number = input.substring(start, i);
+                    try {
+                        add(decimal ? (Object) Double.parseDouble(number) : (Object) Long.parseLong(number), start);
+                    } catch (NumberFormatException e) {
+                        next = tokens.size();
+                        positions.add(start);
+                        throw error("Invalid number " + number);
+                    }
+                } else if ("=!<>".indexOf(c) >= 0) {
+                    i++;
+                    if (i < input.length() && (input.charAt(i) == '=' || c == '<' && input.charAt(i) == '>')) {
+                        i++;
+                    }
+                    String operator = input.substring(start, i);
+                    if (operator.equals("!")) {
+                        next = tokens.size();
+                        positions.add(start);
+                        throw error("Unexpected !");
+                    }
+                    add(operator, start);
+                } else if (c == '(' || c == ')') {
+                    i++;
+                    add(String.valueOf(c), start);
+                } else {
+                    next = tokens.size();
+                    positions.add(start);
+                    throw error("Unexpected " + c);
+                }
+            }
+        }
+
+        private void add(Object token, int position) {
+            tokens.add(token);
+            positions.add(position);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.github.jwoschitz.avro.file;
+
+import java.io.IOException;
+
+/**
+ * A CountableBlockReader which can be positioned at arbitrary offsets of the underlying file
+ *
+ * @see CountableSkipDataFileReader
+ */
+public interface SeekableBlockReader extends CountableBlockReader {
+
+    /**
+     * Move to a specific, known synchronization point, e.g. one returned by {@link #previousSync()}
+     */
+    void seek(long position) throws IOException;
+
+    /**
+     * Move to the next synchronization point after a position.
+     */
+    void sync(long position) throws IOException;
+
+    /**
+     * Return true if past the next synchronization point after a position.
+     */
+    boolean pastSync(long position) throws IOException;
+
+    /**
+     * Return the last synchronization point before our current position.
+     */
+    long previousSync();
+}
@@ -0,0 +1,60 @@
+package com.github.jwoschitz.avro.file;
+
+import org.apache.avro.file.DataFileConstants;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Boyer-Moore-Horspool search for the sync marker of a file
+ *
+ * Sync markers are random, so a mismatch is usually detected at the last byte of the current window and the search
+ * advances by up to the full length of the marker, instead of comparing the marker at every single position.
+ */
+final class SyncMarkerSearch {
+    private static final int LENGTH = DataFileConstants.SYNC_SIZE;
+
+    private final byte[] sync;
+    private final int[] shift = new int[256];
+
+    SyncMarkerSearch(byte[] sync) {
+        this.sync = sync;
+        for (int i = 0; i < shift.length; i++) {
+            shift[i] = LENGTH;
+        }
+        for (int i = 0; i < LENGTH - 1; i++) {
+            shift[sync[i] & 0xff] = LENGTH - 1 - i;
+        }
+    }
+
+    /**
+     * @return the offset of the first sync marker which is completely contained in buffer[from, to), or -1
+     */
+    int indexOf(byte[] buffer, int from, int to) {
+        int i = from;
+        while (i + LENGTH <= to) {
+            int j = LENGTH - 1;
+            while (buffer[i + j] == sync[j]) {
+                if (j == 0) return i;
+                j--;
+            }
+            i += shift[buffer[i + LENGTH - 1] & 0xff];
+        }
+        return -1;
+    }
+
+    /**
+     * @return the index of the first sync marker which is completely contained in buffer[from, to), or -1
+     */
+    int indexOf(ByteBuffer buffer, int from, int to) {
+        int i = from;
+        while (i + LENGTH <= to) {
+            int j = LENGTH - 1;
+            while (buffer.get(i + j) == sync[j]) {
+                if (j == 0) return i;
+                j--;
+            }
+            i += shift[buffer.get(i + LENGTH - 1) & 0xff];
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,127 @@
+package com.github.jwoschitz.avro.tool;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Thin client which forwards its arguments to a running {@link AvroCountServer}
+ *
+ * The client accepts the same arguments as AvroCountTool and prints the output of the server as if the tool had
+ * been run locally. It only depends on the JDK, so it starts without loading Avro, Hadoop or any logging framework.
+ * It authenticates with the token which the server wrote to a file readable only by the user running the server.
+ *
+ * <pre>
+ * java -cp avrocount.jar com.github.jwoschitz.avro.tool.AvroCountClient /path/to/folder
+ * </pre>
+ */
+public class AvroCountClient {
+
+    static int run(int port, File tokenFile, File workingDirectory, InputStream stdin, PrintStream out, PrintStream err,
+                   List<String> args) throws IOException {
+        Socket socket;
+        try {
+            socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        } catch (ConnectException e) {
+            err.println(String.format("No server listening on port %s, start one via: java -jar avrocount.jar --server", port));
+            return 1;
+        }
+
+        try (Socket s = socket) {
+            String token;
+            try {
+                token = new String(Files.readAllBytes(tokenFile.toPath()), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                err.println(String.format("Unable to read the token of the server from %s, it is only readable by the user running the server", tokenFile));
+                return 1;
+            }
+
+            DataOutputStream request = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+            request.writeInt(AvroCountServer.PROTOCOL_VERSION);
+            request.writeUTF(token);
+            request.writeUTF(workingDirectory.getAbsolutePath());
+            request.writeInt(args.size());
+            for (String arg : args) {
+                request.writeUTF(arg);
+            }
+            request.flush();
+
+            Thread stdinForwarder = null;
+            if (args.contains("-")) {
+                // forward stdin concurrently, the server might already answer while stdin is still being read
+                stdinForwarder = new Thread(() -> {
+                    try {
+                        copy(stdin, request);
+                        s.shutdownOutput();
+                    } catch (IOException e) {
+                        err.println(String.format("Unable to forward stdin: %s", e.getMessage()));
+                    }
+                }, "avrocount-stdin");
+                stdinForwarder.setDaemon(true);
+                stdinForwarder.start();
+            } else {
+                s.shutdownOutput();
+            }
+
+            DataInputStream response = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+            byte[] buffer = new byte[8192];
+            while (true) {
+                byte type = response.readByte();
+                if (type == AvroCountServer.FRAME_EXIT) {
+                    out.flush();
+                    err.flush();
+                    return response.readInt();
+                }
+                int length = response.readInt();
+                if (length > buffer.length) {
+                    buffer = new byte[length];
+                }
+                response.readFully(buffer, 0, length);
+                (type == AvroCountServer.FRAME_STDOUT ? out : err).write(buffer, 0, length);
+            }
+        }
+    }
+
+    /**
+     * @return the port given via $AVROCOUNT_PORT or the default port, shared by client and server
+     */
+    static int defaultPort() {
+        String port = System.getenv(AvroCountServer.PORT_ENV);
+        return port != null ? Integer.parseInt(port) : AvroCountServer.DEFAULT_PORT;
+    }
+
+    /**
+     * @return the file in the home directory of the user to which the server listening on the given port writes its token
+     */
+    static File tokenFile(int port) {
+        return new File(System.getProperty("user.home"), String.format(".avrocount-%s.token", port));
+    }
+
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[65536];
+        int n;
+        while ((n = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, n);
+        }
+        out.flush();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = defaultPort();
+        int rc = run(port, tokenFile(port), new File(System.getProperty("user.dir")), System.in, System.out, System.err, Arrays.asList(args));
+        System.exit(rc);
+    }
+}
@@ -0,0 +1,277 @@
+package com.github.jwoschitz.avro.tool;
+
+import com.github.jwoschitz.avro.count.AvroCounter;
+import joptsimple.OptionException;
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import org.apache.hadoop.conf.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Long-running server which answers count requests of {@link AvroCountClient} over a loopback socket
+ *
+ * Every request is executed by an AvroCountTool which shares the counting pool and the Hadoop configuration with
+ * all other requests, and the counter with requests of the same configuration, so FileSystem instances, threads,
+ * caches and JIT-compiled code stay warm across invocations. At most 32 requests are answered at a time, further
+ * clients wait for them to finish.
+ *
+ * The protocol is a minimal binary framing on top of TCP. The client sends a token, its working directory and
+ * arguments, followed by the content of its stdin if a dash is given as an input file. The server replies with
+ * frames of stdout and stderr output, terminated by a frame holding the return code.
+ *
+ * The server only binds to the loopback interface. At startup it writes a random token to a file which only its
+ * user can read (~/.avrocount-PORT.token by default), and only answers clients which send that token, so other local
+ * users cannot count or filter files with the privileges of the server. Options which would write files
+ * (--cache, --metricsFile, --saveSketches, index) or keep a connection forever (--watch) are rejected nevertheless.
+ */
+public class AvroCountServer implements Closeable {
+    private final static Logger LOGGER = LoggerFactory.getLogger(AvroCountServer.class);
+
+    static final int DEFAULT_PORT = 7077;
+    static final String PORT_ENV = "AVROCOUNT_PORT";
+
+    static final int PROTOCOL_VERSION = 2;
+    static final byte FRAME_STDOUT = 1;
+    static final byte FRAME_STDERR = 2;
+    static final byte FRAME_EXIT = 3;
+
+    private final static int MAX_CONNECTIONS = 32;
+    private final static int MAX_PENDING_CONNECTIONS = 256;
+    private final static int MAX_IDLE_COUNTERS = 8;
+
+    private final ServerSocket serverSocket;
+    private final File tokenFile;
+    private final String token;
+    private final ExecutorService executor;
+    private final Configuration conf;
+    private final SharedCounters counters = new SharedCounters(MAX_IDLE_COUNTERS);
+    private final ThreadPoolExecutor connections = new ThreadPoolExecutor(MAX_CONNECTIONS, MAX_CONNECTIONS,
+            60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(MAX_PENDING_CONNECTIONS), runnable -> {
+        Thread thread = new Thread(runnable, "avrocount-connection");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param tokenFile file to which the token is written, which clients have to send with every request
+     */
+    AvroCountServer(int port, int maxParallelism, File tokenFile) throws IOException {
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        this.tokenFile = tokenFile;
+        this.token = writeToken(tokenFile);
+        this.executor = AvroCounter.newExecutor(maxParallelism);
+        this.conf = new Configuration();
+        connections.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Writes a new random token to the given file, which is readable by the owner only
+     */
+    private static String writeToken(File tokenFile) throws IOException {
+        byte[] random = new byte[32];
+        new SecureRandom().nextBytes(random);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(random);
+
+        // temporary files are created with owner-only permissions, the token is never readable by others
+        Path target = tokenFile.getAbsoluteFile().toPath();
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temp, token.getBytes(StandardCharsets.UTF_8));
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return token;
+    }
+
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Accepts connections until the server is closed
+     */
+    void serve() throws IOException {
+        LOGGER.info("Listening on {}", serverSocket.getLocalSocketAddress());
+        while (!serverSocket.isClosed()) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (SocketException e) {
+                if (serverSocket.isClosed()) {
+                    return;
+                }
+                throw e;
+            }
+            try {
+                connections.execute(() -> handle(socket));
+            } catch (RejectedExecutionException e) {
+                LOGGER.warn("Rejected a client, {} clients are already waiting", MAX_PENDING_CONNECTIONS);
+                socket.close();
+            }
+        }
+    }
+
+    private void handle(Socket socket) {
+        try (Socket s = socket) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+            DataOutputStream frames = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+
+            int version = in.readInt();
+            if (version != PROTOCOL_VERSION) {
+                throw new IOException(String.format("Unsupported protocol version %s", version));
+            }
+            boolean authenticated = MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8),
+                    in.readUTF().getBytes(StandardCharsets.UTF_8));
+            File workingDirectory = new File(in.readUTF());
+            int argc = in.readInt();
+            List<String> args = new ArrayList<>(argc);
+            for (int i = 0; i < argc; i++) {
+                args.add(in.readUTF());
+            }
+            LOGGER.debug("Counting {} for {}", args, workingDirectory);
+
+            PrintStream out = new PrintStream(new FrameOutputStream(frames, FRAME_STDOUT), false, StandardCharsets.UTF_8.name());
+            PrintStream err = new PrintStream(new FrameOutputStream(frames, FRAME_STDERR), false, StandardCharsets.UTF_8.name());
+            int rc;
+            if (authenticated) {
+                rc = count(in, out, err, workingDirectory, args);
+            } else {
+                LOGGER.warn("Rejected a client with an invalid token");
+                err.println(String.format("Invalid token, the client has to run as the user of the server to read %s", tokenFile));
+                rc = 1;
+            }
+            out.flush();
+            err.flush();
+
+            synchronized (frames) {
+                frames.writeByte(FRAME_EXIT);
+                frames.writeInt(rc);
+                frames.flush();
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Error occurred while handling a client", e);
+        }
+    }
+
+    private int count(InputStream in, PrintStream out, PrintStream err, File workingDirectory, List<String> args) {
+        try {
+            // the tool closes stdin after counting it, which must not close the socket
+            InputStream stdin = new FilterInputStream(in) {
+                @Override
+                public void close() {
+                }
+            };
+            return new AvroCountTool(executor, conf, counters, workingDirectory).run(stdin, out, err, args);
+        } catch (Exception e) {
+            LOGGER.debug("Count failed", e);
+            err.println(e.getMessage());
+            return 1;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        connections.shutdownNow();
+        counters.close();
+        executor.shutdown();
+        Files.deleteIfExists(tokenFile.toPath());
+    }
+
+    /**
+     * Writes every chunk of output as a frame of the given type
+     */
+    private static class FrameOutputStream extends OutputStream {
+        private final DataOutputStream frames;
+        private final byte type;
+
+        FrameOutputStream(DataOutputStream frames, byte type) {
+            this.frames = frames;
+            this.type = type;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            synchronized (frames) {
+                frames.writeByte(type);
+                frames.writeInt(len);
+                frames.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            synchronized (frames) {
+                frames.flush();
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        OptionParser optionParser = new OptionParser() {{
+            accepts("port", "Loopback port to listen on, defaults to $" + PORT_ENV + " or " + DEFAULT_PORT)
+                    .withRequiredArg()
+                    .ofType(Integer.class);
+            accepts("maxParallelism", "Maximum amount of parallelism shared by all requests, defaults to four threads per core (at most 64)")
+                    .withRequiredArg()
+                    .defaultsTo("-1")
+                    .ofType(Integer.class);
+        }};
+
+        int port;
+        int maxParallelism;
+        try {
+            OptionSet optionSet = optionParser.parse(args);
+            port = optionSet.has("port") ? Integer.parseInt(optionSet.valueOf("port").toString()) : AvroCountClient.defaultPort();
+            maxParallelism = Integer.parseInt(optionSet.valueOf("maxParallelism").toString());
+        } catch (OptionException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Runs a server which answers count requests of local clients");
+            System.err.println();
+            optionParser.printHelpOn(System.err);
+            System.exit(1);
+            return;
+        }
+
+        try (AvroCountServer server = new AvroCountServer(port, maxParallelism, AvroCountClient.tokenFile(port))) {
+            server.serve();
+        }
+    }
+}
@@ -1,28 +1,30 @@
 package com.github.jwoschitz.avro.tool;
 
-import com.github.jwoschitz.avro.file.CountableSkipDataFileStream;
+import com.github.jwoschitz.avro.count.AvroCounter;
+import com.github.jwoschitz.avro.count.CountProgress;
+import com.github.jwoschitz.avro.count.CountResult;
+import com.github.jwoschitz.avro.count.CountWatcher;
+import com.github.jwoschitz.avro.file.DistinctField;
+import com.github.jwoschitz.avro.file.RecordPredicate;
 import joptsimple.OptionException;
 import joptsimple.OptionParser;
 import joptsimple.OptionSet;
 import org.apache.avro.tool.Tool;
 import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.fs.FileStatus;
-import org.apache.hadoop.fs.FileSystem;
-import org.apache.hadoop.fs.Path;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintStream;
+import java.io.UncheckedIOException;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
 import static java.util.Arrays.asList;
 
@@ -32,50 +34,36 @@ public class AvroCountTool implements Tool {
     private final static String SHORT_OPT_VERBOSE = "v";
     private final static String LONG_OPT_VERBOSE = "verbose";
 
-    private static class BufferedAvroInputStream extends BufferedInputStream {
-        private final String path;
+    private final ExecutorService executor;
+    private final Configuration conf;
+    private final SharedCounters counters;
+    private final File workingDirectory;
+    // whether the run serves a client of a server, see Options#checkRemote
+    private final boolean remote;
 
-        BufferedAvroInputStream(InputStream in, String path) {
-            super(in);
-            this.path = path;
-        }
-
-        String getPath() {
-            return path;
-        }
+    public AvroCountTool() {
+        this(null, null, null, null, false);
     }
 
-    private static List<BufferedAvroInputStream> fileOrStdin(String path, final InputStream stdin) throws IOException {
-        List<BufferedAvroInputStream> streams = new LinkedList<>();
-        if (path.equals("-")) {
-            LOGGER.debug("Using STDIN for input");
-            streams.add(new BufferedAvroInputStream(stdin, path));
-            return streams;
-        }
-
-        for(BufferedAvroInputStream handle : openFromFS(path)) {
-            streams.add(handle);
-        }
-
-        return streams;
+    /**
+     * Creates a tool which serves a request of a client within a server, reusing the given executor, configuration
+     * and counters across runs. Options which write files or never finish are rejected.
+     *
+     * @param executor shared pool on which files are counted, --maxParallelism is ignored
+     * @param counters counters shared with other requests, only runs which report their progress build their own
+     * @param workingDirectory directory of the client against which relative local paths are resolved
+     */
+    AvroCountTool(ExecutorService executor, Configuration conf, SharedCounters counters, File workingDirectory) {
+        this(executor, conf, counters, workingDirectory, true);
     }
 
-    private static List<BufferedAvroInputStream> openFromFS(String path) throws IOException {
-        List<BufferedAvroInputStream> streams = new LinkedList<>();
-        Path p = new Path(path);
-        FileSystem fs = p.getFileSystem(new Configuration());
-
-        for (FileStatus status : fs.listStatus(p, filePath -> {
-            boolean hasAvroSuffix = filePath.toString().endsWith(".avro");
-            if (!hasAvroSuffix) {
-                LOGGER.error("Ignoring file {}, does not have .avro suffix", filePath.toString());
-            }
-            return hasAvroSuffix;
-        })) {
-            streams.add(new BufferedAvroInputStream(fs.open(status.getPath()), status.getPath().toString()));
-        }
-
-        return streams;
+    private AvroCountTool(ExecutorService executor, Configuration conf, SharedCounters counters, File workingDirectory,
+                          boolean remote) {
+        this.executor = executor;
+        this.conf = conf;
+        this.counters = counters;
+        this.workingDirectory = workingDirectory;
+        this.remote = remote;
     }
 
     @Override
@@ -88,89 +76,486 @@ public class AvroCountTool implements Tool {
         return "Counts the records in an Avro data file";
     }
 
-    @Override
-    public int run(InputStream stdin, PrintStream out, PrintStream err, List<String> args) throws Exception {
-        OptionParser optionParser = new OptionParser() {{
-            acceptsAll(asList(SHORT_OPT_VERBOSE, LONG_OPT_VERBOSE), "Enable verbose mode");
-            accepts("maxParallelism", "Maximum amount of parallelism")
-                    .withRequiredArg()
-                    .defaultsTo("-1")
-                    .ofType(Integer.class);
-            nonOptions("Path to an avro file or directory containing avro files, a dash ('-') can be given as an input file to use stdin")
-                    .describedAs("pathToAvroFile")
-                    .isRequired();
-        }};
-
-        List nargs = Collections.emptyList();
+    /**
+     * The options of a single run, checked for conflicts which only concern the tool, the counter checks its own
+     */
+    private static class Options {
+        int maxParallelism;
+        long splitSize;
+        boolean useMmap;
+        boolean recursive;
+        String cacheFile;
+        int cacheSize;
+        boolean resume;
+        boolean skipCorrupt;
+        boolean verify;
+        RecordPredicate where;
+        DistinctField distinct;
+        boolean writeSketches;
+        double targetError;
+        Long seed;
+        boolean useIndex;
+        boolean byPartition;
+        boolean bySchema;
+        boolean writeIndex;
+        String metadataKey;
+        double verifyMetadata;
+        boolean printProgress;
+        double progressInterval;
+        String metricsFile;
+        boolean watch;
+        double watchInterval;
+        String objectStoreEndpoint;
+        int rangeSize;
+        int requestsInFlight;
+        String format;
+        List<String> paths;
+
+        /**
+         * @throws OptionException if the arguments do not match the options
+         * @throws IllegalArgumentException if the value of an option is invalid or options conflict
+         */
+        static Options parse(OptionParser optionParser, List<String> args) {
+            Options options = new Options();
+            // 'index [options] paths...' counts the given files and writes a block index next to each of them
+            if (!args.isEmpty() && args.get(0).equals("index")) {
+                options.writeIndex = true;
+                args = args.subList(1, args.size());
+            }
 
-        int maxParallelism = -1;
-        try {
             OptionSet optionSet = optionParser.parse(args.toArray(new String[0]));
-            maxParallelism = Integer.parseInt(optionSet.valueOf("maxParallelism").toString());
-            nargs = optionSet.nonOptionArguments();
-        } catch (OptionException e) {
-            err.println(e.getMessage());
+            options.maxParallelism = Integer.parseInt(optionSet.valueOf("maxParallelism").toString());
+            options.splitSize = Long.parseLong(optionSet.valueOf("splitSize").toString());
+            options.useMmap = !optionSet.has("noMmap");
+            options.recursive = optionSet.has("recursive");
+            options.resume = optionSet.has("resume");
+            options.skipCorrupt = optionSet.has("skipCorrupt");
+            options.verify = optionSet.has("verify");
+            if (optionSet.has("where")) {
+                try {
+                    options.where = RecordPredicate.parse(optionSet.valueOf("where").toString());
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException(String.format("Invalid predicate: %s", e.getMessage()), e);
+                }
+            }
+            if (optionSet.has("distinct")) {
+                options.distinct = new DistinctField(optionSet.valueOf("distinct").toString());
+            }
+            options.writeSketches = optionSet.has("saveSketches");
+            options.useIndex = !optionSet.has("noIndex");
+            options.byPartition = optionSet.has("groupByPartition");
+            options.bySchema = optionSet.has("groupBySchema");
+            if (optionSet.has("metadataCount")) {
+                options.metadataKey = optionSet.valueOf("metadataCount").toString();
+            }
+            if (optionSet.has("verifyMetadata")) {
+                options.verifyMetadata = Double.parseDouble(optionSet.valueOf("verifyMetadata").toString());
+            }
+            if (optionSet.has("estimate")) {
+                options.targetError = Double.parseDouble(optionSet.valueOf("targetError").toString());
+            }
+            if (optionSet.has("seed")) {
+                options.seed = Long.parseLong(optionSet.valueOf("seed").toString());
+            }
+            if (optionSet.has("cache")) {
+                options.cacheFile = optionSet.valueOf("cache").toString();
+            }
+            options.cacheSize = Integer.parseInt(optionSet.valueOf("cacheSize").toString());
+            options.printProgress = optionSet.has("progress");
+            options.progressInterval = Double.parseDouble(optionSet.valueOf("progressInterval").toString());
+            if (optionSet.has("metricsFile")) {
+                options.metricsFile = optionSet.valueOf("metricsFile").toString();
+            }
+            options.watch = optionSet.has("watch");
+            options.watchInterval = Double.parseDouble(optionSet.valueOf("watchInterval").toString());
+            if (optionSet.has("s3Endpoint")) {
+                options.objectStoreEndpoint = optionSet.valueOf("s3Endpoint").toString();
+            }
+            options.rangeSize = Integer.parseInt(optionSet.valueOf("rangeSize").toString());
+            options.requestsInFlight = Integer.parseInt(optionSet.valueOf("requestsInFlight").toString());
+            options.format = optionSet.valueOf("format").toString();
+            options.paths = new LinkedList<>();
+            for (Object path : optionSet.nonOptionArguments()) {
+                options.paths.add(path.toString());
+            }
+
+            if (options.byPartition && options.bySchema) {
+                throw new IllegalArgumentException("Option groupByPartition cannot be combined with option groupBySchema");
+            }
+            if (options.progressInterval <= 0) {
+                throw new IllegalArgumentException("Option progressInterval must be positive");
+            }
+            if (options.watch && (options.byPartition || options.bySchema)) {
+                throw new IllegalArgumentException("Option watch cannot be combined with grouping the counts");
+            }
+            if (options.watch && options.paths.contains("-")) {
+                throw new IllegalArgumentException("Option watch cannot be used for stdin");
+            }
+            if (options.watchInterval <= 0) {
+                throw new IllegalArgumentException("Option watchInterval must be positive");
+            }
+            if (!CountReport.FORMATS.contains(options.format)) {
+                throw new IllegalArgumentException(String.format("Option format must be one of %s", CountReport.FORMATS));
+            }
+            return options;
+        }
+
+        /**
+         * @return the settings of the counter which distinguish it from the counters of other runs, except for those
+         * which {@link #checkRemote()} rejects
+         */
+        List<Object> counterKey() {
+            return Arrays.asList(splitSize, useMmap, recursive, resume, skipCorrupt, verify,
+                    where != null ? where.toString() : null, distinct != null ? distinct.getName() : null,
+                    targetError, seed, useIndex, metadataKey, verifyMetadata, objectStoreEndpoint, rangeSize,
+                    requestsInFlight);
+        }
+
+        /**
+         * Requests of clients run with the privileges of the server, so they must not write files on behalf of
+         * other local users, and must not keep a connection busy forever
+         *
+         * @throws IllegalArgumentException if the options cannot be served
+         */
+        void checkRemote() {
+            if (writeIndex) {
+                throw new IllegalArgumentException("Writing block indexes is not supported by the server");
+            }
+            if (cacheFile != null) {
+                throw new IllegalArgumentException("Option cache is not supported by the server");
+            }
+            if (metricsFile != null) {
+                throw new IllegalArgumentException("Option metricsFile is not supported by the server");
+            }
+            if (writeSketches) {
+                throw new IllegalArgumentException("Option saveSketches is not supported by the server");
+            }
+            if (watch) {
+                throw new IllegalArgumentException("Option watch is not supported by the server");
+            }
         }
+    }
 
-        if (nargs.size() < 1) {
-            printHelp(err);
-            err.println();
-            optionParser.printHelpOn(err);
+    @Override
+    public int run(InputStream stdin, PrintStream out, PrintStream err, List<String> args) throws Exception {
+        OptionParser optionParser = optionParser();
+        Options options;
+        CountProgress progress;
+        AvroCounter counter;
+        // the settings of a counter which is shared with other runs, null if the counter is owned by this run
+        List<Object> shared = null;
+        try {
+            options = Options.parse(optionParser, args);
+            if (remote) {
+                options.checkRemote();
+            }
+            if (options.paths.isEmpty()) {
+                printHelp(err, optionParser);
+                return 1;
+            }
+            progress = options.printProgress || options.metricsFile != null ? new CountProgress() : null;
+            if (counters != null && progress == null) {
+                shared = options.counterKey();
+                counter = counters.acquire(shared, builder(options, null));
+            } else {
+                counter = builder(options, progress).build();
+            }
+        } catch (OptionException | IllegalArgumentException e) {
+            err.println(e.getMessage());
+            printHelp(err, optionParser);
             return 1;
         }
 
         final long startedAt = System.currentTimeMillis();
 
-        List<BufferedAvroInputStream> inStreams = fileOrStdin(nargs.get(0).toString(), stdin);
+        CountReport report = CountReport.create(options.format, out,
+                options.byPartition ? "partition" : options.bySchema ? "schema" : null);
+        ProgressReporter reporter = progress != null
+                ? new ProgressReporter(progress, options.printProgress ? err : null,
+                        options.metricsFile != null ? resolve(new File(options.metricsFile)) : null,
+                        (long) (options.progressInterval * 1000))
+                : null;
+        CountResult total;
+        try {
+            final List<String> paths = new LinkedList<>();
+            for (String path : options.paths) {
+                paths.add(resolve(counter, path));
+            }
+            if (options.watch) {
+                return watch(counter, paths, (long) (options.watchInterval * 1000), options.format, report, out);
+            }
+            total = count(counter, paths, options, stdin, err, report);
+        } finally {
+            try {
+                if (shared != null) {
+                    counters.release(shared);
+                } else {
+                    counter.close();
+                }
+            } finally {
+                // reports the final progress once counting has finished
+                if (reporter != null) {
+                    reporter.close();
+                }
+            }
+        }
+
+        LOGGER.debug("Finished in {}ms", System.currentTimeMillis() - startedAt);
 
-        long totalCount = 0L;
+        if (total.getSkippedBytes() > 0) {
+            err.println(String.format("Skipped %s corrupt bytes, an estimated %s blocks have not been counted",
+                    total.getSkippedBytes(), total.getEstimatedLostBlocks()));
+        }
+        if (total.isEstimated()) {
+            err.println(String.format("Estimated from %s sampled blocks, 95%% confidence interval: %s-%s records",
+                    total.getSampledBlocks(), total.getRecordsLowerBound(), total.getRecordsUpperBound()));
+        }
+        if (total.getMetadataChecks() > 0) {
+            err.println(String.format("Verified the count in the metadata of %s files, %s did not match their blocks",
+                    total.getMetadataChecks(), total.getMetadataMismatches()));
+        }
+        err.flush();
+        report.summary(total);
 
-        if (inStreams.size() > 0) {
-            int threadCount = maxParallelism > 0 ? Math.min(maxParallelism, inStreams.size()) : inStreams.size();
-            ExecutorService executor = Executors.newFixedThreadPool(threadCount);
-            List<Future<Long>> processors = new LinkedList<>();
+        return 0;
+    }
 
-            for (final BufferedAvroInputStream inStream : inStreams) {
-                Future<Long> processor = executor.submit(() -> {
+    private AvroCounter.Builder builder(Options options, CountProgress progress) {
+        AvroCounter.Builder builder = AvroCounter.builder()
+                .parallelism(options.maxParallelism)
+                .splitSize(options.splitSize)
+                .memoryMapping(options.useMmap)
+                .recursive(options.recursive)
+                .resume(options.resume)
+                .skipCorrupt(options.skipCorrupt)
+                .verify(options.verify)
+                .where(options.where)
+                .distinct(options.distinct)
+                .writeSketches(options.writeSketches)
+                .estimate(options.targetError)
+                .useIndex(options.useIndex)
+                .writeIndex(options.writeIndex)
+                .metadataCount(options.metadataKey)
+                .verifyMetadata(options.verifyMetadata)
+                .objectStoreEndpoint(options.objectStoreEndpoint)
+                .rangeSize(options.rangeSize)
+                .requestsInFlight(options.requestsInFlight);
+        if (options.cacheFile != null) {
+            builder.cache(resolve(new File(options.cacheFile))).cacheSize(options.cacheSize);
+        }
+        if (progress != null) {
+            builder.progress(progress);
+        }
+        if (options.seed != null) {
+            builder.seed(options.seed);
+        }
+        if (executor != null) {
+            builder.executor(executor);
+        }
+        if (conf != null) {
+            builder.configuration(conf);
+        }
+        return builder;
+    }
+
+    /**
+     * Counts the given paths, reporting files or groups as they are finished
+     *
+     * @return the total of all paths
+     */
+    private static CountResult count(AvroCounter counter, List<String> paths, Options options, InputStream stdin,
+                                     PrintStream err, CountReport report) throws Exception {
+        CountResult total = CountResult.summary();
+        CompletableFuture<CountResult> stream = null;
+        // stdin can only be read once, no matter how often it is given
+        if (paths.removeIf("-"::equals)) {
+            LOGGER.debug("Using STDIN for input");
+            stream = counter.count(stdin, "-");
+        }
+
+        CompletableFuture<CountResult> files;
+        if (options.byPartition || options.bySchema) {
+            // groups are reported in order, stdin is reported as a group of its own afterwards
+            Consumer<CountResult> listener = group -> {
+                synchronized (report) {
                     try {
-                        LOGGER.debug("Started to process {}", inStream.getPath());
-
-                        long count = 0L;
-
-                        long startedProcessingAt = System.currentTimeMillis();
-                        try (CountableSkipDataFileStream streamReader = new CountableSkipDataFileStream(inStream)) {
-                            while (streamReader.hasNextBlock()) {
-                                streamReader.nextBlock();
-                                count += streamReader.getBlockCount();
-                            }
-                        }
-
-                        LOGGER.debug("Processed {} in {}ms", inStream.getPath(), System.currentTimeMillis() - startedProcessingAt);
-                        return count;
-                    } catch (Exception e) {
-                        LOGGER.error(String.format("Error occurred while processing %s", inStream.getPath()), e);
-                        throw e;
+                        report.group(group);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
                     }
-                });
-                processors.add(processor);
+                }
+            };
+            files = options.byPartition ? counter.countByPartition(paths, listener) : counter.countBySchema(paths, listener);
+            total.add(files.get());
+            if (stream != null) {
+                CountResult count = stream.get();
+                report.group(count);
+                total.add(count);
             }
-
-            for (Future<Long> processor : processors) {
-                totalCount += processor.get();
+        } else {
+            // results are reported in the order in which the files are finished
+            files = counter.count(paths, count -> {
+                if (count.getMetadataMismatches() > 0) {
+                    err.println(mismatch(count));
+                }
+                synchronized (report) {
+                    try {
+                        report.file(count);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            });
+
+            if (stream != null) {
+                CountResult count = stream.get();
+                synchronized (report) {
+                    report.file(count);
+                }
+                total.add(count);
             }
+            total.add(files.get());
         }
+        return total;
+    }
 
-        LOGGER.debug("Finished in {}ms", System.currentTimeMillis() - startedAt);
+    private static OptionParser optionParser() {
+        return new OptionParser() {{
+            acceptsAll(asList(SHORT_OPT_VERBOSE, LONG_OPT_VERBOSE), "Enable verbose mode");
+            accepts("maxParallelism", "Maximum amount of parallelism, defaults to four threads per core (at most 64)")
+                    .withRequiredArg()
+                    .defaultsTo("-1")
+                    .ofType(Integer.class);
+            accepts("splitSize", "Split files larger than the given amount of bytes into ranges which are counted in parallel, defaults to " + AvroCounter.DEFAULT_SPLIT_SIZE + ", 0 disables splitting")
+                    .withRequiredArg()
+                    .defaultsTo(String.valueOf(AvroCounter.DEFAULT_SPLIT_SIZE))
+                    .ofType(Long.class);
+            accepts("noMmap", "Do not memory-map local files, read them via FileChannel instead");
+            acceptsAll(asList("r", "recursive"), "Include avro files in sub-directories");
+            accepts("cache", "Path to a file in which counts are cached, unchanged files are not counted again")
+                    .withRequiredArg()
+                    .describedAs("file");
+            accepts("resume", "Resume counting files which have been appended to since they were cached at the last counted block, requires --cache");
+            accepts("cacheSize", "Maximum amount of files kept in the cache, least recently used files are evicted first")
+                    .withRequiredArg()
+                    .defaultsTo(String.valueOf(AvroCounter.DEFAULT_CACHE_SIZE))
+                    .ofType(Integer.class);
+            accepts("skipCorrupt", "Skip corrupt blocks up to the next sync marker instead of failing, skipped byte ranges are reported per file");
+            accepts("verify", "Verify the data of every block: decompress it, check its checksum and decode the stated amount of records with the writer schema, cached counts are not used");
+            accepts("where", "Count the records matching a predicate over top-level fields besides all records, e.g. \"event_type = 'purchase' and amount >= 10\", implies --verify")
+                    .withRequiredArg()
+                    .describedAs("predicate");
+            accepts("distinct", "Estimate the amount of distinct values of a top-level field with a HyperLogLog sketch (~0.8% error) instead of counting records, implies --verify")
+                    .withRequiredArg()
+                    .describedAs("field");
+            accepts("saveSketches", "Save the sketch of the distinct values of every file next to it (file.avro.field.hll), later counts of the same field merge the sketch instead of reading the file");
+            accepts("estimate", "Estimate the amount of records of every file from a random sample of its blocks, prints the 95% confidence interval to stderr");
+            accepts("targetError", "Relative error at which sampling a file stops, when the 95% confidence interval of its estimate is narrower than this in either direction")
+                    .withRequiredArg()
+                    .defaultsTo(String.valueOf(AvroCounter.DEFAULT_TARGET_ERROR))
+                    .ofType(Double.class);
+            accepts("seed", "Seed of the random sampling of --estimate and --verifyMetadata, which makes their results reproducible")
+                    .withRequiredArg()
+                    .ofType(Long.class);
+            accepts("groupByPartition", "Report the counts per Hive-style partition (key=value directories) instead of per file, in the order of the partition names");
+            accepts("groupBySchema", "Report the counts per writer schema (by its CRC-64-AVRO fingerprint) and codec instead of per file");
+            accepts("noIndex", "Do not take counts from block indexes next to the files, which saves looking them up");
+            accepts("metadataCount", "Take the amount of records of every file from this key of its header metadata if the writer stated it there, only the header of such files is read")
+                    .withRequiredArg()
+                    .describedAs("key");
+            accepts("verifyMetadata", "Fraction of the files with a count in their metadata whose blocks are counted anyway, mismatches are printed to stderr, requires --metadataCount")
+                    .withRequiredArg()
+                    .ofType(Double.class);
+            accepts("progress", "Print the progress to stderr at a fixed interval: bytes and files counted out of those listed so far, records, current MiB/s and ETA");
+            accepts("progressInterval", "Interval in seconds at which the progress is reported")
+                    .withRequiredArg()
+                    .defaultsTo("10")
+                    .ofType(Double.class);
+            accepts("metricsFile", "Write the progress in the Prometheus text format to this file at the progress interval, e.g. for the textfile collector of the node exporter")
+                    .withRequiredArg()
+                    .describedAs("file");
+            accepts("watch", "Keep running and count new files as they arrive, printing the updated total after every poll which counted any file (a JSON report per line with --format json)");
+            accepts("watchInterval", "Interval in seconds at which watched paths are polled, files are counted once they did not change for this long")
+                    .withRequiredArg()
+                    .defaultsTo("10")
+                    .ofType(Double.class);
+            accepts("s3Endpoint", "Endpoint of the S3-compatible object store which s3://bucket/key paths refer to, e.g. http://localhost:9000, defaults to AWS; credentials are taken from AWS_ACCESS_KEY_ID and AWS_SECRET_ACCESS_KEY")
+                    .withRequiredArg()
+                    .describedAs("url");
+            accepts("rangeSize", "Amount of bytes fetched by a single range request from the object store")
+                    .withRequiredArg()
+                    .defaultsTo(String.valueOf(AvroCounter.DEFAULT_RANGE_SIZE))
+                    .ofType(Integer.class);
+            accepts("requestsInFlight", "Maximum amount of concurrent range requests per file read from the object store")
+                    .withRequiredArg()
+                    .defaultsTo(String.valueOf(AvroCounter.DEFAULT_REQUESTS_IN_FLIGHT))
+                    .ofType(Integer.class);
+            accepts("format", "Output format, either the total amount of records (total) or a report per file including a summary (json, csv)")
+                    .withRequiredArg()
+                    .defaultsTo("total");
+            nonOptions("Paths to avro files or directories containing avro files, Hadoop glob patterns are supported, a dash ('-') can be given as an input file to use stdin")
+                    .describedAs("pathToAvroFile...")
+                    .isRequired();
+        }};
+    }
 
-        err.flush();
-        out.println(totalCount);
-        out.flush();
+    private static String mismatch(CountResult file) {
+        return String.format("Record count mismatch in %s: the metadata states %s records, its blocks contain %s",
+                file.getPath(), file.getMetadataRecords(), file.getRecords());
+    }
 
-        return 0;
+    /**
+     * Reports the counted files and the running total after every poll until the thread is interrupted
+     *
+     * @param report the report of the run, which is reused for every update if its format is a stream of lines
+     */
+    private static int watch(AvroCounter counter, List<String> paths, long intervalMillis, String format,
+                             CountReport report, PrintStream out) throws IOException {
+        CountWatcher.Listener listener = (files, total) -> {
+            try {
+                // a json report is a single document, every update is a report of its own on a single line
+                CountReport update = format.equals("json") ? CountReport.create(format, out, null) : report;
+                for (CountResult file : files) {
+                    update.file(file);
+                }
+                update.summary(total);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+        CountWatcher watcher = counter.watch(paths, intervalMillis, listener);
+        try {
+            LOGGER.debug("Watching {}", paths);
+            while (true) {
+                Thread.sleep(Long.MAX_VALUE);
+            }
+        } catch (InterruptedException e) {
+            LOGGER.debug("Stopped watching");
+            return 0;
+        } finally {
+            watcher.close();
+        }
     }
 
-    private void printHelp(PrintStream ps) {
+    private File resolve(File file) {
+        return workingDirectory != null && !file.isAbsolute() ? new File(workingDirectory, file.getPath()) : file;
+    }
+
+    /**
+     * Resolves relative local paths against the working directory
+     */
+    private String resolve(AvroCounter counter, String path) {
+        if (workingDirectory == null || path.equals("-") || !counter.isLocal(path)) {
+            return path;
+        }
+        return resolve(new File(path)).getPath();
+    }
+
+    private void printHelp(PrintStream ps, OptionParser optionParser) throws IOException {
         ps.println(getShortDescription());
+        ps.println("Pass 'index' as first argument to write a block index (.avro.idx) next to every counted file");
+        ps.println();
+        optionParser.printHelpOn(ps);
     }
 
     private static boolean redirectLogger(Logger logger, boolean isVerbose) {
@@ -194,6 +579,11 @@ public class AvroCountTool implements Tool {
     }
 
     public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("--server")) {
+            AvroCountServer.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
         boolean isVerbose = Arrays.stream(args)
                 .map(x -> x.replace("-", ""))
                 .anyMatch(x -> x.equalsIgnoreCase(SHORT_OPT_VERBOSE) || x.equalsIgnoreCase(LONG_OPT_VERBOSE));
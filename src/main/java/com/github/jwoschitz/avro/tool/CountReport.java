@@ -0,0 +1,258 @@
+package com.github.jwoschitz.avro.tool;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.github.jwoschitz.avro.count.CountResult;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+/**
+ * Writes the results of a count to stdout
+ *
+ * The default format only prints the total, the structured formats list the statistics of every counted file
+ * followed by a summary over all files. The total is the amount of matching records when filtering, and the
+ * estimated amount of distinct values when counting them.
+ *
+ * When counting by partition or schema, groups are listed instead of files, the default format prints the name and
+ * the total of every group.
+ */
+abstract class CountReport {
+
+    static final List<String> FORMATS = Arrays.asList("total", "json", "csv");
+
+    final PrintStream out;
+    // the kind of groups which are reported instead of files, e.g. "partition", null if files are reported
+    final String grouping;
+
+    CountReport(PrintStream out, String grouping) {
+        this.out = out;
+        this.grouping = grouping;
+    }
+
+    static CountReport create(String format, PrintStream out, String grouping) throws IOException {
+        switch (format) {
+            case "total":
+                return new TotalReport(out, grouping);
+            case "json":
+                return new JsonReport(out, grouping);
+            case "csv":
+                return new CsvReport(out, grouping);
+            default:
+                throw new IllegalArgumentException(String.format("Unknown format %s, expected one of %s", format, FORMATS));
+        }
+    }
+
+    abstract void file(CountResult file) throws IOException;
+
+    /**
+     * @param group the summary over all files of a group, e.g. a partition, named after the group
+     */
+    abstract void group(CountResult group) throws IOException;
+
+    /**
+     * @param total the summary over all files, including the wall clock time of the whole run
+     */
+    abstract void summary(CountResult total) throws IOException;
+
+    static class TotalReport extends CountReport {
+
+        TotalReport(PrintStream out, String grouping) {
+            super(out, grouping);
+        }
+
+        @Override
+        void file(CountResult file) {
+        }
+
+        @Override
+        void group(CountResult group) {
+            out.println(String.format("%s\t%s", group.getPath(), records(group)));
+            out.flush();
+        }
+
+        @Override
+        void summary(CountResult total) {
+            if (grouping == null) {
+                out.println(records(total));
+            }
+            out.flush();
+        }
+
+        private static long records(CountResult count) {
+            if (count.getDistinctValues() != null) {
+                return count.getDistinctValues();
+            }
+            return count.getMatchingRecords() != null ? count.getMatchingRecords() : count.getRecords();
+        }
+    }
+
+    static class JsonReport extends CountReport {
+        private final JsonGenerator generator;
+
+        JsonReport(PrintStream out, String grouping) throws IOException {
+            super(out, grouping);
+            this.generator = new JsonFactory()
+                    .createGenerator(out)
+                    .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.writeStartObject();
+            generator.writeArrayFieldStart(grouping != null ? grouping + "s" : "files");
+        }
+
+        @Override
+        void file(CountResult file) throws IOException {
+            generator.writeStartObject();
+            generator.writeStringField("path", file.getPath());
+            writeFields(file);
+            generator.writeBooleanField("cached", file.isCached());
+            generator.writeBooleanField("indexed", file.isIndexed());
+            generator.writeBooleanField("fromMetadata", file.isFromMetadata());
+            writeNumber("metadataRecords", file.getMetadataRecords());
+            generator.writeArrayFieldStart("skippedRanges");
+            for (CountResult.Range range : file.getSkippedRanges()) {
+                generator.writeStartObject();
+                generator.writeNumberField("start", range.getStart());
+                generator.writeNumberField("end", range.getEnd());
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+
+        @Override
+        void group(CountResult group) throws IOException {
+            generator.writeStartObject();
+            generator.writeStringField(grouping, group.getPath());
+            generator.writeNumberField("files", group.getFiles());
+            writeFields(group);
+            generator.writeEndObject();
+            // groups finish one by one, unlike files which are usually followed by many more
+            generator.flush();
+        }
+
+        @Override
+        void summary(CountResult total) throws IOException {
+            generator.writeEndArray();
+            generator.writeObjectFieldStart("summary");
+            generator.writeNumberField("files", total.getFiles());
+            writeFields(total);
+            generator.writeEndObject();
+            generator.writeEndObject();
+            generator.flush();
+            out.println();
+            out.flush();
+        }
+
+        private void writeFields(CountResult count) throws IOException {
+            generator.writeNumberField("records", count.getRecords());
+            writeNumber("matchingRecords", count.getMatchingRecords());
+            writeNumber("distinctValues", count.getDistinctValues());
+            generator.writeNumberField("blocks", count.getBlocks());
+            generator.writeNumberField("bytesRead", count.getBytesRead());
+            writeNumber("length", count.getLength());
+            writeNumber("minBlockSize", count.getMinBlockSize());
+            writeNumber("avgBlockSize", count.getAverageBlockSize());
+            writeNumber("maxBlockSize", count.getMaxBlockSize());
+            generator.writeStringField("codec", count.getCodec());
+            generator.writeStringField("schemaFingerprint", count.getSchemaFingerprint());
+            writeNumber("elapsedMillis", count.getElapsedMillis());
+            writeNumber("mbPerSecond", count.getMegabytesPerSecond());
+            generator.writeNumberField("skippedBytes", count.getSkippedBytes());
+            generator.writeNumberField("estimatedLostBlocks", count.getEstimatedLostBlocks());
+            generator.writeNumberField("verifiedBlocks", count.getVerifiedBlocks());
+            generator.writeBooleanField("estimated", count.isEstimated());
+            generator.writeNumberField("recordsLowerBound", count.getRecordsLowerBound());
+            generator.writeNumberField("recordsUpperBound", count.getRecordsUpperBound());
+            generator.writeNumberField("sampledBlocks", count.getSampledBlocks());
+            generator.writeNumberField("metadataMismatches", count.getMetadataMismatches());
+        }
+
+        private void writeNumber(String field, Number value) throws IOException {
+            if (value == null) {
+                generator.writeNullField(field);
+            } else if (value instanceof Double) {
+                generator.writeNumberField(field, (Double) value);
+            } else {
+                generator.writeNumberField(field, value.longValue());
+            }
+        }
+    }
+
+    static class CsvReport extends CountReport {
+        // the leading columns are followed by groups of related ones
+        private static final List<String> COLUMNS = Arrays.asList(
+                "type", "path", "records", "blocks", "bytesRead", "length", "minBlockSize", "avgBlockSize",
+                "maxBlockSize", "codec", "elapsedMillis", "mbPerSecond", "cached",
+                // where the count of a file has been taken from instead of its blocks
+                "indexed", "fromMetadata",
+                // header and record contents
+                "schemaFingerprint", "matchingRecords", "distinctValues",
+                // estimates
+                "estimated", "recordsLowerBound", "recordsUpperBound", "sampledBlocks",
+                // verification
+                "verifiedBlocks", "metadataRecords", "metadataMismatches",
+                // corrupt blocks
+                "skippedBytes", "estimatedLostBlocks", "skippedRanges"
+        );
+
+        CsvReport(PrintStream out, String grouping) {
+            super(out, grouping);
+            out.println(String.join(",", COLUMNS));
+        }
+
+        @Override
+        void file(CountResult file) {
+            row("file", file, true);
+        }
+
+        @Override
+        void group(CountResult group) {
+            row(grouping, group, false);
+            out.flush();
+        }
+
+        @Override
+        void summary(CountResult total) {
+            row("summary", total, false);
+            out.flush();
+        }
+
+        /**
+         * @param isFile whether the count is that of a single file, the columns which only apply to files are left
+         *               empty otherwise
+         */
+        private void row(String type, CountResult count, boolean isFile) {
+            out.println(Arrays.asList(
+                    type, count.getPath(), count.getRecords(), count.getBlocks(), count.getBytesRead(), count.getLength(),
+                    count.getMinBlockSize(), count.getAverageBlockSize(), count.getMaxBlockSize(), count.getCodec(),
+                    count.getElapsedMillis(), count.getMegabytesPerSecond(), isFile ? count.isCached() : null,
+                    isFile ? count.isIndexed() : null, isFile ? count.isFromMetadata() : null,
+                    count.getSchemaFingerprint(), count.getMatchingRecords(), count.getDistinctValues(),
+                    count.isEstimated(), count.getRecordsLowerBound(), count.getRecordsUpperBound(),
+                    count.getSampledBlocks(),
+                    count.getVerifiedBlocks(), count.getMetadataRecords(), count.getMetadataMismatches(),
+                    count.getSkippedBytes(), count.getEstimatedLostBlocks(), isFile ? count.getSkippedRanges().stream()
+                            .map(CountResult.Range::toString)
+                            .collect(Collectors.joining(";")) : null
+            ).stream().map(CsvReport::format).collect(Collectors.joining(",")));
+        }
+
+        private static String format(Object value) {
+            if (value == null) {
+                return "";
+            }
+            if (value instanceof Double) {
+                return String.format(Locale.ROOT, "%.3f", (Double) value);
+            }
+            String s = value.toString();
+            if (s.contains(",") || s.contains("\"") || s.contains("\n")) {
+                return "\"" + s.replace("\"", "\"\"") + "\"";
+            }
+            return s;
+        }
+    }
+}
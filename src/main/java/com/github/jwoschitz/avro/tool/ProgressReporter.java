@@ -0,0 +1,139 @@
+package com.github.jwoschitz.avro.tool;
+
+import com.github.jwoschitz.avro.count.CountProgress;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reports the progress of a running count at a fixed interval, and once more when it is closed
+ *
+ * The progress is printed to stderr as a single line, and/or written to a metrics file in the Prometheus text
+ * format, e.g. for the textfile collector of the node exporter. The metrics file is replaced atomically, so it is
+ * never read partially written.
+ */
+class ProgressReporter implements Closeable {
+    private final static Logger LOGGER = LoggerFactory.getLogger(ProgressReporter.class);
+
+    private final CountProgress progress;
+    private final PrintStream err;
+    private final File metricsFile;
+    private final ScheduledExecutorService scheduler;
+
+    // the progress at the previous report, to compute the current throughput
+    private long previousBytes = 0L;
+    private double previousSeconds = 0.0;
+
+    /**
+     * @param err receives the progress lines, null to not print them
+     * @param metricsFile the file the metrics are written to, null to not write them
+     */
+    ProgressReporter(CountProgress progress, PrintStream err, File metricsFile, long intervalMillis) {
+        this.progress = progress;
+        this.err = err;
+        this.metricsFile = metricsFile;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "avro-progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::report, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void report() {
+        try {
+            long bytes = progress.getBytesProcessed();
+            double seconds = progress.getElapsedSeconds();
+            if (err != null) {
+                err.println(line(bytes, seconds));
+                err.flush();
+            }
+            if (metricsFile != null) {
+                writeMetrics(bytes, seconds);
+            }
+            previousBytes = bytes;
+            previousSeconds = seconds;
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Failed to report progress: {}", e.getMessage());
+        }
+    }
+
+    private String line(long bytes, double seconds) {
+        long listed = progress.getBytesListed();
+        // the throughput since the previous report, which reflects the current rather than the average speed
+        double bytesPerSecond = seconds > previousSeconds ? (bytes - previousBytes) / (seconds - previousSeconds) : 0.0;
+        String eta = bytesPerSecond > 0 && listed > bytes
+                ? duration((long) ((listed - bytes) / bytesPerSecond))
+                : "-";
+        return String.format(Locale.ROOT, "Counted %s of %s (%.1f%%), %s of %s files, %s records, %.1f MiB/s, ETA %s",
+                size(bytes), size(listed), listed > 0 ? Math.min(100.0, 100.0 * bytes / listed) : 0.0,
+                progress.getFilesFinished(), progress.getFilesListed(), progress.getRecords(),
+                bytesPerSecond / (1 << 20), eta);
+    }
+
+    private static String size(long bytes) {
+        if (bytes < 1L << 20) {
+            return String.format(Locale.ROOT, "%.1f KiB", bytes / 1024.0);
+        }
+        if (bytes < 1L << 30) {
+            return String.format(Locale.ROOT, "%.1f MiB", bytes / (double) (1L << 20));
+        }
+        return String.format(Locale.ROOT, "%.1f GiB", bytes / (double) (1L << 30));
+    }
+
+    private static String duration(long seconds) {
+        return String.format(Locale.ROOT, "%d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+    }
+
+    private void writeMetrics(long bytes, double seconds) throws IOException {
+        StringBuilder metrics = new StringBuilder();
+        metric(metrics, "avrocount_files_listed_total", "counter", "Files listed so far", progress.getFilesListed());
+        metric(metrics, "avrocount_bytes_listed_total", "counter", "Total length of the files listed so far", progress.getBytesListed());
+        metric(metrics, "avrocount_files_finished_total", "counter", "Files counted completely", progress.getFilesFinished());
+        metric(metrics, "avrocount_bytes_processed_total", "counter", "Bytes of the listed files counted so far", bytes);
+        metric(metrics, "avrocount_records_total", "counter", "Records counted so far", progress.getRecords());
+        metric(metrics, "avrocount_blocks_total", "counter", "Blocks counted so far", progress.getBlocks());
+        metric(metrics, "avrocount_elapsed_seconds", "gauge", "Time since counting started", seconds);
+
+        Path target = metricsFile.toPath().toAbsolutePath();
+        Path temporary = target.resolveSibling(String.format(".%s.%s.tmp", target.getFileName(), System.nanoTime()));
+        Files.write(temporary, metrics.toString().getBytes(StandardCharsets.UTF_8));
+        try {
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private static void metric(StringBuilder metrics, String name, String type, String help, Number value) {
+        metrics.append(String.format("# HELP %s %s\n", name, help));
+        metrics.append(String.format("# TYPE %s %s\n", name, type));
+        metrics.append(String.format(Locale.ROOT, value instanceof Double ? "%s %.3f\n" : "%s %d\n", name, value));
+    }
+
+    /**
+     * Stops reporting at the interval and reports the final progress
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        try {
+            scheduler.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        report();
+    }
+}
@@ -0,0 +1,88 @@
+package com.github.jwoschitz.avro.tool;
+
+import com.github.jwoschitz.avro.count.AvroCounter;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Counters shared by the requests of a server, one per distinct configuration of the counter
+ *
+ * Reusing a counter keeps its listing and verification pools and its cache of schema fingerprints warm across
+ * requests. Counters which are not in use by any request are closed, least recently used first, once more than a
+ * few configurations are idle.
+ */
+class SharedCounters implements Closeable {
+
+    private static class Entry {
+        final AvroCounter counter;
+        // the amount of requests which currently use the counter
+        int users = 0;
+
+        Entry(AvroCounter counter) {
+            this.counter = counter;
+        }
+    }
+
+    private final int maxIdle;
+    // in the order of their last use
+    private final LinkedHashMap<List<Object>, Entry> counters = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * @param maxIdle maximum amount of counters which are kept while no request uses them
+     */
+    SharedCounters(int maxIdle) {
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * @param key the settings of the counter which the builder is configured with
+     * @return the counter for the given settings, built if there is none yet, which is to be released after use
+     * @throws IllegalArgumentException if the builder is configured with invalid settings
+     */
+    synchronized AvroCounter acquire(List<Object> key, AvroCounter.Builder builder) {
+        Entry entry = counters.get(key);
+        if (entry == null) {
+            entry = new Entry(builder.build());
+            counters.put(key, entry);
+        }
+        entry.users++;
+        return entry.counter;
+    }
+
+    synchronized void release(List<Object> key) {
+        Entry entry = counters.get(key);
+        if (entry == null || entry.users == 0) {
+            throw new IllegalStateException("Counter is not in use: " + key);
+        }
+        entry.users--;
+
+        int idle = 0;
+        for (Entry counter : counters.values()) {
+            if (counter.users == 0) {
+                idle++;
+            }
+        }
+        for (Iterator<Entry> iterator = counters.values().iterator(); idle > maxIdle && iterator.hasNext(); ) {
+            Entry counter = iterator.next();
+            if (counter.users == 0) {
+                iterator.remove();
+                counter.counter.close();
+                idle--;
+            }
+        }
+    }
+
+    /**
+     * Closes all counters, regardless of whether they are still in use
+     */
+    @Override
+    public synchronized void close() {
+        for (Entry entry : counters.values()) {
+            entry.counter.close();
+        }
+        counters.clear();
+    }
+}
@@ -0,0 +1,334 @@
+package com.github.jwoschitz.avro.count;
+
+import com.github.jwoschitz.avro.tool.utils.AvroDataFileGenerator;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.SchemaNormalization;
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.generic.GenericRecordBuilder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.jwoschitz.avro.tool.utils.AvroDataFileGenerator.intRecordGenerator;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AvroCounterTest {
+
+    @Rule
+    public TemporaryFolder testFolder = new TemporaryFolder();
+
+    @Test
+    public void testCountStreamsResultsPerFile() throws Exception {
+        File folder = testFolder.newFolder();
+        for (int i = 0; i < 10; i++) {
+            intRecordGenerator(getClass(), CodecFactory.nullCodec()).createAvroFile(String.format("%s.avro", i), 100 * i, folder);
+        }
+
+        List<CountResult> files = new CopyOnWriteArrayList<>();
+        try (AvroCounter counter = AvroCounter.builder().parallelism(2).build()) {
+            CountResult summary = counter.count(Collections.singletonList(folder.getAbsolutePath()), files::add).get();
+
+            assertEquals(4500, summary.getRecords());
+            assertEquals(10, summary.getFiles());
+            assertEquals(10, files.size());
+            assertEquals(4500, files.stream().mapToLong(CountResult::getRecords).sum());
+        }
+    }
+
+    @Test
+    public void testWatchCountsNewFiles() throws Exception {
+        File folder = testFolder.newFolder();
+        File globbed = testFolder.newFolder();
+        AvroDataFileGenerator generator = intRecordGenerator(getClass(), CodecFactory.nullCodec());
+
+        BlockingQueue<CountResult> totals = new LinkedBlockingQueue<>();
+        List<CountResult> files = new CopyOnWriteArrayList<>();
+        try (AvroCounter counter = AvroCounter.builder().parallelism(2).recursive(true).build()) {
+            CountWatcher watcher = counter.watch(Arrays.asList(folder.getAbsolutePath(), globbed.getAbsolutePath() + "/*.avro"),
+                    100, (counted, total) -> {
+                        files.addAll(counted);
+                        totals.add(total);
+                    });
+            try {
+                assertEquals(0, totals.poll(10, TimeUnit.SECONDS).getFiles());
+
+                // new directories are watched as well, glob patterns are listed at every poll
+                File partition = new File(folder, "dt=2026-10-18");
+                assertTrue(partition.mkdir());
+                generator.createAvroFile("a.avro", 100, partition);
+                generator.createAvroFile("b.avro", 200, globbed);
+                long records = 0L;
+                while (records < 300) {
+                    CountResult total = totals.poll(10, TimeUnit.SECONDS);
+                    assertTrue("No update", total != null);
+                    records = total.getRecords();
+                }
+                assertEquals(300, records);
+                assertEquals(2, files.size());
+            } finally {
+                watcher.close();
+            }
+
+            // a closed watcher does not poll anymore
+            generator.createAvroFile("c.avro", 100, globbed);
+            assertEquals(null, totals.poll(500, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    @Test
+    public void testWatchDropsDeletedFiles() throws Exception {
+        File folder = testFolder.newFolder();
+        File globbed = testFolder.newFolder();
+        AvroDataFileGenerator generator = intRecordGenerator(getClass(), CodecFactory.nullCodec());
+        File watchedFile = generator.createAvroFile("a.avro", 100, folder);
+        File polledFile = generator.createAvroFile("b.avro", 200, globbed);
+
+        BlockingQueue<CountResult> totals = new LinkedBlockingQueue<>();
+        try (AvroCounter counter = AvroCounter.builder().parallelism(2).build()) {
+            CountWatcher watcher = counter.watch(Arrays.asList(folder.getAbsolutePath(), globbed.getAbsolutePath() + "/*.avro"),
+                    100, (counted, total) -> totals.add(total));
+            try {
+                CountResult total = totals.poll(10, TimeUnit.SECONDS);
+                while (total != null && total.getRecords() < 300) {
+                    total = totals.poll(10, TimeUnit.SECONDS);
+                }
+                assertTrue("No update", total != null);
+
+                assertTrue(watchedFile.delete());
+                assertTrue(polledFile.delete());
+                while (total.getFiles() > 0) {
+                    total = totals.poll(10, TimeUnit.SECONDS);
+                    assertTrue("Deleted files are still counted", total != null);
+                }
+                assertEquals(0, total.getRecords());
+            } finally {
+                watcher.close();
+            }
+        }
+    }
+
+    @Test
+    public void testListOnlyChangedDirectories() throws Exception {
+        File folder = testFolder.newFolder();
+        File first = new File(folder, "a");
+        File second = new File(folder, "b");
+        assertTrue(first.mkdir());
+        assertTrue(second.mkdir());
+        AvroDataFileGenerator generator = intRecordGenerator(getClass(), CodecFactory.nullCodec());
+        generator.createAvroFile("1.avro", 10, first);
+        generator.createAvroFile("2.avro", 10, second);
+        // directories which changed only just now are listed again
+        long settled = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(1);
+        for (File directory : Arrays.asList(folder, first, second)) {
+            assertTrue(directory.setLastModified(settled));
+        }
+
+        ListedDirectories directories = new ListedDirectories();
+        try (AvroCounter counter = AvroCounter.builder().recursive(true).build()) {
+            assertEquals(Arrays.asList("1.avro", "2.avro"), list(counter, folder, directories));
+            assertEquals(Collections.emptyList(), list(counter, folder, directories));
+            assertTrue(directories.isUnchanged("file:" + first.getAbsolutePath()));
+
+            generator.createAvroFile("3.avro", 10, second);
+            assertTrue(second.setLastModified(settled + 1000));
+            assertEquals(Arrays.asList("2.avro", "3.avro"), list(counter, folder, directories));
+            assertFalse(directories.isUnchanged("file:" + second.getAbsolutePath()));
+        }
+    }
+
+    private static List<String> list(AvroCounter counter, File folder, ListedDirectories directories) throws Exception {
+        List<String> names = new CopyOnWriteArrayList<>();
+        directories.startListing();
+        counter.list(Collections.singletonList(folder.getAbsolutePath()), directories,
+                file -> names.add(file.getPath().substring(file.getPath().lastIndexOf('/') + 1))).get();
+        directories.finishListing();
+        Collections.sort(names);
+        return names;
+    }
+
+    @Test
+    public void testCountByPartitionReportsPartitionsInOrder() throws Exception {
+        File folder = testFolder.newFolder();
+        intRecordGenerator(getClass(), CodecFactory.nullCodec()).createAvroFile("root.avro", 50, folder);
+        for (int day = 3; day > 0; day--) {
+            File partition = new File(folder, String.format("dt=2026-10-0%s/hr=00", day));
+            assertTrue(partition.mkdirs());
+            for (int i = 0; i < day; i++) {
+                intRecordGenerator(getClass(), CodecFactory.nullCodec()).createAvroFile(String.format("%s.avro", i), 100, partition);
+            }
+        }
+
+        List<CountResult> partitions = new CopyOnWriteArrayList<>();
+        try (AvroCounter counter = AvroCounter.builder().parallelism(2).recursive(true).build()) {
+            CountResult summary = counter.countByPartition(Collections.singletonList(folder.getAbsolutePath()), partitions::add).get();
+
+            assertEquals(650, summary.getRecords());
+            assertEquals(7, summary.getFiles());
+        }
+
+        assertEquals(4, partitions.size());
+        assertEquals("", partitions.get(0).getPath());
+        assertEquals(50, partitions.get(0).getRecords());
+        for (int day = 1; day <= 3; day++) {
+            CountResult partition = partitions.get(day);
+            assertEquals(String.format("dt=2026-10-0%s/hr=00", day), partition.getPath());
+            assertEquals(day, partition.getFiles());
+            assertEquals(100 * day, partition.getRecords());
+        }
+    }
+
+    @Test
+    public void testPartitionOfPath() {
+        assertEquals("dt=2026-10-17/hr=03", PartitionGrouping.partition("hdfs://nn:8020/warehouse/t/dt=2026-10-17/hr=03/part-0.avro"));
+        assertEquals("", PartitionGrouping.partition("file:/data/t/part=0.avro"));
+        assertEquals("country=at", PartitionGrouping.partition("s3a://bucket/t/country=at/tmp/part-0.avro"));
+    }
+
+    @Test
+    public void testCountBySchemaGroupsBySchemaFingerprintAndCodec() throws Exception {
+        File folder = testFolder.newFolder();
+        Schema evolved = SchemaBuilder.record("testRecord").fields()
+                .requiredInt("value")
+                .optionalString("label")
+                .endRecord();
+        AvroDataFileGenerator evolvedGenerator = new AvroDataFileGenerator(getClass(), evolved,
+                (schema, value) -> new GenericRecordBuilder(schema).set("value", value).build(), CodecFactory.snappyCodec());
+        for (int i = 0; i < 3; i++) {
+            intRecordGenerator(getClass(), CodecFactory.nullCodec()).createAvroFile(String.format("old-%s.avro", i), 100, folder);
+            evolvedGenerator.createAvroFile(String.format("new-%s.avro", i), 200, folder);
+        }
+        intRecordGenerator(getClass(), CodecFactory.snappyCodec()).createAvroFile("old-snappy.avro", 50, folder);
+
+        String oldFingerprint = String.format("%016x", SchemaNormalization.parsingFingerprint64(
+                new Schema.Parser().parse(getClass().getClassLoader().getResourceAsStream("intRecord.avsc"))));
+        String newFingerprint = String.format("%016x", SchemaNormalization.parsingFingerprint64(evolved));
+
+        // indexed files are grouped as well, only their headers are read
+        try (AvroCounter counter = AvroCounter.builder().writeIndex(true).build()) {
+            counter.count(Collections.singletonList(folder.getAbsolutePath() + "/old-0.avro"), file -> { }).get();
+        }
+
+        Map<String, CountResult> schemas = new LinkedHashMap<>();
+        try (AvroCounter counter = AvroCounter.builder().parallelism(2).build()) {
+            CountResult summary = counter.countBySchema(Collections.singletonList(folder.getAbsolutePath()),
+                    schema -> schemas.put(schema.getPath(), schema)).get();
+
+            assertEquals(950, summary.getRecords());
+            assertEquals("mixed", summary.getSchemaFingerprint());
+        }
+
+        List<String> expected = new ArrayList<>(Arrays.asList(
+                oldFingerprint + "/null", oldFingerprint + "/snappy", newFingerprint + "/snappy"));
+        Collections.sort(expected);
+        assertEquals(expected, new ArrayList<>(schemas.keySet()));
+        assertEquals(300, schemas.get(oldFingerprint + "/null").getRecords());
+        assertEquals(3, schemas.get(oldFingerprint + "/null").getFiles());
+        assertEquals(50, schemas.get(oldFingerprint + "/snappy").getRecords());
+        assertEquals(600, schemas.get(newFingerprint + "/snappy").getRecords());
+        assertEquals(newFingerprint, schemas.get(newFingerprint + "/snappy").getSchemaFingerprint());
+    }
+
+    @Test
+    public void testCounterIsReusedWithGivenExecutor() throws Exception {
+        File avroFile = intRecordGenerator(getClass(), CodecFactory.snappyCodec())
+                .createAvroFile("reused.avro", 1000, testFolder.getRoot());
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            try (AvroCounter counter = AvroCounter.builder().executor(executor).build()) {
+                for (int i = 0; i < 10; i++) {
+                    CountResult summary = counter.count(Collections.singletonList(avroFile.getAbsolutePath()), file -> {}).get();
+                    assertEquals(1000, summary.getRecords());
+                }
+                CountResult stream = counter.count(new FileInputStream(avroFile), "stream").get();
+                assertEquals(1000, stream.getRecords());
+                assertEquals("snappy", stream.getCodec());
+                assertEquals(avroFile.length(), stream.getBytesRead());
+            }
+            assertFalse("a given executor must not be shut down", executor.isShutdown());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testMissingPathCompletesExceptionally() throws Exception {
+        try (AvroCounter counter = AvroCounter.builder().build()) {
+            counter.count(Collections.singletonList(new File(testFolder.getRoot(), "missing.avro").getAbsolutePath()), file -> {}).get();
+            fail("Should fail for a missing path");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof FileNotFoundException);
+        }
+    }
+
+    @Test
+    public void testLocalPathsAreListedWithoutHadoop() throws Exception {
+        File folder = testFolder.newFolder();
+        File avroFile = intRecordGenerator(getClass(), CodecFactory.nullCodec()).createAvroFile("local.avro", 100, folder);
+
+        try (AvroCounter counter = AvroCounter.builder().build()) {
+            assertTrue(counter.isLocal(avroFile.getAbsolutePath()));
+            assertTrue(counter.isLocal("relative/*.avro"));
+            assertFalse(counter.isLocal("hdfs://namenode/data"));
+            assertFalse(counter.isLocal(avroFile.toURI().toString()));
+
+            List<CountResult> local = new CopyOnWriteArrayList<>();
+            List<CountResult> hadoop = new CopyOnWriteArrayList<>();
+            counter.count(Collections.singletonList(folder.getAbsolutePath() + "/*.avro"), local::add).get();
+            counter.count(Collections.singletonList(folder.toURI().toString()), hadoop::add).get();
+
+            // both listings must identify files the same way, otherwise cached counts would not be found
+            assertEquals(1, local.size());
+            assertEquals(hadoop.get(0).getPath(), local.get(0).getPath());
+            assertEquals(hadoop.get(0).getRecords(), local.get(0).getRecords());
+        }
+    }
+
+    @Test
+    public void testVerifyMetadataOfSplitFiles() throws Exception {
+        File folder = testFolder.newFolder();
+        intRecordGenerator(getClass(), CodecFactory.deflateCodec(1)).withSyncInterval(1000)
+                .withMeta("record.count", "20000").createAvroFile("a.avro", 20000, folder);
+
+        List<CountResult> files = new CopyOnWriteArrayList<>();
+        try (AvroCounter counter = AvroCounter.builder().splitSize(4096).metadataCount("record.count")
+                .verifyMetadata(1).build()) {
+            CountResult summary = counter.count(Collections.singletonList(folder.getAbsolutePath()), files::add).get();
+
+            // the header is read by every split, the count of the file is checked once
+            CountResult file = files.get(0);
+            assertFalse(file.isFromMetadata());
+            assertTrue(file.getBlocks() > 1);
+            assertEquals(Long.valueOf(20000), file.getMetadataRecords());
+            assertEquals(1, summary.getMetadataChecks());
+            assertEquals(0, summary.getMetadataMismatches());
+            assertEquals(null, summary.getMetadataRecords());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testResumeRequiresCache() {
+        AvroCounter.builder().resume(true).build();
+    }
+}
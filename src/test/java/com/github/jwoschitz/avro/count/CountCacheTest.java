@@ -0,0 +1,70 @@
+package com.github.jwoschitz.avro.count;
+
+import org.apache.avro.file.DataFileConstants;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CountCacheTest {
+
+    @Rule
+    public TemporaryFolder testFolder = new TemporaryFolder();
+
+    @Test
+    public void testEntriesSurviveReload() throws Exception {
+        File file = new File(testFolder.getRoot(), "count.cache");
+
+        CountCache cache = CountCache.load(file, 10);
+        cache.put(entry("/a.avro", 100));
+        cache.put(entry("/b.avro", 200));
+        cache.save();
+
+        CountCache reloaded = CountCache.load(file, 10);
+        assertEquals(2, reloaded.size());
+        assertEquals(100, reloaded.get("/a.avro").records);
+        assertEquals(200, reloaded.get("/b.avro").records);
+        assertEquals(42, reloaded.get("/b.avro").offset);
+        assertTrue(reloaded.get("/a.avro").isUnchanged(1L, 2L));
+        assertFalse(reloaded.get("/a.avro").isUnchanged(1L, 3L));
+        assertFalse(reloaded.get("/a.avro").isUnchanged(5L, 2L));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntryIsEvicted() throws Exception {
+        File file = new File(testFolder.getRoot(), "count.cache");
+
+        CountCache cache = CountCache.load(file, 2);
+        cache.put(entry("/a.avro", 100));
+        cache.put(entry("/b.avro", 200));
+        assertNotNull(cache.get("/a.avro"));
+        cache.put(entry("/c.avro", 300));
+        cache.save();
+
+        CountCache reloaded = CountCache.load(file, 2);
+        assertEquals(2, reloaded.size());
+        assertNotNull(reloaded.get("/a.avro"));
+        assertNull(reloaded.get("/b.avro"));
+        assertNotNull(reloaded.get("/c.avro"));
+    }
+
+    @Test
+    public void testUnreadableCacheIsIgnored() throws Exception {
+        File file = testFolder.newFile("count.cache");
+        Files.write(file.toPath(), new byte[]{1, 2, 3});
+
+        assertEquals(0, CountCache.load(file, 10).size());
+    }
+
+    private static CountCache.Entry entry(String path, long records) {
+        return new CountCache.Entry(path, 1L, 2L, new byte[DataFileConstants.SYNC_SIZE], records, 1L, 42L);
+    }
+}
@@ -0,0 +1,63 @@
+package com.github.jwoschitz.avro.count;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.SplittableRandom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HyperLogLogTest {
+
+    private static HyperLogLog sketch(long seed, int distinct) {
+        HyperLogLog sketch = new HyperLogLog();
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int i = 0; i < distinct; i++) {
+            long hash = random.nextLong();
+            // duplicates do not change the sketch
+            sketch.add(hash);
+            sketch.add(hash);
+        }
+        return sketch;
+    }
+
+    @Test
+    public void testEstimateWithinError() {
+        assertEquals(0, new HyperLogLog().estimate());
+        assertEquals(1, sketch(1, 1).estimate());
+        assertEquals(100, sketch(2, 100).estimate(), 1);
+        for (int distinct : new int[]{1000, 10000, 40000, 100000, 1000000}) {
+            long estimate = sketch(distinct, distinct).estimate();
+            assertTrue(String.format("Estimate %s of %s", estimate, distinct), Math.abs(estimate - distinct) < distinct * 0.03);
+        }
+    }
+
+    @Test
+    public void testMergeEstimatesUnion() {
+        HyperLogLog a = sketch(1, 50000);
+        HyperLogLog b = sketch(2, 50000);
+        // the same values as a, so the union only holds a single copy of them
+        HyperLogLog c = sketch(1, 50000);
+
+        long estimate = a.copy().merge(b).merge(c).estimate();
+        assertTrue(String.valueOf(estimate), Math.abs(estimate - 100000) < 3000);
+        assertEquals(a.estimate(), a.copy().merge(c).estimate());
+    }
+
+    @Test
+    public void testSerialize() throws IOException {
+        HyperLogLog sketch = sketch(1, 12345);
+        assertEquals(sketch.estimate(), HyperLogLog.fromByteArray(sketch.toByteArray()).estimate());
+
+        byte[] invalid = sketch.toByteArray();
+        invalid[0] = 0;
+        try {
+            HyperLogLog.fromByteArray(invalid);
+            fail("Should reject bytes which are not a sketch");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.github.jwoschitz.avro.count;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class LargestFirstExecutorTest {
+
+    @Test
+    public void testPendingTasksRunLargestFirst() throws Exception {
+        LargestFirstExecutor executor = new LargestFirstExecutor(1, Executors.defaultThreadFactory());
+        try {
+            CountDownLatch started = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            executor.submit(0L, () -> {
+                started.countDown();
+                release.await();
+                return null;
+            });
+            started.await();
+
+            List<Long> order = Collections.synchronizedList(new ArrayList<>());
+            List<Future<Long>> futures = new ArrayList<>();
+            for (long size : new long[]{1L, 300L, 20L, 300L, 4000L}) {
+                futures.add(executor.submit(size, () -> {
+                    order.add(size);
+                    return size;
+                }));
+            }
+            executor.submit(() -> order.add(-1L));
+            release.countDown();
+
+            for (Future<Long> future : futures) {
+                future.get();
+            }
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+
+            assertEquals(Arrays.asList(4000L, 300L, 300L, 20L, 1L, -1L), order);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.github.jwoschitz.avro.file;
+
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecordBuilder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class DistinctFieldTest {
+
+    private static final Schema V1 = SchemaBuilder.record("event").fields()
+            .requiredInt("user_id")
+            .name("tags").type().array().items().stringType().noDefault()
+            .name("channel").type().enumeration("channel").symbols("web", "app").noDefault()
+            .endRecord();
+
+    // user_id widened to a nullable long, channel turned into a string
+    private static final Schema V2 = SchemaBuilder.record("event").fields()
+            .name("tags").type().array().items().stringType().noDefault()
+            .optionalLong("user_id")
+            .requiredString("channel")
+            .endRecord();
+
+    private static byte[] encode(Schema schema, List<Object[]> values) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(out, null);
+        GenericDatumWriter<Object> writer = new GenericDatumWriter<>(schema);
+        for (Object[] record : values) {
+            writer.write(new GenericRecordBuilder(schema)
+                    .set("user_id", record[0])
+                    .set("tags", Arrays.asList("a", "b"))
+                    .set("channel", record[1])
+                    .build(), encoder);
+        }
+        encoder.flush();
+        return out.toByteArray();
+    }
+
+    private static List<Long> hashes(String field, Schema schema, byte[] records, long count) throws Exception {
+        List<Long> hashes = new ArrayList<>();
+        new DistinctField(field).plan(schema)
+                .hashValues(DecoderFactory.get().binaryDecoder(records, null), count, hashes::add);
+        return hashes;
+    }
+
+    @Test
+    public void testHashesDoNotDependOnType() throws Exception {
+        Schema channel = V1.getField("channel").schema();
+        byte[] v1 = encode(V1, Arrays.asList(
+                new Object[]{1, new GenericData.EnumSymbol(channel, "web")},
+                new Object[]{2, new GenericData.EnumSymbol(channel, "app")}));
+        byte[] v2 = encode(V2, Arrays.asList(
+                new Object[]{1L, "web"},
+                new Object[]{null, "app"},
+                new Object[]{2L, "app"}));
+
+        // nulls are not counted
+        assertEquals(hashes("user_id", V1, v1, 2), hashes("user_id", V2, v2, 3));
+        List<Long> channels = hashes("channel", V2, v2, 3);
+        assertEquals(Arrays.asList(channels.get(0), channels.get(1)), hashes("channel", V1, v1, 2));
+        assertEquals(channels.get(1), channels.get(2));
+        assertEquals(0, hashes("country", V1, v1, 2).size());
+    }
+
+    @Test
+    public void testRejectUnsupportedFields() {
+        for (String field : Arrays.asList("tags", "user-id", "")) {
+            try {
+                new DistinctField(field).plan(V1);
+                fail("Planned " + field);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.github.jwoschitz.avro.file;
+
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.file.SeekableFileInput;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+
+import java.io.File;
+import java.io.IOException;
+
+import static com.github.jwoschitz.avro.tool.utils.AvroDataFileGenerator.intRecordGenerator;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MappedSkipDataFileReaderTest {
+
+    @Rule
+    public TestName testName = new TestName();
+
+    @Test
+    public void testCountWithDefaultWindow() throws Exception {
+        File avroFile = createAvroFile(10000);
+        try (MappedSkipDataFileReader reader = new MappedSkipDataFileReader(avroFile)) {
+            assertEquals(10000, count(reader, 0, avroFile.length()));
+        }
+    }
+
+    @Test
+    public void testCountWithWindowsSmallerThanBlocks() throws Exception {
+        File avroFile = createAvroFile(10000);
+        for (long windowSize : new long[]{1, 7, 16, 100, 4096}) {
+            try (MappedSkipDataFileReader reader = new MappedSkipDataFileReader(avroFile, windowSize)) {
+                assertEquals(10000, count(reader, 0, avroFile.length()));
+            }
+        }
+    }
+
+    @Test
+    public void testSplitsMatchSeekableReader() throws Exception {
+        File avroFile = createAvroFile(10000);
+        long splitSize = 333;
+        // windows smaller than, equal to and slightly larger than a sync marker, which might span two windows
+        for (long windowSize : new long[]{7, 16, 17, 50}) {
+            long total = 0L;
+            for (long start = 0; start < avroFile.length(); start += splitSize) {
+                long end = Math.min(start + splitSize, avroFile.length());
+                try (MappedSkipDataFileReader mapped = new MappedSkipDataFileReader(avroFile, windowSize);
+                     CountableSkipDataFileReader seekable = new CountableSkipDataFileReader(new SeekableFileInput(avroFile))) {
+                    long count = count(mapped, start, end);
+                    assertEquals(count(seekable, start, end), count);
+                    total += count;
+                }
+            }
+            assertEquals(10000, total);
+        }
+    }
+
+    @Test
+    public void testRaiseExceptionIfFileIsNotAvro() throws Exception {
+        File someFile = File.createTempFile(testName.getMethodName(), ".avro");
+        someFile.deleteOnExit();
+
+        try {
+            new MappedSkipDataFileReader(someFile).close();
+            fail("Should raise an exception if a non-avro file is given");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("Not a data file"));
+        }
+    }
+
+    private File createAvroFile(long recordCount) throws Exception {
+        return intRecordGenerator(getClass(), CodecFactory.nullCodec())
+                .withSyncInterval(64)
+                .createAvroFile(String.format("%s.avro", testName.getMethodName()), recordCount);
+    }
+
+    private static long count(SeekableBlockReader reader, long start, long end) throws IOException {
+        long count = 0L;
+        if (start > 0) {
+            reader.sync(start);
+        }
+        while (!reader.pastSync(end) && reader.hasNextBlock()) {
+            reader.nextBlock();
+            count += reader.getBlockCount();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,80 @@
+package com.github.jwoschitz.avro.file;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ObjectStoreInputTest {
+
+    private static final byte[] OBJECT = new byte[100000];
+
+    static {
+        new Random(17).nextBytes(OBJECT);
+    }
+
+    private final List<Long> requested = new CopyOnWriteArrayList<>();
+    private final ObjectStoreInput.RangeReader ranges = (position, length) -> {
+        requested.add(position);
+        return Arrays.copyOfRange(OBJECT, (int) position, (int) position + length);
+    };
+
+    @Test
+    public void testReadArbitraryRanges() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try (ObjectStoreInput in = new ObjectStoreInput(ranges, OBJECT.length, 1000, 4, executor)) {
+            Random random = new Random(42);
+            for (int i = 0; i < 1000; i++) {
+                int position = random.nextInt(OBJECT.length);
+                int length = random.nextInt(i % 10 == 0 ? 20000 : 100) + 1;
+                byte[] data = new byte[length];
+                in.seek(position);
+                int read = in.read(data, 0, length);
+                assertEquals(Math.min(length, OBJECT.length - position), read);
+                assertArrayEquals(Arrays.copyOfRange(OBJECT, position, position + read), Arrays.copyOf(data, read));
+                assertEquals(position + read, in.tell());
+            }
+            in.seek(OBJECT.length);
+            assertEquals(-1, in.read(new byte[1], 0, 1));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testRequestAheadOnlyWhenReadSequentially() throws Exception {
+        // jumping over windows, as when walking large blocks
+        assertEquals(10, requestedWindows(0, OBJECT.length, 10000));
+        // walking small blocks requests up to three windows ahead of the last one read, every window once
+        assertEquals(20 + 3, requestedWindows(50, 20000, 100));
+    }
+
+    /**
+     * @return the amount of range requests to read a block header at every step from start to end
+     */
+    private long requestedWindows(int start, int end, int step) throws Exception {
+        requested.clear();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        byte[] header = new byte[36];
+        try (ObjectStoreInput in = new ObjectStoreInput(ranges, OBJECT.length, 1000, 4, executor)) {
+            for (int position = start; position < end; position += step) {
+                in.seek(position);
+                in.read(header, 0, header.length);
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(requested.size(), requested.stream().distinct().count());
+        return requested.size();
+    }
+}
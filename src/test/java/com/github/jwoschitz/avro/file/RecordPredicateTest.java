@@ -0,0 +1,165 @@
+package com.github.jwoschitz.avro.file;
+
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecordBuilder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RecordPredicateTest {
+
+    private static final Schema SCHEMA = SchemaBuilder.record("event").fields()
+            .requiredLong("id")
+            .name("tags").type().array().items().stringType().noDefault()
+            .requiredString("event_type")
+            .name("channel").type().enumeration("channel").symbols("web", "app").noDefault()
+            .optionalInt("amount")
+            .requiredDouble("score")
+            .requiredBoolean("test")
+            .requiredFloat("ratio")
+            .requiredLong("big")
+            .requiredDouble("large")
+            .endRecord();
+
+    /**
+     * Encodes 100 records: every third is a purchase, every other one from the app, every fifth without an amount
+     */
+    private static byte[] records() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(out, null);
+        GenericDatumWriter<Object> writer = new GenericDatumWriter<>(SCHEMA);
+        for (int i = 0; i < 100; i++) {
+            writer.write(new GenericRecordBuilder(SCHEMA)
+                    .set("id", (long) i)
+                    .set("tags", i % 7 == 0 ? Collections.emptyList() : Arrays.asList("a", "b'c"))
+                    .set("event_type", i % 3 == 0 ? "purchase" : "view")
+                    .set("channel", new GenericData.EnumSymbol(SCHEMA.getField("channel").schema(), i % 2 == 0 ? "web" : "app"))
+                    .set("amount", i % 5 == 0 ? null : i)
+                    .set("score", i / 10.0)
+                    .set("test", i == 42)
+                    .set("ratio", i / 10f)
+                    // beyond 2^53, where not every long is a double
+                    .set("big", (1L << 53) + i)
+                    .set("large", (double) (1L << 53) + 2 * i)
+                    .build(), encoder);
+        }
+        encoder.flush();
+        return out.toByteArray();
+    }
+
+    private static long count(String predicate) throws Exception {
+        return RecordPredicate.parse(predicate).plan(SCHEMA)
+                .count(DecoderFactory.get().binaryDecoder(records(), null), 100);
+    }
+
+    @Test
+    public void testComparisons() throws Exception {
+        assertEquals(34, count("event_type = 'purchase'"));
+        assertEquals(66, count("event_type != 'purchase'"));
+        assertEquals(50, count("channel = 'app'"));
+        assertEquals(10, count("id < 10"));
+        assertEquals(11, count("id <= 10.5"));
+        assertEquals(1, count("test = true"));
+        assertEquals(20, count("score >= 8"));
+        assertEquals(20, count("amount = null"));
+        assertEquals(80, count("amount != null"));
+        // null amounts match neither side of a comparison
+        assertEquals(80, count("amount >= 10") + count("amount < 10"));
+    }
+
+    @Test
+    public void testCombinations() throws Exception {
+        assertEquals(17, count("event_type = 'purchase' and channel = 'web'"));
+        assertEquals(67, count("event_type = 'purchase' OR channel = 'web'"));
+        assertEquals(33, count("not (event_type = 'purchase' or channel = 'web')"));
+        assertEquals(8, count("id < 10 and not (amount = null or test = true)"));
+    }
+
+    @Test
+    public void testNullIsUnknown() throws Exception {
+        // a null amount matches neither a comparison nor its negation
+        assertEquals(79, count("not (amount = 7)"));
+        assertEquals(8, count("not (amount >= 10)"));
+        // unknown and false is false, unknown or true is true
+        assertEquals(92, count("amount >= 10 or amount = null"));
+        assertEquals(100, count("amount < 10 or id >= 0"));
+        assertEquals(90, count("not (amount < 10 and id >= 50)"));
+        assertEquals(0, count("not (country = 'at')"));
+    }
+
+    @Test
+    public void testFloatsAreComparedWithTheNearestFloat() throws Exception {
+        assertEquals(1, count("ratio = 0.1"));
+        assertEquals(4, count("ratio <= 0.3"));
+        assertEquals(93, count("ratio >= 0.7"));
+        assertEquals(90, count("ratio >= 1"));
+    }
+
+    @Test
+    public void testLargeNumbersAreComparedExactly() throws Exception {
+        assertEquals(1, count("big = 9007199254740992.0"));
+        assertEquals(99, count("big > 9007199254740992.0"));
+        assertEquals(1, count("large < 9007199254740993"));
+        assertEquals(1, count("large = 9007199254740994"));
+        assertEquals(100, count("big < 1e300 and big > -1e300"));
+    }
+
+    @Test
+    public void testEnumsAreOrderedBySymbolPosition() throws Exception {
+        // web is declared before app
+        assertEquals(50, count("channel < 'app'"));
+        assertEquals(50, count("channel > 'web'"));
+        assertEquals(0, count("channel = 'tv'"));
+        assertEquals(100, count("channel != 'tv'"));
+        try {
+            count("channel < 'tv'");
+            fail("Ordered by an unknown symbol");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testMissingFieldIsNull() throws Exception {
+        assertEquals(100, count("country = null"));
+        assertEquals(0, count("country = 'at'"));
+        assertEquals(0, count("country != 'at'"));
+    }
+
+    @Test
+    public void testRejectInvalidPredicates() {
+        for (String predicate : Arrays.asList("", "id", "id =", "id = 'a", "= 1", "id = 1 and", "(id = 1", "id = 1)",
+                "id ! 1", "id < null", "and = 1", "id = 1e", "id = abc")) {
+            try {
+                RecordPredicate.parse(predicate);
+                fail("Parsed " + predicate);
+            } catch (IllegalArgumentException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains(predicate));
+            }
+        }
+    }
+
+    @Test
+    public void testRejectIncomparableFields() {
+        for (String predicate : Arrays.asList("id = 'a'", "event_type = 1", "test = 'true'", "tags = 'a'")) {
+            try {
+                RecordPredicate.parse(predicate).plan(SCHEMA);
+                fail("Planned " + predicate);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.github.jwoschitz.avro.tool;
+
+import com.github.jwoschitz.avro.tool.utils.FileTestUtil;
+import org.apache.avro.file.CodecFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+
+import static com.github.jwoschitz.avro.tool.utils.AvroDataFileGenerator.intRecordGenerator;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AvroCountServerTest {
+
+    @Rule
+    public TemporaryFolder testFolder = new TemporaryFolder();
+
+    private AvroCountServer server;
+    private Thread serverThread;
+    private File tokenFile;
+
+    private final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream errorStream = new ByteArrayOutputStream();
+
+    @Before
+    public void startServer() throws Exception {
+        tokenFile = new File(testFolder.getRoot(), ".avrocount.token");
+        server = new AvroCountServer(0, 2, tokenFile);
+        serverThread = new Thread(() -> {
+            try {
+                server.serve();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        serverThread.start();
+    }
+
+    @After
+    public void stopServer() throws Exception {
+        server.close();
+        serverThread.join();
+    }
+
+    private int run(FileInputStream stdin, String... args) throws Exception {
+        return AvroCountClient.run(server.getPort(), tokenFile, testFolder.getRoot(),
+                stdin != null ? stdin : new ByteArrayInputStream(new byte[0]),
+                new PrintStream(outputStream, true, StandardCharsets.UTF_8.toString()),
+                new PrintStream(errorStream, true, StandardCharsets.UTF_8.toString()),
+                Arrays.asList(args));
+    }
+
+    @Test
+    public void testCountRelativeToClientWorkingDirectory() throws Exception {
+        File folder = testFolder.newFolder("data");
+        for (int i = 0; i < 3; i++) {
+            intRecordGenerator(getClass(), CodecFactory.nullCodec()).createAvroFile(String.format("%s.avro", i), 100, folder);
+        }
+
+        for (int i = 0; i < 5; i++) {
+            outputStream.reset();
+            assertEquals(0, run(null, "data"));
+            assertEquals("300", new String(outputStream.toByteArray(), StandardCharsets.UTF_8).trim());
+        }
+    }
+
+    @Test
+    public void testCountStdin() throws Exception {
+        File avroFile = intRecordGenerator(getClass(), CodecFactory.snappyCodec())
+                .createAvroFile("stdin.avro", 1000, testFolder.getRoot());
+
+        assertEquals(0, run(new FileInputStream(avroFile), "-"));
+        assertEquals("1000", new String(outputStream.toByteArray(), StandardCharsets.UTF_8).trim());
+    }
+
+    @Test
+    public void testErrorsAreReportedToClient() throws Exception {
+        File someFile = FileTestUtil.createNewFile(getClass(), "not_an_avro.avro");
+
+        assertEquals(1, run(null, someFile.getAbsolutePath()));
+        assertTrue(new String(errorStream.toByteArray(), StandardCharsets.UTF_8).contains("Not a data file"));
+    }
+
+    @Test
+    public void testRejectOptionsWhichWriteFilesOrNeverFinish() throws Exception {
+        File avroFile = intRecordGenerator(getClass(), CodecFactory.nullCodec())
+                .createAvroFile("data.avro", 100, testFolder.getRoot());
+
+        for (String[] args : Arrays.asList(
+                new String[]{"--cache", "cache"},
+                new String[]{"--progress", "--metricsFile", "metrics.prom"},
+                new String[]{"--distinct", "value", "--saveSketches"},
+                new String[]{"index"},
+                new String[]{"--watch"})) {
+            List<String> arguments = new ArrayList<>(Arrays.asList(args));
+            arguments.add(avroFile.getName());
+            errorStream.reset();
+            assertEquals(1, run(null, arguments.toArray(new String[0])));
+            assertTrue(new String(errorStream.toByteArray(), StandardCharsets.UTF_8).contains("not supported by the server"));
+        }
+        assertFalse(new File(testFolder.getRoot(), "cache").exists());
+        assertFalse(new File(testFolder.getRoot(), "metrics.prom").exists());
+        assertEquals(0, testFolder.getRoot().listFiles((dir, name) -> name.endsWith(".idx") || name.endsWith(".hll")).length);
+    }
+
+    @Test
+    public void testRejectClientsWithoutToken() throws Exception {
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            assertEquals(EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE),
+                    Files.getPosixFilePermissions(tokenFile.toPath()));
+        }
+        File avroFile = intRecordGenerator(getClass(), CodecFactory.nullCodec())
+                .createAvroFile("data.avro", 100, testFolder.getRoot());
+
+        Files.write(tokenFile.toPath(), "guessed".getBytes(StandardCharsets.UTF_8));
+        assertEquals(1, run(null, avroFile.getName()));
+        assertEquals("", new String(outputStream.toByteArray(), StandardCharsets.UTF_8));
+        assertTrue(new String(errorStream.toByteArray(), StandardCharsets.UTF_8).contains("Invalid token"));
+
+        assertTrue(tokenFile.delete());
+        errorStream.reset();
+        assertEquals(1, run(null, avroFile.getName()));
+        assertTrue(new String(errorStream.toByteArray(), StandardCharsets.UTF_8).contains("Unable to read the token"));
+    }
+
+    @Test
+    public void testHelpIsPrintedOnClient() throws Exception {
+        assertEquals(1, run(null));
+        assertTrue(new String(errorStream.toByteArray(), StandardCharsets.UTF_8).contains(new AvroCountTool().getShortDescription()));
+    }
+}
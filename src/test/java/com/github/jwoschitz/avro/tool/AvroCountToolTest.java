@@ -1,8 +1,17 @@
 package com.github.jwoschitz.avro.tool;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.jwoschitz.avro.file.BlockIndex;
+import com.github.jwoschitz.avro.file.CountableSkipDataFileStream;
+import com.github.jwoschitz.avro.file.MappedSkipDataFileReader;
+import com.github.jwoschitz.avro.file.SeekableBlockReader;
 import com.github.jwoschitz.avro.tool.utils.AvroDataFileGenerator;
 import com.github.jwoschitz.avro.tool.utils.FileTestUtil;
+import com.github.jwoschitz.avro.tool.utils.S3StubServer;
 import org.apache.avro.file.CodecFactory;
+import org.apache.avro.file.DataFileReader;
+import org.apache.avro.generic.GenericDatumReader;
 import org.junit.Ignore;
 import org.junit.Rule;
 import org.junit.Test;
@@ -11,10 +20,17 @@ import org.junit.rules.TestName;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
 import java.io.PrintStream;
+import java.io.RandomAccessFile;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.github.jwoschitz.avro.tool.utils.AvroDataFileGenerator.intRecordGenerator;
 import static org.junit.Assert.*;
@@ -133,6 +149,956 @@ public class AvroCountToolTest {
         assertEquals("10000", new String(outputStream.toByteArray(), StandardCharsets.UTF_8).trim());
     }
 
+    @Test
+    public void testCountOneFileManyBlocks() throws Exception {
+        File avroFile = intRecordGenerator(getClass(), CodecFactory.deflateCodec(CodecFactory.DEFAULT_DEFLATE_LEVEL))
+                .withSyncInterval(64)
+                .createAvroFile(String.format("%s.avro", testName.getMethodName()), 100000);
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        int returnCode = new AvroCountTool().run(
+                System.in,
+                new PrintStream(outputStream, true, StandardCharsets.UTF_8.toString()),
+                System.err,
+                Collections.singletonList(avroFile.getAbsolutePath())
+        );
+
+        assertEquals(0, returnCode);
+        assertEquals("100000", new String(outputStream.toByteArray(), StandardCharsets.UTF_8).trim());
+    }
+
+    @Test
+    public void testCountOneFileWithoutMmap() throws Exception {
+        File avroFile = intRecordGenerator(getClass(), CodecFactory.nullCodec())
+                .withSyncInterval(64)
+                .createAvroFile(String.format("%s.avro", testName.getMethodName()), 100000);
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        int returnCode = new AvroCountTool().run(
+                System.in,
+                new PrintStream(outputStream, true, StandardCharsets.UTF_8.toString()),
+                System.err,
+                Arrays.asList(avroFile.getAbsolutePath(), "--noMmap")
+        );
+
+        assertEquals(0, returnCode);
+        assertEquals("100000", new String(outputStream.toByteArray(), StandardCharsets.UTF_8).trim());
+    }
+
+    @Test
+    public void testCountStdin() throws Exception {
+        File avroFile = intRecordGenerator(getClass(), CodecFactory.snappyCodec())
+                .withSyncInterval(64)
+                .createAvroFile(String.format("%s.avro", testName.getMethodName()), 10000);
+
+        // a repeated dash still refers to stdin, which is counted once
+        for (List<String> args : Arrays.asList(Collections.singletonList("-"), Arrays.asList("-", "-"))) {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            try (InputStream stdin = new FileInputStream(avroFile)) {
+                int returnCode = new AvroCountTool().run(
+                        stdin,
+                        new PrintStream(outputStream, true, StandardCharsets.UTF_8.toString()),
+                        System.err,
+                        args
+                );
+                assertEquals(0, returnCode);
+            }
+
+            assertEquals("10000", new String(outputStream.toByteArray(), StandardCharsets.UTF_8).trim());
+        }
+    }
+
+    @Test
+    public void testCountOneFileSplitNullCodec() throws Exception {
+        testCountOneFileSplitWithCodec(CodecFactory.nullCodec(), 1024);
+    }
+
+    @Test
+    public void testCountOneFileSplitSnappy() throws Exception {
+        testCountOneFileSplitWithCodec(CodecFactory.snappyCodec(), 1024);
+    }
+
+    @Test
+    public void testCountOneFileSplitSmallerThanBlocks() throws Exception {
+        testCountOneFileSplitWithCodec(CodecFactory.nullCodec(), 17);
+    }
+
+    @Test
+    public void testCountOneFileSplitLargerThanFile() throws Exception {
+        testCountOneFileSplitWithCodec(CodecFactory.nullCodec(), Long.MAX_VALUE);
+    }
+
+    private void testCountOneFileSplitWithCodec(CodecFactory codec, long splitSize) throws Exception {
+        File avroFile = intRecordGenerator(getClass(), codec)
+                .withSyncInterval(256)
+                .createAvroFile(String.format("%s.avro", testName.getMethodName()), 100000);
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        int returnCode = new AvroCountTool().run(
+                System.in,
+                new PrintStream(outputStream, true, StandardCharsets.UTF_8.toString()),
+                System.err,
+                Arrays.asList(avroFile.getAbsolutePath(), String.format("--splitSize=%s", splitSize))
+        );
+
+        assertEquals(0, returnCode);
+        assertEquals("100000", new String(outputStream.toByteArray(), StandardCharsets.UTF_8).trim());
+    }
+
+    @Test
+    public void testCountManyFilesInFolderWithLimitedParallelism() throws Exception {
+        AvroDataFileGenerator generator = intRecordGenerator(getClass(), CodecFactory.nullCodec());
+        File folder = testFolder.newFolder(testName.getMethodName());
+
+        for (int i = 0; i < 200; i++) {
+            generator.createAvroFile(String.format("%s_%s.avro", testName.getMethodName(), i), 10, folder);
+        }
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        int returnCode = new AvroCountTool().run(
+                System.in,
+                new PrintStream(outputStream, true, StandardCharsets.UTF_8.toString()),
+                System.err,
+                Arrays.asList(folder.getAbsolutePath(), "--maxParallelism=2")
+        );
+
+        assertEquals(0, returnCode);
+        assertEquals("2000", new String(outputStream.toByteArray(), StandardCharsets.UTF_8).trim());
+    }
+
+    @Test
+    public void testCountMultiplePaths() throws Exception {
+        AvroDataFileGenerator generator = intRecordGenerator(getClass(), CodecFactory.nullCodec());
+        File folder = testFolder.newFolder(testName.getMethodName());
+        File file = generator.createAvroFile(String.format("%s.avro", testName.getMethodName()), 500);
+
+        for (int i = 0; i < 10; i++) {
+            generator.createAvroFile(String.format("%s_%s.avro", testName.getMethodName(), i), 1000, folder);
+        }
+
+        assertEquals("10500", count(folder.getAbsolutePath(), file.getAbsolutePath()));
+    }
+
+    @Test
+    public void testCountPartitionedFolderRecursively() throws Exception {
+        File folder = createPartitionedFolder();
+
+        assertEquals("0", count(folder.getAbsolutePath()));
+        assertEquals("6000", count(folder.getAbsolutePath(), "--recursive"));
+    }
+
+    @Test
+    public void testCountPartitionedFolderWithGlob() throws Exception {
+        File folder = createPartitionedFolder();
+
+        assertEquals("6000", count(folder.getAbsolutePath() + "/dt=*/hr=*/*.avro"));
+        assertEquals("4000", count(folder.getAbsolutePath() + "/dt=*/hr=0[12]"));
+        assertEquals("3000", count(folder.getAbsolutePath() + "/dt=2026-10-17", "-r"));
+    }
+
+    @Test
+    public void testCountGroupedByPartition() throws Exception {
+        File folder = createPartitionedFolder();
+
+        assertEquals(String.join("\n",
+                "dt=2026-10-17/hr=01\t1000",
+                "dt=2026-10-17/hr=02\t1000",
+                "dt=2026-10-17/hr=03\t1000",
+                "dt=2026-10-18/hr=01\t1000",
+                "dt=2026-10-18/hr=02\t1000",
+                "dt=2026-10-18/hr=03\t1000"
+        ), count(folder.getAbsolutePath(), "-r", "--groupByPartition"));
+
+        JsonNode report = new ObjectMapper()
+                .readTree(count(folder.getAbsolutePath() + "/dt=*/hr=0[12]", "--groupByPartition", "--format=json"));
+        assertEquals(4, report.get("partitions").size());
+        assertEquals("dt=2026-10-17/hr=01", report.get("partitions").get(0).get("partition").asText());
+        assertEquals(1, report.get("partitions").get(0).get("files").asInt());
+        assertEquals(4000, report.get("summary").get("records").asLong());
+    }
+
+    @Test
+    public void testCountGroupedBySchema() throws Exception {
+        File folder = testFolder.newFolder(testName.getMethodName());
+        intRecordGenerator(getClass(), CodecFactory.nullCodec()).createAvroFile("a.avro", 1000, folder);
+        intRecordGenerator(getClass(), CodecFactory.nullCodec()).createAvroFile("b.avro", 500, folder);
+        intRecordGenerator(getClass(), CodecFactory.deflateCodec(1)).createAvroFile("c.avro", 200, folder);
+
+        String[] lines = count(folder.getAbsolutePath(), "--groupBySchema").split("\n");
+
+        assertEquals(2, lines.length);
+        assertTrue(lines[0], lines[0].matches("[0-9a-f]{16}/deflate\t200"));
+        assertTrue(lines[1], lines[1].matches("[0-9a-f]{16}/null\t1500"));
+        assertEquals(lines[0].substring(0, 16), lines[1].substring(0, 16));
+    }
+
+    @Test
+    public void testCountMatchingRecords() throws Exception {
+        File avroFile = intRecordGenerator(getClass(), CodecFactory.snappyCodec())
+                .withSyncInterval(1000)
+                .createAvroFile(String.format("%s.avro", testName.getMethodName()), 10000);
+
+        assertEquals("100", count(avroFile.getAbsolutePath(), "--where", "value < 100"));
+        assertEquals("9900", count(avroFile.getAbsolutePath(), "--where=value >= 100 and value != 5000 or value = 1",
+                "--splitSize=1000"));
+        assertEquals("0", count(avroFile.getAbsolutePath(), "--where", "missing != null"));
+
+        JsonNode summary = new ObjectMapper().readTree(count(avroFile.getAbsolutePath(), "--format=json",
+                "--where", "value < 100")).get("summary");
+        assertEquals(10000, summary.get("records").asLong());
+        assertEquals(100, summary.get("matchingRecords").asLong());
+        assertEquals(summary.get("blocks").asLong(), summary.get("verifiedBlocks").asLong());
+    }
+
+    @Test
+    public void testCountDistinctValues() throws Exception {
+        File folder = testFolder.newFolder(testName.getMethodName());
+        AvroDataFileGenerator generator = intRecordGenerator(getClass(), CodecFactory.snappyCodec()).withSyncInterval(1000);
+        generator.createAvroFile("a.avro", 20000, folder);
+        // the values of the second file are a subset of the first one
+        generator.createAvroFile("b.avro", 10000, folder);
+
+        long distinct = Long.parseLong(count(folder.getAbsolutePath(), "--distinct", "value", "--splitSize=1000"));
+        assertTrue(String.valueOf(distinct), Math.abs(distinct - 20000) < 20000 * 0.03);
+        assertEquals("0", count(folder.getAbsolutePath(), "--distinct", "missing"));
+
+        JsonNode report = new ObjectMapper().readTree(count(folder.getAbsolutePath(), "--distinct=value", "--format=json"));
+        assertEquals(30000, report.get("summary").get("records").asLong());
+        assertEquals(distinct, report.get("summary").get("distinctValues").asLong());
+    }
+
+    @Test
+    public void testSaveSketches() throws Exception {
+        File folder = testFolder.newFolder(testName.getMethodName());
+        File avroFile = intRecordGenerator(getClass(), CodecFactory.nullCodec())
+                .createAvroFile("a.avro", 5000, folder);
+        File sketch = new File(folder, "a.avro.value.hll");
+
+        String distinct = count(folder.getAbsolutePath(), "--distinct", "value", "--saveSketches");
+        assertTrue(sketch.isFile());
+
+        JsonNode file = new ObjectMapper().readTree(count(folder.getAbsolutePath(), "--distinct", "value", "--format=json"))
+                .get("files").get(0);
+        assertEquals(distinct, file.get("distinctValues").asText());
+        assertEquals(5000, file.get("records").asLong());
+        assertEquals(0, file.get("verifiedBlocks").asLong());
+
+        // an outdated sketch is not used
+        assertTrue(avroFile.setLastModified(avroFile.lastModified() - 10000));
+        file = new ObjectMapper().readTree(count(folder.getAbsolutePath(), "--distinct", "value", "--format=json"))
+                .get("files").get(0);
+        assertTrue(file.get("verifiedBlocks").asLong() > 0);
+    }
+
+    @Test
+    public void testReportProgress() throws Exception {
+        File folder = testFolder.newFolder(testName.getMethodName());
+        AvroDataFileGenerator generator = intRecordGenerator(getClass(), CodecFactory.snappyCodec()).withSyncInterval(1000);
+        long length = 0L;
+        for (int i = 0; i < 3; i++) {
+            length += generator.createAvroFile(String.format("%s.avro", i), 10000, folder).length();
+        }
+        File metricsFile = new File(testFolder.getRoot(), testName.getMethodName() + ".prom");
+
+        ByteArrayOutputStream errStream = new ByteArrayOutputStream();
+        int returnCode = new AvroCountTool().run(
+                System.in,
+                new PrintStream(new ByteArrayOutputStream(), true, StandardCharsets.UTF_8.toString()),
+                new PrintStream(errStream, true, StandardCharsets.UTF_8.toString()),
+                Arrays.asList(folder.getAbsolutePath(), "--splitSize=1000", "--progress", "--progressInterval=0.01",
+                        "--metricsFile=" + metricsFile.getAbsolutePath())
+        );
+        assertEquals(0, returnCode);
+
+        String[] lines = new String(errStream.toByteArray(), StandardCharsets.UTF_8).trim().split("\n");
+        String last = lines[lines.length - 1];
+        assertTrue(last, last.startsWith("Counted "));
+        assertTrue(last, last.contains("(100.0%), 3 of 3 files, 30000 records"));
+
+        List<String> metrics = Files.readAllLines(metricsFile.toPath(), StandardCharsets.UTF_8);
+        assertTrue(metrics.contains("# TYPE avrocount_records_total counter"));
+        assertTrue(metrics.contains("avrocount_records_total 30000"));
+        assertTrue(metrics.contains("avrocount_files_finished_total 3"));
+        assertTrue(metrics.contains("avrocount_bytes_listed_total " + length));
+        assertTrue(metrics.contains("avrocount_bytes_processed_total " + length));
+    }
+
+    @Test
+    public void testCountFromObjectStore() throws Exception {
+        File root = testFolder.newFolder(testName.getMethodName());
+        File data = new File(root, "bucket/data/dt=2026-10-17");
+        assertTrue(data.mkdirs());
+        File large = intRecordGenerator(getClass(), CodecFactory.nullCodec()).withSyncInterval(256 * 1024)
+                .createAvroFile("large.avro", 1000000, data.getParentFile());
+        intRecordGenerator(getClass(), CodecFactory.snappyCodec()).withSyncInterval(1000)
+                .createAvroFile("small.avro", 10000, data);
+        intRecordGenerator(getClass(), CodecFactory.nullCodec())
+                .createAvroFile("_hidden.avro", 1000, data);
+
+        try (S3StubServer s3 = new S3StubServer(root)) {
+            String endpoint = "--s3Endpoint=" + s3.getEndpoint();
+            assertEquals("1000000", count("s3://bucket/data", endpoint, "--rangeSize=1024"));
+            assertEquals("1010000", count("s3://bucket/data/", "-r", endpoint, "--rangeSize=1024", "--requestsInFlight=2"));
+            // only the block headers are transferred, not the blocks of the large file
+            assertTrue(String.valueOf(s3.getBytesServed()), s3.getBytesServed() < large.length() / 10);
+
+            // verifying fetches the data of every block, with many ranges in flight
+            long served = s3.getBytesServed();
+            assertEquals("1000000", count("s3://bucket/data/large.avro", endpoint, "--verify", "--rangeSize=4096",
+                    "--requestsInFlight=16", "--noIndex"));
+            assertTrue(s3.getBytesServed() - served >= large.length() - 4096);
+
+            // indexes are written next to the objects and used by later counts
+            count("index", "s3://bucket/data/large.avro", endpoint);
+            File index = new File(data.getParentFile(), "large.avro.idx");
+            assertTrue(index.isFile());
+            served = s3.getBytesServed();
+            assertEquals("1000000", count("s3://bucket/data/large.avro", endpoint));
+            assertEquals(served + index.length(), s3.getBytesServed());
+
+            try {
+                count("s3://bucket/missing.avro", endpoint);
+                fail("Should raise an exception if an object does not exist");
+            } catch (Exception e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("does not exist"));
+            }
+        }
+    }
+
+    @Test
+    public void testWatchFolder() throws Exception {
+        File folder = testFolder.newFolder(testName.getMethodName());
+        AvroDataFileGenerator generator = intRecordGenerator(getClass(), CodecFactory.nullCodec());
+        File existing = generator.createAvroFile("a.avro", 1000, folder);
+        assertTrue(existing.setLastModified(System.currentTimeMillis() - 60000));
+
+        ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+        AtomicInteger returnCode = new AtomicInteger(-1);
+        Thread watcher = new Thread(() -> {
+            try {
+                returnCode.set(new AvroCountTool().run(
+                        System.in,
+                        new PrintStream(outStream, true, StandardCharsets.UTF_8.toString()),
+                        System.err,
+                        Arrays.asList(folder.getAbsolutePath(), "--watch", "--watchInterval=0.2", "--format=json")
+                ));
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        watcher.start();
+        try {
+            ObjectMapper mapper = new ObjectMapper();
+            JsonNode update = mapper.readTree(awaitLine(outStream, 1));
+            assertEquals(1, update.get("files").size());
+            assertEquals(1000, update.get("summary").get("records").asLong());
+
+            // only the new file is counted, hidden and other files are ignored
+            generator.createAvroFile("_in_progress.avro", 10, folder);
+            Files.write(new File(folder, "notes.txt").toPath(), "notes".getBytes(StandardCharsets.UTF_8));
+            generator.createAvroFile("b.avro", 2000, folder);
+            update = mapper.readTree(awaitLine(outStream, 2));
+            assertEquals(1, update.get("files").size());
+            assertTrue(update.get("files").get(0).get("path").asText().endsWith("b.avro"));
+            assertEquals(2, update.get("summary").get("files").asLong());
+            assertEquals(3000, update.get("summary").get("records").asLong());
+
+            // a file which is appended to replaces its previous count
+            generator.appendToAvroFile(existing, 500);
+            update = mapper.readTree(awaitLine(outStream, 3));
+            assertEquals(1500, update.get("files").get(0).get("records").asLong());
+            assertEquals(2, update.get("summary").get("files").asLong());
+            assertEquals(3500, update.get("summary").get("records").asLong());
+        } finally {
+            watcher.interrupt();
+            watcher.join(10000);
+        }
+        assertEquals(0, returnCode.get());
+    }
+
+    /**
+     * @return the given line of the output, once it has been written completely
+     */
+    private static String awaitLine(ByteArrayOutputStream outStream, int line) throws Exception {
+        long deadline = System.currentTimeMillis() + 20000;
+        while (System.currentTimeMillis() < deadline) {
+            String[] lines = new String(outStream.toByteArray(), StandardCharsets.UTF_8).split("\n", -1);
+            if (lines.length > line) {
+                return lines[line - 1];
+            }
+            Thread.sleep(50);
+        }
+        throw new AssertionError(String.format("No line %s in %s", line, outStream.toString("UTF-8")));
+    }
+
+    @Test
+    public void testCountFromMetadata() throws Exception {
+        File folder = testFolder.newFolder(testName.getMethodName());
+        AvroDataFileGenerator generator = intRecordGenerator(getClass(), CodecFactory.nullCodec()).withSyncInterval(1000);
+        File stated = generator.withMeta("record.count", "1000").createAvroFile("a.avro", 1000, folder);
+        generator.withMeta("record.count", "1999").createAvroFile("b.avro", 2000, folder);
+        generator.withMeta("record.count", "many").createAvroFile("c.avro", 300, folder);
+        generator.createAvroFile("d.avro", 200, folder);
+
+        assertEquals("3500", count(folder.getAbsolutePath()));
+        // the count of b.avro is taken from its wrong metadata, c.avro and d.avro are counted
+        assertEquals("3499", count(folder.getAbsolutePath(), "--metadataCount=record.count"));
+
+        JsonNode report = new ObjectMapper().readTree(count(folder.getAbsolutePath(), "--metadataCount=record.count",
+                "--format=json"));
+        for (JsonNode file : report.get("files")) {
+            boolean fromMetadata = file.get("path").asText().endsWith("a.avro") || file.get("path").asText().endsWith("b.avro");
+            assertEquals(fromMetadata, file.get("fromMetadata").asBoolean());
+            // the blocks of files counted from their metadata are neither read nor counted
+            assertEquals(fromMetadata, file.get("blocks").asLong() == 0);
+            assertTrue(file.get("metadataRecords").isNull());
+        }
+
+        // checking every file counts the blocks of all of them and reports the mismatch
+        ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+        ByteArrayOutputStream errStream = new ByteArrayOutputStream();
+        int returnCode = new AvroCountTool().run(
+                System.in,
+                new PrintStream(outStream, true, StandardCharsets.UTF_8.toString()),
+                new PrintStream(errStream, true, StandardCharsets.UTF_8.toString()),
+                Arrays.asList(folder.getAbsolutePath(), "--metadataCount=record.count", "--verifyMetadata=1")
+        );
+        assertEquals(0, returnCode);
+        assertEquals("3500", new String(outStream.toByteArray(), StandardCharsets.UTF_8).trim());
+        String err = new String(errStream.toByteArray(), StandardCharsets.UTF_8);
+        assertTrue(err, err.contains("b.avro: the metadata states 1999 records, its blocks contain 2000"));
+        assertTrue(err, err.contains("Verified the count in the metadata of 2 files, 1 did not match their blocks"));
+
+        // only the header of files with a count in their metadata is read
+        try (RandomAccessFile raf = new RandomAccessFile(stated, "rw")) {
+            raf.seek(headerLength(stated));
+            raf.write(new byte[(int) raf.length() - headerLength(stated)]);
+        }
+        assertEquals("1000", count(stated.getAbsolutePath(), "--metadataCount=record.count"));
+
+        for (String[] args : Arrays.asList(
+                new String[]{"--verifyMetadata=0.5"},
+                new String[]{"--metadataCount=record.count", "--verifyMetadata=2"},
+                new String[]{"--metadataCount=record.count", "--verify"},
+                new String[]{"--metadataCount=record.count", "--estimate"})) {
+            List<String> arguments = new ArrayList<>(Arrays.asList(args));
+            arguments.add(folder.getAbsolutePath());
+            assertEquals(1, new AvroCountTool().run(
+                    System.in,
+                    System.out,
+                    new PrintStream(new ByteArrayOutputStream(), true, StandardCharsets.UTF_8.toString()),
+                    arguments
+            ));
+        }
+    }
+
+    @Test
+    public void testRejectInvalidPredicate() throws Exception {
+        File avroFile = intRecordGenerator(getClass(), CodecFactory.nullCodec())
+                .createAvroFile(String.format("%s.avro", testName.getMethodName()), 1);
+
+        int returnCode = new AvroCountTool().run(
+                System.in,
+                System.out,
+                new PrintStream(new ByteArrayOutputStream(), true, StandardCharsets.UTF_8.toString()),
+                Arrays.asList(avroFile.getAbsolutePath(), "--where", "value <")
+        );
+        assertEquals(1, returnCode);
+
+        try {
+            count(avroFile.getAbsolutePath(), "--where", "value = 'a'");
+            fail("Should raise an exception if the predicate cannot be applied to the schema of a file");
+        } catch (Exception e) {
+            assertTrue(e.getMessage().contains("Cannot compare field value of type int with 'a'"));
+        }
+    }
+
+    @Test
+    public void testIgnoreHiddenFilesInFolder() throws Exception {
+        File folder = createPartitionedFolder();
+        intRecordGenerator(getClass(), CodecFactory.nullCodec())
+                .createAvroFile("_hidden.avro", 1000, new File(folder, "dt=2026-10-17"));
+        File temporary = new File(folder, "_temporary");
+        assertTrue(temporary.mkdir());
+        intRecordGenerator(getClass(), CodecFactory.nullCodec())
+                .createAvroFile("in_progress.avro", 1000, temporary);
+
+        assertEquals("6000", count(folder.getAbsolutePath(), "--recursive"));
+    }
+
+    private File createPartitionedFolder() throws Exception {
+        AvroDataFileGenerator generator = intRecordGenerator(getClass(), CodecFactory.nullCodec());
+        File folder = testFolder.newFolder(testName.getMethodName());
+
+        for (String day : Arrays.asList("2026-10-17", "2026-10-18")) {
+            for (String hour : Arrays.asList("01", "02", "03")) {
+                File partition = new File(folder, String.format("dt=%s/hr=%s", day, hour));
+                assertTrue(partition.mkdirs());
+                generator.createAvroFile("part-0.avro", 1000, partition);
+            }
+        }
+
+        return folder;
+    }
+
+    private String count(String... args) throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        int returnCode = new AvroCountTool().run(
+                System.in,
+                new PrintStream(outputStream, true, StandardCharsets.UTF_8.toString()),
+                System.err,
+                Arrays.asList(args)
+        );
+
+        assertEquals(0, returnCode);
+        return new String(outputStream.toByteArray(), StandardCharsets.UTF_8).trim();
+    }
+
+    @Test
+    public void testCachedCountIsUsedForUnchangedFile() throws Exception {
+        File avroFile = intRecordGenerator(getClass(), CodecFactory.nullCodec())
+                .createAvroFile(String.format("%s.avro", testName.getMethodName()), 1000);
+        File cacheFile = new File(testFolder.getRoot(), "count.cache");
+
+        assertEquals("1000", count(avroFile.getAbsolutePath(), "--cache", cacheFile.getAbsolutePath()));
+        assertTrue(cacheFile.exists());
+
+        // corrupt the file without changing its length or modification time, only the cache can answer now
+        long modificationTime = avroFile.lastModified();
+        try (RandomAccessFile raf = new RandomAccessFile(avroFile, "rw")) {
+            raf.write(new byte[(int) raf.length()]);
+        }
+        assertTrue(avroFile.setLastModified(modificationTime));
+
+        assertEquals("1000", count(avroFile.getAbsolutePath(), "--cache", cacheFile.getAbsolutePath()));
+    }
+
+    @Test
+    public void testCachedCountIsNotUsedForChangedFile() throws Exception {
+        AvroDataFileGenerator generator = intRecordGenerator(getClass(), CodecFactory.nullCodec());
+        File avroFile = generator.createAvroFile(String.format("%s.avro", testName.getMethodName()), 1000);
+        File cacheFile = new File(testFolder.getRoot(), "count.cache");
+
+        assertEquals("1000", count(avroFile.getAbsolutePath(), "--cache", cacheFile.getAbsolutePath()));
+
+        generator.createAvroFile(String.format("%s.avro", testName.getMethodName()), 2000);
+        assertTrue(avroFile.setLastModified(avroFile.lastModified() + 1000));
+
+        assertEquals("2000", count(avroFile.getAbsolutePath(), "--cache", cacheFile.getAbsolutePath()));
+    }
+
+    @Test
+    public void testResumeCountingAppendedFile() throws Exception {
+        AvroDataFileGenerator generator = intRecordGenerator(getClass(), CodecFactory.nullCodec()).withSyncInterval(64);
+        File avroFile = generator.createAvroFile(String.format("%s.avro", testName.getMethodName()), 3000);
+        File cacheFile = new File(testFolder.getRoot(), "count.cache");
+
+        assertEquals("3000", count(avroFile.getAbsolutePath(), "--cache", cacheFile.getAbsolutePath(), "--resume"));
+
+        generator.appendToAvroFile(avroFile, 1000);
+
+        // break the first block, which must not be read again when resuming
+        byte[] content = Files.readAllBytes(avroFile.toPath());
+        byte[] sync = Arrays.copyOfRange(content, headerLength(avroFile) - 16, headerLength(avroFile));
+        int firstBlockSync = indexOf(content, sync, headerLength(avroFile));
+        try (RandomAccessFile raf = new RandomAccessFile(avroFile, "rw")) {
+            raf.seek(firstBlockSync);
+            raf.write(~sync[0]);
+        }
+        assertTrue(avroFile.setLastModified(avroFile.lastModified() + 1000));
+
+        assertEquals("4000", count(avroFile.getAbsolutePath(), "--cache", cacheFile.getAbsolutePath(), "--resume"));
+    }
+
+    @Test
+    public void testResumeCountsRewrittenFileFromStart() throws Exception {
+        AvroDataFileGenerator generator = intRecordGenerator(getClass(), CodecFactory.nullCodec()).withSyncInterval(64);
+        File avroFile = generator.createAvroFile(String.format("%s.avro", testName.getMethodName()), 1000);
+        File cacheFile = new File(testFolder.getRoot(), "count.cache");
+
+        assertEquals("1000", count(avroFile.getAbsolutePath(), "--cache", cacheFile.getAbsolutePath(), "--resume"));
+
+        generator.createAvroFile(String.format("%s.avro", testName.getMethodName()), 2000);
+        assertTrue(avroFile.setLastModified(avroFile.lastModified() + 1000));
+
+        assertEquals("2000", count(avroFile.getAbsolutePath(), "--cache", cacheFile.getAbsolutePath(), "--resume"));
+    }
+
+    @Test
+    public void testResumeIgnoresTruncatedLastBlock() throws Exception {
+        AvroDataFileGenerator generator = intRecordGenerator(getClass(), CodecFactory.nullCodec());
+        File avroFile = generator.createAvroFile(String.format("%s.avro", testName.getMethodName()), 1000);
+        File cacheFile = new File(testFolder.getRoot(), "count.cache");
+        generator.appendToAvroFile(avroFile, 1000);
+        byte[] content = Files.readAllBytes(avroFile.toPath());
+
+        // simulate a writer which has not completely flushed the last block yet
+        Files.write(avroFile.toPath(), Arrays.copyOf(content, content.length - 20));
+        assertEquals("1000", count(avroFile.getAbsolutePath(), "--cache", cacheFile.getAbsolutePath(), "--resume"));
+
+        Files.write(avroFile.toPath(), content);
+        assertTrue(avroFile.setLastModified(avroFile.lastModified() + 1000));
+        assertEquals("2000", count(avroFile.getAbsolutePath(), "--cache", cacheFile.getAbsolutePath(), "--resume"));
+    }
+
+    @Test
+    public void testIndexIsUsedForUnchangedFile() throws Exception {
+        File avroFile = intRecordGenerator(getClass(), CodecFactory.nullCodec())
+                .createAvroFile(String.format("%s.avro", testName.getMethodName()), 1000);
+        File indexFile = new File(avroFile.getPath() + BlockIndex.SUFFIX);
+
+        assertEquals("1000", count("index", avroFile.getAbsolutePath()));
+        assertTrue(indexFile.exists());
+
+        // corrupt the file without changing its length or modification time, only the index can answer now
+        long modificationTime = avroFile.lastModified();
+        try (RandomAccessFile raf = new RandomAccessFile(avroFile, "rw")) {
+            raf.write(new byte[(int) raf.length()]);
+        }
+        assertTrue(avroFile.setLastModified(modificationTime));
+
+        JsonNode file = new ObjectMapper()
+                .readTree(count(avroFile.getAbsolutePath(), "--format=json"))
+                .get("files").get(0);
+        assertEquals(1000, file.get("records").asLong());
+        assertTrue(file.get("indexed").asBoolean());
+        assertEquals(0, file.get("bytesRead").asLong());
+    }
+
+    @Test
+    public void testIndexIsNotUsedForChangedFile() throws Exception {
+        AvroDataFileGenerator generator = intRecordGenerator(getClass(), CodecFactory.nullCodec());
+        File avroFile = generator.createAvroFile(String.format("%s.avro", testName.getMethodName()), 1000);
+
+        assertEquals("1000", count("index", avroFile.getAbsolutePath()));
+
+        generator.createAvroFile(String.format("%s.avro", testName.getMethodName()), 2000);
+        assertTrue(avroFile.setLastModified(avroFile.lastModified() + 1000));
+
+        assertEquals("2000", count(avroFile.getAbsolutePath()));
+        assertEquals("2000", count("index", avroFile.getAbsolutePath()));
+        assertEquals("2000", count(avroFile.getAbsolutePath()));
+    }
+
+    @Test
+    public void testIndexHoldsAllBlocksOfSplitFile() throws Exception {
+        File avroFile = intRecordGenerator(getClass(), CodecFactory.snappyCodec())
+                .withSyncInterval(256)
+                .createAvroFile(String.format("%s.avro", testName.getMethodName()), 20000);
+
+        assertEquals("20000", count("index", "--splitSize=4096", avroFile.getAbsolutePath()));
+
+        BlockIndex index;
+        try (InputStream in = new FileInputStream(avroFile.getPath() + BlockIndex.SUFFIX)) {
+            index = BlockIndex.read(in);
+        }
+        assertTrue(index.getHeader().isValidFor(avroFile.length(), avroFile.lastModified()));
+        assertEquals(20000, index.getHeader().getRecords());
+        assertEquals(countBlocks(avroFile), index.getBlocks());
+
+        try (SeekableBlockReader reader = new MappedSkipDataFileReader(avroFile)) {
+            for (int block = 0; block < index.getBlocks(); block++) {
+                reader.seek(index.getOffset(block));
+                assertTrue(reader.hasNextBlock());
+                reader.nextBlock();
+                assertEquals(index.getRecords(block), reader.getBlockCount());
+                assertEquals(index.getSize(block), reader.getBlockSize());
+                assertEquals(block, index.findBlock(index.getFirstRecord(block)));
+            }
+        }
+        assertEquals(index.getBlocks() - 1, index.findBlock(19999));
+    }
+
+    @Test
+    public void testSkipCorruptBlocks() throws Exception {
+        File avroFile = intRecordGenerator(getClass(), CodecFactory.nullCodec())
+                .withSyncInterval(64)
+                .createAvroFile(String.format("%s.avro", testName.getMethodName()), 10000);
+        List<Long> blockCounts = new ArrayList<>();
+        try (CountableSkipDataFileStream reader = new CountableSkipDataFileStream(new FileInputStream(avroFile))) {
+            while (reader.hasNextBlock()) {
+                reader.nextBlock();
+                blockCounts.add(reader.getBlockCount());
+            }
+        }
+
+        // break the sync marker of the fifth block, which loses the fifth and the sixth block
+        byte[] content = Files.readAllBytes(avroFile.toPath());
+        byte[] sync = Arrays.copyOfRange(content, headerLength(avroFile) - 16, headerLength(avroFile));
+        int[] syncs = new int[7];
+        syncs[0] = headerLength(avroFile) - 16;
+        for (int i = 1; i < syncs.length; i++) {
+            syncs[i] = indexOf(content, sync, syncs[i - 1] + 16);
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(avroFile, "rw")) {
+            raf.seek(syncs[5] + 3);
+            raf.write(~sync[3]);
+        }
+
+        try {
+            count(avroFile.getAbsolutePath());
+            fail("Should fail for a corrupt file unless corrupt blocks are skipped");
+        } catch (Exception e) {
+            assertTrue(e.getMessage().contains("Invalid sync"));
+        }
+
+        long expectedRecords = 10000 - blockCounts.get(4) - blockCounts.get(5);
+        for (String reader : Arrays.asList("--splitSize=0", "--splitSize=1000", "--noMmap")) {
+            JsonNode file = new ObjectMapper()
+                    .readTree(count(avroFile.getAbsolutePath(), "--skipCorrupt", "--format=json", reader))
+                    .get("files").get(0);
+
+            assertEquals(expectedRecords, file.get("records").asLong());
+            assertEquals(1, file.get("skippedRanges").size());
+            assertEquals(syncs[4] + 16, file.get("skippedRanges").get(0).get("start").asLong());
+            assertEquals(syncs[6], file.get("skippedRanges").get(0).get("end").asLong());
+            assertEquals(syncs[6] - syncs[4] - 16, file.get("skippedBytes").asLong());
+            assertEquals(2, file.get("estimatedLostBlocks").asLong());
+        }
+    }
+
+    @Test
+    public void testSkipCorruptBlockSizeOfLastBlock() throws Exception {
+        File avroFile = intRecordGenerator(getClass(), CodecFactory.nullCodec())
+                .withSyncInterval(64)
+                .createAvroFile(String.format("%s.avro", testName.getMethodName()), 1000);
+        long lastBlockCount = 0L;
+        try (CountableSkipDataFileStream reader = new CountableSkipDataFileStream(new FileInputStream(avroFile))) {
+            while (reader.hasNextBlock()) {
+                reader.nextBlock();
+                lastBlockCount = reader.getBlockCount();
+            }
+        }
+
+        // let the last block claim a size beyond the end of the file, there is no sync marker to continue at
+        byte[] content = Files.readAllBytes(avroFile.toPath());
+        byte[] sync = Arrays.copyOfRange(content, headerLength(avroFile) - 16, headerLength(avroFile));
+        int lastBlockStart = headerLength(avroFile);
+        for (int i = indexOf(content, sync, lastBlockStart); i + 16 < content.length; i = indexOf(content, sync, i + 16)) {
+            lastBlockStart = i + 16;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(avroFile, "rw")) {
+            raf.seek(lastBlockStart);
+            raf.write(new byte[]{2, (byte) 0xfe, (byte) 0xff, (byte) 0xff, (byte) 0x0f});
+        }
+
+        JsonNode report = new ObjectMapper().readTree(count(avroFile.getAbsolutePath(), "--skipCorrupt", "--format=json"));
+        JsonNode file = report.get("files").get(0);
+
+        assertEquals(1000 - lastBlockCount, file.get("records").asLong());
+        assertEquals(lastBlockStart, file.get("skippedRanges").get(0).get("start").asLong());
+        assertEquals(avroFile.length(), file.get("skippedRanges").get(0).get("end").asLong());
+        assertEquals(1, report.get("summary").get("estimatedLostBlocks").asLong());
+    }
+
+    @Test
+    public void testVerifyAllCodecs() throws Exception {
+        List<CodecFactory> codecs = Arrays.asList(
+                CodecFactory.nullCodec(),
+                CodecFactory.deflateCodec(CodecFactory.DEFAULT_DEFLATE_LEVEL),
+                CodecFactory.snappyCodec(),
+                CodecFactory.bzip2Codec(),
+                CodecFactory.xzCodec(CodecFactory.DEFAULT_XZ_LEVEL),
+                CodecFactory.zstandardCodec(CodecFactory.DEFAULT_ZSTANDARD_LEVEL)
+        );
+        for (int i = 0; i < codecs.size(); i++) {
+            File avroFile = intRecordGenerator(getClass(), codecs.get(i))
+                    .withSyncInterval(1000)
+                    .createAvroFile(String.format("%s-%s.avro", testName.getMethodName(), i), 10000);
+            long blocks = countBlocks(avroFile);
+
+            for (String reader : Arrays.asList("--splitSize=0", "--splitSize=1000", "--noMmap")) {
+                JsonNode summary = new ObjectMapper()
+                        .readTree(count(avroFile.getAbsolutePath(), "--verify", "--format=json", reader))
+                        .get("summary");
+
+                assertEquals(10000, summary.get("records").asLong());
+                assertEquals(blocks, summary.get("verifiedBlocks").asLong());
+            }
+        }
+    }
+
+    @Test
+    public void testVerifyStdin() throws Exception {
+        File avroFile = intRecordGenerator(getClass(), CodecFactory.snappyCodec())
+                .withSyncInterval(1000)
+                .createAvroFile(String.format("%s.avro", testName.getMethodName()), 10000);
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (InputStream stdin = new FileInputStream(avroFile)) {
+            int returnCode = new AvroCountTool().run(
+                    stdin,
+                    new PrintStream(outputStream, true, StandardCharsets.UTF_8.toString()),
+                    System.err,
+                    Arrays.asList("-", "--verify", "--format=json")
+            );
+            assertEquals(0, returnCode);
+        }
+
+        JsonNode summary = new ObjectMapper().readTree(outputStream.toByteArray()).get("summary");
+        assertEquals(10000, summary.get("records").asLong());
+        assertEquals(countBlocks(avroFile), summary.get("verifiedBlocks").asLong());
+    }
+
+    @Test
+    public void testVerifyDetectsSnappyChecksumMismatch() throws Exception {
+        File avroFile = intRecordGenerator(getClass(), CodecFactory.snappyCodec())
+                .withSyncInterval(1000)
+                .createAvroFile(String.format("%s.avro", testName.getMethodName()), 10000);
+
+        // the checksum is stored in the last four bytes of a block, right before its sync marker
+        byte[] content = Files.readAllBytes(avroFile.toPath());
+        byte[] sync = Arrays.copyOfRange(content, headerLength(avroFile) - 16, headerLength(avroFile));
+        int firstBlockSync = indexOf(content, sync, headerLength(avroFile));
+        try (RandomAccessFile raf = new RandomAccessFile(avroFile, "rw")) {
+            raf.seek(firstBlockSync - 1);
+            raf.write(~content[firstBlockSync - 1]);
+        }
+
+        assertEquals("10000", count(avroFile.getAbsolutePath()));
+        try {
+            count(avroFile.getAbsolutePath(), "--verify");
+            fail("Should fail for a block with an invalid checksum");
+        } catch (Exception e) {
+            assertTrue(e.getMessage().contains("checksum mismatch"));
+        }
+    }
+
+    @Test
+    public void testVerifyDetectsWrongRecordCount() throws Exception {
+        File avroFile = intRecordGenerator(getClass(), CodecFactory.deflateCodec(CodecFactory.DEFAULT_DEFLATE_LEVEL))
+                .withSyncInterval(1000)
+                .createAvroFile(String.format("%s.avro", testName.getMethodName()), 10000);
+
+        // state one record less in the header of the first block, without changing the size of the header
+        long blockCount;
+        try (CountableSkipDataFileStream reader = new CountableSkipDataFileStream(new FileInputStream(avroFile))) {
+            assertTrue(reader.hasNextBlock());
+            blockCount = reader.getBlockCount();
+        }
+        byte[] header = encodeLong(blockCount);
+        byte[] corrupt = encodeLong(blockCount - 1);
+        assertEquals(header.length, corrupt.length);
+        try (RandomAccessFile raf = new RandomAccessFile(avroFile, "rw")) {
+            raf.seek(headerLength(avroFile));
+            raf.write(corrupt);
+        }
+
+        assertEquals("9999", count(avroFile.getAbsolutePath()));
+        try {
+            count(avroFile.getAbsolutePath(), "--verify");
+            fail("Should fail for a block which holds more records than stated");
+        } catch (Exception e) {
+            assertTrue(e.getMessage().contains(String.format("Block holds more data than %s records", blockCount - 1)));
+        }
+    }
+
+    @Test
+    public void testEstimateFromSampledBlocks() throws Exception {
+        File avroFile = intRecordGenerator(getClass(), CodecFactory.snappyCodec())
+                .withSyncInterval(1000)
+                .createAvroFile(String.format("%s.avro", testName.getMethodName()), 200000);
+        long blocks = countBlocks(avroFile);
+
+        // the samples depend on the temporary path, at 2% sampling never has to read half of the file
+        JsonNode file = new ObjectMapper()
+                .readTree(count(avroFile.getAbsolutePath(), "--estimate", "--targetError=0.02", "--seed=42", "--format=json"))
+                .get("files").get(0);
+
+        assertTrue(file.get("estimated").asBoolean());
+        long records = file.get("records").asLong();
+        assertTrue(String.format("Estimate %s is too far off", records), Math.abs(records - 200000) < 200000 * 0.05);
+        assertTrue(file.get("recordsLowerBound").asLong() <= records);
+        assertTrue(file.get("recordsUpperBound").asLong() >= records);
+        assertTrue(file.get("sampledBlocks").asLong() < blocks / 2);
+        assertTrue(file.get("bytesRead").asLong() < avroFile.length() / 2);
+        // the same seed samples the same blocks
+        assertEquals(String.valueOf(records), count(avroFile.getAbsolutePath(), "--estimate", "--targetError=0.02", "--seed=42"));
+
+        // the block statistics are taken from the sampled blocks
+        JsonNode exact = new ObjectMapper().readTree(count(avroFile.getAbsolutePath(), "--format=json"))
+                .get("files").get(0);
+        assertTrue(file.get("minBlockSize").asLong() >= exact.get("minBlockSize").asLong());
+        assertTrue(file.get("maxBlockSize").asLong() <= exact.get("maxBlockSize").asLong());
+        assertTrue(file.get("minBlockSize").asLong() <= file.get("maxBlockSize").asLong());
+        double averageBlockSize = exact.get("avgBlockSize").asDouble();
+        assertTrue(Math.abs(file.get("avgBlockSize").asDouble() - averageBlockSize) < averageBlockSize * 0.05);
+    }
+
+    @Test
+    public void testEstimateCountsSmallFilesExactly() throws Exception {
+        File avroFile = intRecordGenerator(getClass(), CodecFactory.nullCodec())
+                .createAvroFile(String.format("%s.avro", testName.getMethodName()), 1000);
+
+        JsonNode file = new ObjectMapper()
+                .readTree(count(avroFile.getAbsolutePath(), "--estimate", "--format=json"))
+                .get("files").get(0);
+
+        assertFalse(file.get("estimated").asBoolean());
+        assertEquals(1000, file.get("records").asLong());
+        assertEquals(1000, file.get("recordsLowerBound").asLong());
+        assertEquals(1000, file.get("recordsUpperBound").asLong());
+    }
+
+    @Test
+    public void testRejectEstimateWithVerify() throws Exception {
+        File avroFile = intRecordGenerator(getClass(), CodecFactory.nullCodec())
+                .createAvroFile(String.format("%s.avro", testName.getMethodName()), 1);
+
+        ByteArrayOutputStream errorStream = new ByteArrayOutputStream();
+        int returnCode = new AvroCountTool().run(
+                System.in,
+                System.out,
+                new PrintStream(errorStream, true, StandardCharsets.UTF_8.toString()),
+                Arrays.asList(avroFile.getAbsolutePath(), "--estimate", "--verify")
+        );
+
+        assertEquals(1, returnCode);
+        // the conflict is reported by the counter, followed by the help
+        String err = new String(errorStream.toByteArray(), StandardCharsets.UTF_8);
+        assertTrue(err, err.startsWith("Verifying blocks requires exact counts" + System.lineSeparator()));
+    }
+
+    private static byte[] encodeLong(long value) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long n = (value << 1) ^ (value >> 63);
+        while ((n & ~0x7FL) != 0) {
+            out.write((int) ((n & 0x7f) | 0x80));
+            n >>>= 7;
+        }
+        out.write((int) n);
+        return out.toByteArray();
+    }
+
+    private static int headerLength(File avroFile) throws Exception {
+        try (DataFileReader<Object> reader = new DataFileReader<>(avroFile, new GenericDatumReader<>())) {
+            reader.sync(0);
+            return (int) reader.previousSync();
+        }
+    }
+
+    private static long countBlocks(File avroFile) throws Exception {
+        long blocks = 0L;
+        try (CountableSkipDataFileStream reader = new CountableSkipDataFileStream(new FileInputStream(avroFile))) {
+            while (reader.hasNextBlock()) {
+                reader.nextBlock();
+                blocks++;
+            }
+        }
+        return blocks;
+    }
+
+    private static int indexOf(byte[] content, byte[] pattern, int from) {
+        outer:
+        for (int i = from; i <= content.length - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (content[i + j] != pattern[j]) continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+
     @Test
     public void testIgnoreNonAvroSuffixedFile() throws Exception {
         File someFile = FileTestUtil.createNewFile(getClass(), "not_an_avro.file");
@@ -172,6 +1138,94 @@ public class AvroCountToolTest {
         assertEquals("10000", new String(outputStream.toByteArray(), StandardCharsets.UTF_8).trim());
     }
 
+    @Test
+    public void testJsonReport() throws Exception {
+        File folder = testFolder.newFolder(testName.getMethodName());
+        File snappyFile = intRecordGenerator(getClass(), CodecFactory.snappyCodec())
+                .withSyncInterval(1000)
+                .createAvroFile("snappy.avro", 10000, folder);
+        File nullFile = intRecordGenerator(getClass(), CodecFactory.nullCodec())
+                .createAvroFile("null.avro", 500, folder);
+
+        JsonNode report = new ObjectMapper().readTree(count(folder.getAbsolutePath(), "--format=json"));
+
+        JsonNode files = report.get("files");
+        assertEquals(2, files.size());
+        for (JsonNode file : files) {
+            File avroFile = file.get("path").asText().endsWith("snappy.avro") ? snappyFile : nullFile;
+            assertEquals(avroFile.length(), file.get("length").asLong());
+            assertTrue(file.get("bytesRead").asLong() > 0);
+            assertTrue(file.get("bytesRead").asLong() <= avroFile.length());
+            assertTrue(file.get("minBlockSize").asLong() <= file.get("avgBlockSize").asDouble());
+            assertTrue(file.get("avgBlockSize").asDouble() <= file.get("maxBlockSize").asLong());
+            assertTrue(file.get("elapsedMillis").isNumber());
+            assertFalse(file.get("cached").asBoolean());
+            if (avroFile == snappyFile) {
+                assertEquals(10000, file.get("records").asLong());
+                assertTrue(file.get("blocks").asLong() > 1);
+                assertEquals("snappy", file.get("codec").asText());
+            } else {
+                assertEquals(500, file.get("records").asLong());
+                assertEquals("null", file.get("codec").asText());
+            }
+        }
+
+        JsonNode summary = report.get("summary");
+        assertEquals(2, summary.get("files").asInt());
+        assertEquals(10500, summary.get("records").asLong());
+        assertEquals(snappyFile.length() + nullFile.length(), summary.get("length").asLong());
+        assertEquals("mixed", summary.get("codec").asText());
+    }
+
+    @Test
+    public void testJsonReportOfSplitFile() throws Exception {
+        File avroFile = intRecordGenerator(getClass(), CodecFactory.nullCodec())
+                .withSyncInterval(1000)
+                .createAvroFile(String.format("%s.avro", testName.getMethodName()), 10000);
+        long blocks = countBlocks(avroFile);
+
+        JsonNode report = new ObjectMapper().readTree(count(avroFile.getAbsolutePath(), "--format=json", "--splitSize=1000"));
+
+        assertEquals(1, report.get("files").size());
+        JsonNode file = report.get("files").get(0);
+        assertEquals(10000, file.get("records").asLong());
+        assertEquals(blocks, file.get("blocks").asLong());
+        assertEquals(avroFile.length(), file.get("length").asLong());
+    }
+
+    @Test
+    public void testCsvReport() throws Exception {
+        File folder = testFolder.newFolder(testName.getMethodName());
+        File cacheFile = new File(testFolder.getRoot(), testName.getMethodName() + ".cache");
+        File avroFile = intRecordGenerator(getClass(), CodecFactory.deflateCodec(1))
+                .createAvroFile("some,file.avro", 1000, folder);
+
+        count(folder.getAbsolutePath(), "--cache=" + cacheFile.getAbsolutePath());
+        String[] lines = count(folder.getAbsolutePath(), "--cache=" + cacheFile.getAbsolutePath(), "--format=csv").split("\n");
+
+        assertEquals(3, lines.length);
+        assertTrue(lines[0].startsWith("type,path,records,blocks,bytesRead,length,"));
+        assertTrue(lines[1].startsWith("file,\""));
+        assertTrue(lines[1].contains(String.format("%s\",1000,", avroFile.getName())));
+        assertTrue(lines[1], lines[1].endsWith(",true,false,false,,,,false,1000,1000,0,0,,0,0,0,"));
+        assertTrue(lines[2].startsWith("summary,,1000,"));
+    }
+
+    @Test
+    public void testRejectUnknownFormat() throws Exception {
+        File avroFile = intRecordGenerator(getClass(), CodecFactory.nullCodec())
+                .createAvroFile(String.format("%s.avro", testName.getMethodName()), 1);
+
+        int returnCode = new AvroCountTool().run(
+                System.in,
+                System.out,
+                new PrintStream(new ByteArrayOutputStream(), true, StandardCharsets.UTF_8.toString()),
+                Arrays.asList(avroFile.getAbsolutePath(), "--format=xml")
+        );
+
+        assertEquals(1, returnCode);
+    }
+
     @Test
     public void testRaiseExceptionIfFileIsNotAvro() throws Exception {
         File someFile = FileTestUtil.createNewFile(getClass(), "not_an_avro.avro");
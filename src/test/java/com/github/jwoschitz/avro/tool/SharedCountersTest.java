@@ -0,0 +1,55 @@
+package com.github.jwoschitz.avro.tool;
+
+import com.github.jwoschitz.avro.count.AvroCounter;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class SharedCountersTest {
+
+    @Test
+    public void testCountersAreSharedPerConfiguration() {
+        List<Object> exact = Collections.singletonList("exact");
+        List<Object> estimate = Collections.singletonList("estimate");
+        try (SharedCounters counters = new SharedCounters(1)) {
+            AvroCounter first = counters.acquire(exact, AvroCounter.builder());
+            assertSame(first, counters.acquire(Arrays.asList("exact"), AvroCounter.builder()));
+            AvroCounter other = counters.acquire(estimate, AvroCounter.builder().estimate(0.01));
+            assertNotSame(first, other);
+
+            // both are idle afterwards, only the most recently used one is kept
+            counters.release(exact);
+            counters.release(exact);
+            counters.release(estimate);
+            assertSame(other, counters.acquire(estimate, AvroCounter.builder().estimate(0.01)));
+            assertNotSame(first, counters.acquire(exact, AvroCounter.builder()));
+        }
+    }
+
+    @Test
+    public void testInvalidConfigurationIsNotShared() {
+        List<Object> key = Collections.singletonList("resume");
+        try (SharedCounters counters = new SharedCounters(1)) {
+            for (int i = 0; i < 2; i++) {
+                try {
+                    counters.acquire(key, AvroCounter.builder().resume(true));
+                    fail("Resumed without a cache");
+                } catch (IllegalArgumentException e) {
+                    // expected
+                }
+            }
+            try {
+                counters.release(key);
+                fail("Released an unused counter");
+            } catch (IllegalStateException e) {
+                // expected
+            }
+        }
+    }
+}
@@ -8,6 +8,9 @@ import org.apache.avro.generic.GenericRecord;
 import org.apache.avro.generic.GenericRecordBuilder;
 
 import java.io.File;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.function.BiFunction;
 
 public class AvroDataFileGenerator {
@@ -15,12 +18,37 @@ public class AvroDataFileGenerator {
     private final CodecFactory codecFactory;
     private final BiFunction<Schema, Long, GenericRecord> recordCreatorFn;
     private final Class testClass;
+    private final int syncInterval;
+    private final Map<String, String> meta;
 
     public AvroDataFileGenerator(Class testClass, Schema schema, BiFunction<Schema, Long, GenericRecord> recordCreatorFn, CodecFactory codecFactory) {
+        this(testClass, schema, recordCreatorFn, codecFactory, -1);
+    }
+
+    public AvroDataFileGenerator(Class testClass, Schema schema, BiFunction<Schema, Long, GenericRecord> recordCreatorFn, CodecFactory codecFactory, int syncInterval) {
+        this(testClass, schema, recordCreatorFn, codecFactory, syncInterval, Collections.emptyMap());
+    }
+
+    private AvroDataFileGenerator(Class testClass, Schema schema, BiFunction<Schema, Long, GenericRecord> recordCreatorFn, CodecFactory codecFactory, int syncInterval, Map<String, String> meta) {
         this.schema = schema;
         this.codecFactory = codecFactory;
         this.recordCreatorFn = recordCreatorFn;
         this.testClass = testClass;
+        this.syncInterval = syncInterval;
+        this.meta = meta;
+    }
+
+    public AvroDataFileGenerator withSyncInterval(int syncInterval) {
+        return new AvroDataFileGenerator(testClass, schema, recordCreatorFn, codecFactory, syncInterval, meta);
+    }
+
+    /**
+     * @return a generator which writes the given property into the header metadata of created files
+     */
+    public AvroDataFileGenerator withMeta(String key, String value) {
+        Map<String, String> withMeta = new LinkedHashMap<>(meta);
+        withMeta.put(key, value);
+        return new AvroDataFileGenerator(testClass, schema, recordCreatorFn, codecFactory, syncInterval, withMeta);
     }
 
     public File createAvroFile(String fileName, long recordCount) throws Exception {
@@ -34,6 +62,12 @@ public class AvroDataFileGenerator {
             if (codecFactory != null) {
                 writer.setCodec(codecFactory);
             }
+            if (syncInterval > 0) {
+                writer.setSyncInterval(syncInterval);
+            }
+            for (Map.Entry<String, String> entry : meta.entrySet()) {
+                writer.setMeta(entry.getKey(), entry.getValue());
+            }
             writer.create(schema, target);
 
             for (long i = 0; i < recordCount; i++) {
@@ -44,6 +78,21 @@ public class AvroDataFileGenerator {
         return target;
     }
 
+    public File appendToAvroFile(File target, long recordCount) throws Exception {
+        try (DataFileWriter<Object> writer = new DataFileWriter<>(new GenericDatumWriter<>(schema))) {
+            if (syncInterval > 0) {
+                writer.setSyncInterval(syncInterval);
+            }
+            writer.appendTo(target);
+
+            for (long i = 0; i < recordCount; i++) {
+                writer.append(recordCreatorFn.apply(schema, i));
+            }
+        }
+
+        return target;
+    }
+
     public static AvroDataFileGenerator intRecordGenerator(Class testClass, CodecFactory codec) throws Exception {
         return new AvroDataFileGenerator(
                 testClass,
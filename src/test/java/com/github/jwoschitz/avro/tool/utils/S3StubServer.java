@@ -0,0 +1,244 @@
+package com.github.jwoschitz.avro.tool.utils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * A minimal S3-compatible server for tests, serving the directories of a local folder as buckets
+ *
+ * Supports path-style listing with prefix and delimiter (unpaged), ranged and full GETs, and PUTs. The bytes of
+ * object data sent to clients are counted, so tests can assert how much of a file has been transferred.
+ */
+public class S3StubServer implements Closeable {
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d+)");
+
+    private final File root;
+    private final HttpServer server;
+    private final AtomicLong bytesServed = new AtomicLong();
+    private final AtomicLong rangeRequests = new AtomicLong();
+
+    public S3StubServer(File root) throws IOException {
+        this.root = root;
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "s3-stub");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        server.createContext("/", exchange -> {
+            try {
+                handle(exchange);
+            } finally {
+                exchange.close();
+            }
+        });
+        server.start();
+    }
+
+    public String getEndpoint() {
+        return String.format("http://127.0.0.1:%s", server.getAddress().getPort());
+    }
+
+    /**
+     * @return the bytes of object data sent so far, not including listings and headers
+     */
+    public long getBytesServed() {
+        return bytesServed.get();
+    }
+
+    public long getRangeRequests() {
+        return rangeRequests.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath().substring(1);
+        int slash = path.indexOf('/');
+        String bucket = slash >= 0 ? path.substring(0, slash) : path;
+        String key = slash >= 0 ? path.substring(slash + 1) : "";
+        File bucketDir = new File(root, bucket);
+        if (!bucketDir.isDirectory()) {
+            error(exchange, 404, "NoSuchBucket");
+            return;
+        }
+
+        String method = exchange.getRequestMethod();
+        if (key.isEmpty() && method.equals("GET")) {
+            list(exchange, bucketDir, query(exchange.getRequestURI().getRawQuery()));
+            return;
+        }
+        File file = new File(bucketDir, key);
+        if (method.equals("PUT")) {
+            file.getParentFile().mkdirs();
+            try (InputStream in = exchange.getRequestBody()) {
+                Files.write(file.toPath(), readAll(in));
+            }
+            exchange.getResponseHeaders().set("ETag", "\"stub\"");
+            exchange.sendResponseHeaders(200, -1);
+            return;
+        }
+        if (!file.isFile()) {
+            error(exchange, 404, "NoSuchKey");
+            return;
+        }
+        exchange.getResponseHeaders().set("Last-Modified", httpDate(file.lastModified()));
+        exchange.getResponseHeaders().set("ETag", "\"stub\"");
+        if (method.equals("HEAD")) {
+            exchange.sendResponseHeaders(200, -1);
+            return;
+        }
+
+        long start = 0L;
+        long end = file.length() - 1;
+        int status = 200;
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        if (range != null) {
+            Matcher matcher = RANGE.matcher(range);
+            if (!matcher.matches()) {
+                error(exchange, 416, "InvalidRange");
+                return;
+            }
+            start = Long.parseLong(matcher.group(1));
+            end = Math.min(end, Long.parseLong(matcher.group(2)));
+            status = 206;
+            rangeRequests.incrementAndGet();
+            exchange.getResponseHeaders().set("Content-Range", String.format("bytes %s-%s/%s", start, end, file.length()));
+        }
+        byte[] data = new byte[(int) (end - start + 1)];
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            in.seek(start);
+            in.readFully(data);
+        }
+        exchange.sendResponseHeaders(status, data.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(data);
+        }
+        bytesServed.addAndGet(data.length);
+    }
+
+    private void list(HttpExchange exchange, File bucketDir, Map<String, String> query) throws IOException {
+        String prefix = query.getOrDefault("prefix", "");
+        String delimiter = query.get("delimiter");
+        TreeSet<String> keys = new TreeSet<>();
+        TreeSet<String> prefixes = new TreeSet<>();
+        try (Stream<Path> files = Files.walk(bucketDir.toPath())) {
+            files.filter(Files::isRegularFile).forEach(file -> {
+                String key = bucketDir.toPath().relativize(file).toString().replace(File.separatorChar, '/');
+                if (!key.startsWith(prefix)) {
+                    return;
+                }
+                int index = delimiter != null ? key.indexOf(delimiter, prefix.length()) : -1;
+                if (index >= 0) {
+                    prefixes.add(key.substring(0, index + delimiter.length()));
+                } else {
+                    keys.add(key);
+                }
+            });
+        }
+
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>")
+                .append("<ListBucketResult xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\">")
+                .append("<Name>").append(bucketDir.getName()).append("</Name>")
+                .append("<Prefix>").append(escape(prefix)).append("</Prefix>")
+                .append("<Marker></Marker><MaxKeys>1000</MaxKeys><IsTruncated>false</IsTruncated>");
+        for (String key : keys) {
+            File file = new File(bucketDir, key);
+            xml.append("<Contents><Key>").append(escape(key)).append("</Key>")
+                    .append("<LastModified>").append(isoDate(file.lastModified())).append("</LastModified>")
+                    .append("<ETag>\"stub\"</ETag><Size>").append(file.length()).append("</Size>")
+                    .append("<StorageClass>STANDARD</StorageClass></Contents>");
+        }
+        for (String commonPrefix : prefixes) {
+            xml.append("<CommonPrefixes><Prefix>").append(escape(commonPrefix)).append("</Prefix></CommonPrefixes>");
+        }
+        xml.append("</ListBucketResult>");
+        send(exchange, 200, xml.toString());
+    }
+
+    private static void error(HttpExchange exchange, int status, String code) throws IOException {
+        if (exchange.getRequestMethod().equals("HEAD")) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        send(exchange, status, String.format("<?xml version=\"1.0\" encoding=\"UTF-8\"?><Error><Code>%s</Code>"
+                + "<Message>%s</Message></Error>", code, code));
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/xml");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static Map<String, String> query(String rawQuery) throws UnsupportedEncodingException {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery != null) {
+            for (String parameter : rawQuery.split("&")) {
+                int index = parameter.indexOf('=');
+                String name = index >= 0 ? parameter.substring(0, index) : parameter;
+                String value = index >= 0 ? parameter.substring(index + 1) : "";
+                query.put(URLDecoder.decode(name, "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+            }
+        }
+        return query;
+    }
+
+    private static String escape(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
+    private static String httpDate(long millis) {
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return format.format(new Date(millis));
+    }
+
+    private static String isoDate(long millis) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.format(new Date(millis));
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}